@@ -0,0 +1,69 @@
+package ast;
+
+import lexer.Scanner;
+import lexer.Tokeniser;
+import parser.Parser;
+import util.Benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Compares reloading a program from the binary AST format with lexing and parsing its source
+ * again, and times writing it. Everything is in memory, so disk speed does not count.
+ *
+ *   java -cp bin:bin-bench ast.BinaryASTBenchmark [source length in chars]
+ */
+public class BinaryASTBenchmark {
+
+    private static final String SNIPPET =
+            "int fib(int n, char* s) {\n" +
+            "    int a; int b; int t; char c[8];\n" +
+            "    a = 0; b = 1;\n" +
+            "    while (n > 0) { t = a + b * 2 - (a / 3); a = b; b = t; n = n - 1; }\n" +
+            "    if (a >= b && b != 0 || a <= 3) print_s((char*)\"done\"); else print_c('x');\n" +
+            "    c[2] = (int) 'y'; t = *s + sizeof(int) + c[1];\n" +
+            "    return a % 1000000007;\n" +
+            "}\n";
+
+    public static void main(String[] args) throws IOException {
+        int length = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        final char[] source = Benchmark.repeat(SNIPPET, length);
+        final Program program = new Parser(new Tokeniser(new Scanner(source))).parse();
+        final byte[] binary = write(program);
+        System.out.println(source.length + " chars of source, " + binary.length + " bytes of binary AST");
+
+        for (int round = 0; round < 2; round++) {
+            Benchmark.time("lex and parse", 5, 10, source.length, "char", new Benchmark.Task() {
+                public long run() {
+                    return new Parser(new Tokeniser(new Scanner(source))).parse().funDecls.size();
+                }
+            });
+            Benchmark.time("ASTReader.read", 5, 10, source.length, "char", new Benchmark.Task() {
+                public long run() {
+                    try {
+                        return new ASTReader(new ByteArrayInputStream(binary)).read().funDecls.size();
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            });
+            Benchmark.time("ASTWriter.write", 5, 10, source.length, "char", new Benchmark.Task() {
+                public long run() {
+                    try {
+                        return write(program).length;
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            });
+        }
+    }
+
+    static byte[] write(Program program) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ASTWriter(out).write(program);
+        return out.toByteArray();
+    }
+}
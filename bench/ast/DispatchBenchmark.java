@@ -0,0 +1,127 @@
+package ast;
+
+import lexer.Scanner;
+import lexer.Tokeniser;
+import parser.Parser;
+import util.Benchmark;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+
+/**
+ * Walks a large tree with the same pass through accept and through SwitchVisitor.visit. The
+ * pass counts nodes and adds up integer literals, so the cost is mostly dispatch. Before
+ * timing, ASTPrinter and FlatASTBuilder walk the tree, so the accept methods have seen more
+ * than one visitor, as they have in the compiler.
+ *
+ *   java -cp bin:bin-bench ast.DispatchBenchmark [source length in chars]
+ */
+public class DispatchBenchmark {
+
+    private static final String SNIPPET =
+            "int fib(int n, char* s) {\n" +
+            "    int a; int b; int t; char c[8];\n" +
+            "    a = 0; b = 1;\n" +
+            "    while (n > 0) { t = a + b * 2 - (a / 3); a = b; b = t; n = n - 1; }\n" +
+            "    if (a >= b && b != 0 || a <= 3) print_s((char*)\"done\"); else print_c('x');\n" +
+            "    c[2] = (int) 'y'; t = *s + sizeof(int) + c[1];\n" +
+            "    return a % 1000000007;\n" +
+            "}\n";
+
+    public static void main(String[] args) {
+        int length = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        char[] source = Benchmark.repeat(SNIPPET, length);
+        final Program program = new Parser(new Tokeniser(new Scanner(source))).parse();
+
+        final NodeCounter viaAccept = new NodeCounter(false);
+        final NodeCounter viaSwitch = new NodeCounter(true);
+        final long nodes = viaAccept.count(program);
+        if (viaSwitch.count(program) != nodes || viaSwitch.literals != viaAccept.literals)
+            throw new AssertionError("dispatch styles disagree");
+        System.out.println(program.funDecls.size() + " functions, " + nodes + " nodes");
+
+        PrintWriter nowhere = new PrintWriter(new Writer() {
+            public void write(char[] buf, int off, int len) {}
+            public void flush() {}
+            public void close() {}
+        });
+        for (int i = 0; i < 3; i++) {
+            program.accept(new ASTPrinter(nowhere));
+            FlatASTBuilder.flatten(program);
+        }
+
+        for (int round = 0; round < 2; round++) {
+            Benchmark.time("accept -> visitX", 10, 20, nodes, "node", new Benchmark.Task() {
+                public long run() {
+                    return viaAccept.count(program) + viaAccept.literals;
+                }
+            });
+            Benchmark.time("switch on kind()", 10, 20, nodes, "node", new Benchmark.Task() {
+                public long run() {
+                    return viaSwitch.count(program) + viaSwitch.literals;
+                }
+            });
+        }
+    }
+
+    /**
+     * Counts nodes, adding integer literals to a checksum. Every child is reached through
+     * walk, which dispatches either way.
+     */
+    static final class NodeCounter extends SwitchVisitor<Integer> {
+
+        private final boolean viaSwitch;
+        private long literals;
+
+        NodeCounter(boolean viaSwitch) {
+            this.viaSwitch = viaSwitch;
+        }
+
+        long count(Program program) {
+            literals = 0;
+            return walk(program);
+        }
+
+        private int walk(ASTNode node) {
+            if (node == null)
+                return 0;
+            Integer n = viaSwitch ? visit(node) : node.accept(this);
+            return n;
+        }
+
+        private int walkAll(Iterable<? extends ASTNode> nodes) {
+            int n = 0;
+            for (ASTNode node : nodes)
+                n += walk(node);
+            return n;
+        }
+
+        public Integer visitBaseType(BaseType bt) { return 1; }
+        public Integer visitStructType(StructType st) { return 1 + walkAll(st.structVarDecls); }
+        public Integer visitBlock(Block b) { return 1 + walkAll(b.varDeclsInBlock) + walkAll(b.stmtsInBlock); }
+        public Integer visitFunDecl(FunDecl fd) { return 1 + walk(fd.type) + walkAll(fd.params) + walk(fd.block()); }
+        public Integer visitProgram(Program p) {
+            return 1 + walkAll(p.structTypes) + walkAll(p.varDecls) + walkAll(p.funDecls);
+        }
+        public Integer visitVarDecl(VarDecl vd) { return 1 + walk(vd.type); }
+        public Integer visitVarExpr(VarExpr v) { return 1; }
+        public Integer visitArrayType(ArrayType at) { return 1 + walk(at.type); }
+        public Integer visitPointerType(PointerType pt) { return 1 + walk(pt.type); }
+        public Integer visitIntLiteral(IntLiteral il) { literals += il.value; return 1; }
+        public Integer visitChrLiteral(ChrLiteral cl) { return 1; }
+        public Integer visitStrLiteral(StrLiteral sl) { return 1; }
+        public Integer visitFunCallExpr(FunCallExpr fce) { return 1 + walkAll(fce.functionArgsExprs); }
+        public Integer visitBinOpExpr(BinOp binOp) { return 1 + walk(binOp.lhs) + walk(binOp.rhs); }
+        public Integer visitStmtExpr(Stmt stmt) { return 0; }
+        public Integer visitIfStmt(If i) { return 1 + walk(i.ifConditionExpr) + walk(i.ifStmtBlock) + walk(i.elseStmtBlock); }
+        public Integer visitWhileStmt(While w) { return 1 + walk(w.whileConditionExpr) + walk(w.whileStmt); }
+        public Integer visitAssignStmt(Assign a) { return 1 + walk(a.lhs) + walk(a.rhs); }
+        public Integer visitReturnStmt(Return r) { return 1 + walk(r.returnExpr); }
+        public Integer visitExprStmt(ExprStmt e) { return 1 + walk(e.exprStmt); }
+        public Integer visitArrayAccessExpr(ArrayAccessExpr a) { return 1 + walk(a.arrayName) + walk(a.arrayIndex); }
+        public Integer visitSizeOfExpr(SizeOfExpr s) { return 1 + walk(s.type); }
+        public Integer visitValueAtExpr(ValueAtExpr v) { return 1 + walk(v.valueAtExp); }
+        public Integer visitTypecastExpr(TypecastExpr t) { return 1 + walk(t.type) + walk(t.typecastedExpr); }
+        public Integer visitFieldAccessExpr(FieldAccessExpr f) { return 1 + walk(f.fieldAccessExpr); }
+    }
+}
@@ -0,0 +1,106 @@
+package lexer;
+
+import util.Benchmark;
+
+/**
+ * Compares the Unicode-aware Character predicates the Tokeniser used to classify characters
+ * with the ASCII class table in CharClass. Both loops make the decisions the Tokeniser makes,
+ * in the same order: whitespace, single-character tokens, identifiers, numbers, escapes.
+ *
+ *   java -cp bin:bin-bench lexer.CharClassBenchmark [source length in chars]
+ */
+public class CharClassBenchmark {
+
+    private static final String SNIPPET =
+            "int fib(int n) {\n" +
+            "    int a; int b; int t;\n" +
+            "    a = 0; b = 1;\n" +
+            "    while (n > 0) { t = a + b; a = b; b = t; n = n - 1; }\n" +
+            "    print_s((char*)\"done\\n\"); print_c('\\t');\n" +
+            "    return a % 1000000007;\n" +
+            "}\n";
+
+    public static void main(String[] args) {
+        int length = args.length > 0 ? Integer.parseInt(args[0]) : 4 << 20;
+        final char[] source = Benchmark.repeat(SNIPPET, length);
+
+        for (int round = 0; round < 2; round++) {
+            Benchmark.time("Character predicates", 10, 20, source.length, "char", new Benchmark.Task() {
+                public long run() {
+                    return classifyWithCharacter(source);
+                }
+            });
+            Benchmark.time("CharClass table", 10, 20, source.length, "char", new Benchmark.Task() {
+                public long run() {
+                    return classifyWithTable(source);
+                }
+            });
+            Benchmark.time("Tokeniser.tokenise (table path)", 5, 10, source.length, "char", new Benchmark.Task() {
+                public long run() {
+                    return new Tokeniser(new Scanner(source)).tokenise().size();
+                }
+            });
+        }
+    }
+
+    static long classifyWithCharacter(char[] s) {
+        long sum = 0;
+        int n = s.length;
+        for (int i = 0; i < n; i++) {
+            char c = s[i];
+            if (Character.isWhitespace(c)) {
+                sum += 1;
+            } else if (c == '+' || c == '-' || c == '*' || c == '%' || c == '[' || c == ']' || c == '{'
+                    || c == '}' || c == '(' || c == ')' || c == ',' || c == ';' || c == '.') {
+                sum += 2;
+            } else if (Character.isLetter(c) || c == '_') {
+                while (i + 1 < n && (Character.isLetterOrDigit(s[i + 1]) || s[i + 1] == '_'))
+                    i++;
+                sum += 3;
+            } else if (Character.isDigit(c)) {
+                while (i + 1 < n && Character.isDigit(s[i + 1]))
+                    i++;
+                sum += 4;
+            } else if (c == '\\' && i + 1 < n) {
+                char e = s[++i];
+                if (e == '\\' || e == '\'' || e == '"')
+                    sum += 5;
+                else if (e == 't' || e == 'r' || e == 'n' || e == 'f' || e == 'b')
+                    sum += 6;
+            } else {
+                sum += 7;
+            }
+        }
+        return sum;
+    }
+
+    static long classifyWithTable(char[] s) {
+        long sum = 0;
+        int n = s.length;
+        for (int i = 0; i < n; i++) {
+            char c = s[i];
+            if (CharClass.is(c, CharClass.SPACE)) {
+                sum += 1;
+            } else if (CharClass.singleCharToken(c) != null) {
+                sum += 2;
+            } else if (CharClass.is(c, CharClass.IDENTIFIER_START)) {
+                while (i + 1 < n && CharClass.is(s[i + 1], CharClass.IDENTIFIER_PART))
+                    i++;
+                sum += 3;
+            } else if (CharClass.is(c, CharClass.DIGIT)) {
+                while (i + 1 < n && CharClass.is(s[i + 1], CharClass.DIGIT))
+                    i++;
+                sum += 4;
+            } else if (c == '\\' && i + 1 < n) {
+                char e = s[++i];
+                if (CharClass.is(e, CharClass.ESCAPE))
+                    sum += 5;
+                else if (CharClass.is(e, CharClass.LETTER_ESCAPE))
+                    sum += 6;
+            } else {
+                sum += 7;
+            }
+        }
+        return sum;
+    }
+}
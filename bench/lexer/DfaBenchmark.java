@@ -0,0 +1,40 @@
+package lexer;
+
+import util.Benchmark;
+
+/**
+ * Compares the hand-written Tokeniser with the table-driven DfaTokeniser on the same source.
+ *
+ *   java -cp bin:bin-bench lexer.DfaBenchmark [source length in chars]
+ */
+public class DfaBenchmark {
+
+    private static final String SNIPPET =
+            "/* running totals */\n" +
+            "int fib(int n) {\n" +
+            "    int a; int b; int t;\n" +
+            "    a = 0; b = 1;\n" +
+            "    while (n > 0) { t = a + b; a = b; b = t; n = n - 1; } // step\n" +
+            "    if (a >= b && b != 0 || a <= 3) print_s((char*)\"done\\n\"); else print_c('\\t');\n" +
+            "    return a % 1000000007;\n" +
+            "}\n";
+
+    public static void main(String[] args) {
+        int length = args.length > 0 ? Integer.parseInt(args[0]) : 4 << 20;
+        final char[] source = Benchmark.repeat(SNIPPET, length);
+
+        System.out.println("lexer DFA: " + Dfa.lexer().states() + " states, " + Dfa.lexer().columns + " symbol classes");
+        for (int round = 0; round < 2; round++) {
+            Benchmark.time("Tokeniser.tokenise", 5, 10, source.length, "char", new Benchmark.Task() {
+                public long run() {
+                    return new Tokeniser(new Scanner(source)).tokenise().size();
+                }
+            });
+            Benchmark.time("DfaTokeniser.tokenise", 5, 10, source.length, "char", new Benchmark.Task() {
+                public long run() {
+                    return new DfaTokeniser(new Scanner(source)).tokenise().size();
+                }
+            });
+        }
+    }
+}
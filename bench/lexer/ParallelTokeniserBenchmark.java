@@ -0,0 +1,45 @@
+package lexer;
+
+import util.Benchmark;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Lexes a large generated source sequentially and with ParallelTokeniser on pools of
+ * increasing size.
+ *
+ *   java -cp bin:bin-bench lexer.ParallelTokeniserBenchmark [source length in chars]
+ */
+public class ParallelTokeniserBenchmark {
+
+    private static final String SNIPPET =
+            "/* running totals */\n" +
+            "int fib(int n) {\n" +
+            "    int a; int b; int t;\n" +
+            "    a = 0; b = 1;\n" +
+            "    while (n > 0) { t = a + b; a = b; b = t; n = n - 1; } // step\n" +
+            "    print_s((char*)\"done\\n\"); print_c('\\t');\n" +
+            "    return a % 1000000007;\n" +
+            "}\n";
+
+    public static void main(String[] args) {
+        int length = args.length > 0 ? Integer.parseInt(args[0]) : 64 << 20;
+        final char[] source = Benchmark.repeat(SNIPPET, length);
+
+        Benchmark.time("Tokeniser.tokenise", 2, 5, source.length, "char", new Benchmark.Task() {
+            public long run() {
+                return new Tokeniser(new Scanner(source)).tokenise().size();
+            }
+        });
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 2; threads <= Math.max(2, processors); threads *= 2) {
+            final ForkJoinPool pool = new ForkJoinPool(threads);
+            Benchmark.time("ParallelTokeniser, " + threads + " threads", 2, 5, source.length, "char", new Benchmark.Task() {
+                public long run() {
+                    return new ParallelTokeniser(new Scanner(source), pool).tokenise().size();
+                }
+            });
+            pool.shutdown();
+        }
+    }
+}
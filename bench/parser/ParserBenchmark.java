@@ -0,0 +1,122 @@
+package parser;
+
+import lexer.Scanner;
+import lexer.Token;
+import lexer.Token.TokenClass;
+import lexer.TokenBuffer;
+import lexer.Tokeniser;
+import util.Benchmark;
+
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Parses a program made of a large global declaration section, where the parser decides
+ * between variable and function declarations by looking up to four tokens ahead. The
+ * streaming case pays for lexing as well, so the pre-lexed case is given for reference. The
+ * lookahead cases replay the parser's lookAhead(2..4) pattern on already lexed tokens, through
+ * the linked queue the parser used to buffer tokens in and through its ring buffer.
+ *
+ *   java -cp bin:bin-bench parser.ParserBenchmark [number of declarations]
+ */
+public class ParserBenchmark {
+
+    public static void main(String[] args) {
+        int declarations = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        final char[] source = globals(declarations).toCharArray();
+        final TokenBuffer tokens = new Tokeniser(new Scanner(source)).tokenise();
+        System.out.println(declarations + " declarations, " + tokens.size() + " tokens");
+
+        final Token[] stream = new Token[tokens.size()];
+        for (int i = 0; i < stream.length; i++)
+            stream[i] = tokens.get(i);
+
+        for (int round = 0; round < 2; round++) {
+            Benchmark.time("lookahead, LinkedList queue", 20, 40, stream.length, "token", new Benchmark.Task() {
+                public long run() {
+                    return replayLinkedList(stream);
+                }
+            });
+            Benchmark.time("lookahead, ring buffer", 20, 40, stream.length, "token", new Benchmark.Task() {
+                public long run() {
+                    return replayRing(stream);
+                }
+            });
+            Benchmark.time("Parser(Tokeniser)", 20, 40, tokens.size(), "token", new Benchmark.Task() {
+                public long run() {
+                    return new Parser(new Tokeniser(new Scanner(source))).parse().varDecls.size();
+                }
+            });
+            Benchmark.time("Tokeniser.tokenise", 20, 40, tokens.size(), "token", new Benchmark.Task() {
+                public long run() {
+                    return new Tokeniser(new Scanner(source)).tokenise().size();
+                }
+            });
+            Benchmark.time("Parser(TokenBuffer)", 20, 40, tokens.size(), "token", new Benchmark.Task() {
+                public long run() {
+                    return new Parser(tokens).parse().varDecls.size();
+                }
+            });
+        }
+    }
+
+    // Looks 2, 3 and 4 tokens ahead before every token, as parseVarDecls does for each declaration.
+    static long replayLinkedList(Token[] stream) {
+        Queue<Token> buffer = new LinkedList<Token>();
+        int next = 0;
+        long sum = 0;
+        for (int consumed = 0; consumed < stream.length - 4; consumed++) {
+            for (int ahead = 2; ahead <= 4; ahead++) {
+                while (buffer.size() < ahead)
+                    buffer.add(stream[next++]);
+                int cnt = 1;
+                for (Token t : buffer) {
+                    if (cnt == ahead) {
+                        sum += t.tokenClass == TokenClass.LPAR ? 1 : 0;
+                        break;
+                    }
+                    cnt++;
+                }
+            }
+            sum += buffer.remove().tokenClass.ordinal();
+        }
+        return sum;
+    }
+
+    static long replayRing(Token[] stream) {
+        Token[] buffer = new Token[8];
+        int head = 0;
+        int buffered = 0;
+        int next = 0;
+        long sum = 0;
+        for (int consumed = 0; consumed < stream.length - 4; consumed++) {
+            for (int ahead = 2; ahead <= 4; ahead++) {
+                while (buffered < ahead) {
+                    buffer[(head + buffered) & 7] = stream[next++];
+                    buffered++;
+                }
+                sum += buffer[(head + ahead - 1) & 7].tokenClass == TokenClass.LPAR ? 1 : 0;
+            }
+            Token t = buffer[head];
+            buffer[head] = null;
+            head = (head + 1) & 7;
+            buffered--;
+            sum += t.tokenClass.ordinal();
+        }
+        return sum;
+    }
+
+    static String globals(int declarations) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < declarations; i++) {
+            switch (i % 4) {
+                case 0: sb.append("int counter").append(i).append(";\n"); break;
+                case 1: sb.append("char* name").append(i).append(";\n"); break;
+                case 2: sb.append("int table").append(i).append("[64];\n"); break;
+                default: sb.append("struct node* head").append(i).append(";\n"); break;
+            }
+        }
+        sb.append("void main() { counter0 = 1; }\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,199 @@
+package sem;
+
+import ast.*;
+import gen.CodeGenerator;
+import lexer.Scanner;
+import lexer.Tokeniser;
+import parser.Parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compiles a program nested deeper than any recursive pass survives and reports, mode by mode,
+ * which of the parser, the AST walkers, the semantic passes and the code generator get
+ * through it. The source nests ifs, whiles and blocks depth deep, and has expressions that are
+ * depth additions in a row, the same in depth parentheses, depth calls inside each other and
+ * depth casts of a cast. Everything runs on a thread with a small stack, so a mode that
+ * still recurses per level fails with StackOverflowError; only the bodies a parallel parse
+ * hands to the pool are parsed on the pool's threads, with their default stack.
+ *
+ * Main runs the same code, so its -parser, -ast, -sem and -gen modes get through such a
+ * program on the default stack too.
+ *
+ *   java -cp bin:bin-bench sem.DeepNestingStress [depth]
+ */
+public class DeepNestingStress {
+
+	private static final long STACK_SIZE = 256 * 1024;
+
+	private static boolean failed = false;
+
+	public static void main(String[] args) throws Exception {
+		final int depth = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		final Throwable[] failure = new Throwable[1];
+		Thread thread = new Thread(null, new Runnable() {
+			public void run() {
+				try {
+					check(depth);
+				} catch (Throwable t) {
+					failure[0] = t;
+				}
+			}
+		}, "stress", STACK_SIZE);
+		thread.start();
+		thread.join();
+		if (failure[0] != null) {
+			failure[0].printStackTrace();
+			System.exit(1);
+		}
+		if (failed)
+			System.exit(1);
+	}
+
+	private interface Mode {
+		Program run(Program program) throws Exception;
+	}
+
+	private static void check(int depth) throws Exception {
+		final char[] source = source(depth).toCharArray();
+		System.out.printf("depth %d, %d chars, %d KB stack%n", depth, source.length, STACK_SIZE / 1024);
+
+		Program program = run("parse", null, new Mode() {
+			public Program run(Program ignored) {
+				Parser parser = new Parser(new Tokeniser(new Scanner(source)));
+				return checked(parser.parse(), parser);
+			}
+		});
+		run("parse lazily", null, new Mode() {
+			public Program run(Program ignored) {
+				Parser parser = new Parser(new Tokeniser(new Scanner(source)).tokenise());
+				Program program = parser.parseLazily();
+				for (FunDecl fd : program.funDecls)
+					fd.block();
+				return checked(program, parser);
+			}
+		});
+		run("parse in parallel", null, new Mode() {
+			public Program run(Program ignored) {
+				ForkJoinPool pool = new ForkJoinPool(2);
+				try {
+					Parser parser = new Parser(new Tokeniser(new Scanner(source)).tokenise());
+					return checked(parser.parseInParallel(pool), parser);
+				} finally {
+					pool.shutdown();
+				}
+			}
+		});
+		if (program == null)
+			return;
+
+		run("print AST", program, new Mode() {
+			public Program run(Program program) {
+				program.accept(new ASTPrinter(new PrintWriter(new Writer() {
+					public void write(char[] chars, int off, int len) {
+					}
+
+					public void flush() {
+					}
+
+					public void close() {
+					}
+				})));
+				return program;
+			}
+		});
+		run("write and read binary AST", program, new Mode() {
+			public Program run(Program program) throws Exception {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				new ASTWriter(out).write(program);
+				return new ASTReader(new ByteArrayInputStream(out.toByteArray())).read();
+			}
+		});
+		run("flatten and rebuild", program, new Mode() {
+			public Program run(Program program) {
+				FlatAST flat = FlatASTBuilder.flatten(program);
+				return flat.toProgram(flat.root());
+			}
+		});
+		run("semantic analysis", program, new Mode() {
+			public Program run(Program program) {
+				int errors = new SemanticAnalyzer().analyze(program);
+				if (errors != 0)
+					throw new AssertionError(errors + " semantic errors");
+				return program;
+			}
+		});
+		run("code generation", program, new Mode() {
+			public Program run(Program program) throws Exception {
+				File output = File.createTempFile("stress", ".s");
+				try {
+					new CodeGenerator().emitProgram(program, output);
+				} finally {
+					output.delete();
+				}
+				return program;
+			}
+		});
+	}
+
+	// Runs mode and reports how it went; returns what it returns, or null if it failed.
+	private static Program run(String name, Program program, Mode mode) throws Exception {
+		long start = System.nanoTime();
+		try {
+			Program result = mode.run(program);
+			System.out.printf("  %-28s ok in %.1f ms%n", name, (System.nanoTime() - start) / 1e6);
+			return result;
+		} catch (StackOverflowError e) {
+			System.out.printf("  %-28s FAILED: StackOverflowError%n", name);
+			failed = true;
+			return null;
+		}
+	}
+
+	private static Program checked(Program program, Parser parser) {
+		if (parser.getErrorCount() != 0)
+			throw new AssertionError(parser.getErrorCount() + " parse errors");
+		return program;
+	}
+
+	/*
+	 * int x;
+	 * int* p;
+	 * int f(int a) { return a; }
+	 * void ifs()    { if (x < 1) { if (x < 1) { ... x = 0; } } }
+	 * void whiles() { while (x < 1) { while (x < 1) { ... x = 1; } } }
+	 * void blocks() { { { ... x = 0; } } }
+	 * void main()   { x = x + 1 + 1 ...; x = ((x + 1) ... + 1); x = f(f(... x)); p = (int*)(int*)... p; }
+	 */
+	private static String source(int depth) {
+		StringBuilder sb = new StringBuilder("int x;\nint* p;\nint f(int a) { return a; }\n");
+		sb.append("void ifs() { ");
+		repeat(sb, "if (x < 1) { ", depth).append("x = 0; ");
+		repeat(sb, "}", depth).append(" }\n");
+		sb.append("void whiles() { ");
+		repeat(sb, "while (x < 1) { ", depth).append("x = 1; ");
+		repeat(sb, "}", depth).append(" }\n");
+		sb.append("void blocks() { ");
+		repeat(sb, "{ ", depth).append("x = 0; ");
+		repeat(sb, "}", depth).append(" }\n");
+		sb.append("void main() {\n");
+		repeat(sb.append("    x = x"), " + 1", depth).append(";\n");
+		repeat(sb.append("    x = "), "(", depth).append("x");
+		repeat(sb, " + 1)", depth).append(";\n");
+		repeat(sb.append("    x = "), "f(", depth).append("x");
+		repeat(sb, ")", depth).append(";\n");
+		repeat(sb.append("    p = "), "(int*)", depth).append("p;\n");
+		return sb.append("}\n").toString();
+	}
+
+	private static StringBuilder repeat(StringBuilder sb, String s, int times) {
+		for (int i = 0; i < times; i++)
+			sb.append(s);
+		return sb;
+	}
+}
@@ -0,0 +1,70 @@
+package sem;
+
+import ast.Program;
+import lexer.Scanner;
+import lexer.Tokeniser;
+import parser.Parser;
+import util.Benchmark;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times the semantic phase on a large error-free program, run as name analysis followed by type
+ * checking, as the fused walk that does both, and with the functions checked in parallel on
+ * pools of increasing size.
+ *
+ *   java -cp bin:bin-bench sem.SemanticBenchmark [functions]
+ */
+public class SemanticBenchmark {
+
+	private static final String FUNCTION =
+			"int fib#(int n, char* s, struct point* q) {\n" +
+			"    int a; int b; int t; char c[8]; struct point r;\n" +
+			"    a = 0; b = 1;\n" +
+			"    while (n > 0) { t = a + b * 2 - (a / 3); a = b; b = t; n = n - 1; }\n" +
+			"    if (a >= b) { int k; k = a; print_i(k); } else print_c('x');\n" +
+			"    r.x = a; t = r.x + r.y; c[2] = *s; t = sizeof(int);\n" +
+			"    print_s((char*)\"done\"); total = read_i();\n" +
+			"    return a % 1000000007;\n" +
+			"}\n";
+
+	public static void main(String[] args) {
+		int functions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		StringBuilder sb = new StringBuilder("struct point { int x; char c; int y; };\nint total;\n");
+		for (int i = 0; i < functions; i++)
+			sb.append(FUNCTION.replace("#", Integer.toString(i)));
+		final Program program = new Parser(new Tokeniser(new Scanner(sb.toString().toCharArray()))).parse();
+		final int declared = program.funDecls.size();
+
+		for (int round = 0; round < 2; round++) {
+			Benchmark.time("name analysis, then type checking", 10, 20, declared, "function", new Benchmark.Task() {
+				public long run() {
+					return check(new SemanticAnalyzer().analyzeInTwoPasses(program), program, declared);
+				}
+			});
+			Benchmark.time("fused", 10, 20, declared, "function", new Benchmark.Task() {
+				public long run() {
+					return check(new SemanticAnalyzer().analyze(program), program, declared);
+				}
+			});
+		}
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads = 2; threads <= Math.max(2, processors); threads *= 2) {
+			final ForkJoinPool pool = new ForkJoinPool(threads);
+			Benchmark.time("parallel, " + threads + " threads", 10, 20, declared, "function", new Benchmark.Task() {
+				public long run() {
+					return check(new SemanticAnalyzer().analyzeInParallel(program, pool), program, declared);
+				}
+			});
+			pool.shutdown();
+		}
+	}
+
+	// Type checking adds the library functions to the program; they are taken off again for the next run.
+	private static long check(int errors, Program program, int declared) {
+		if (errors != 0)
+			throw new AssertionError(errors + " semantic errors");
+		program.funDecls.subList(declared, program.funDecls.size()).clear();
+		return declared;
+	}
+}
@@ -0,0 +1,46 @@
+package util;
+
+/**
+ * Minimal timing harness shared by the micro-benchmarks under bench/. Each case runs for a
+ * number of warm-up rounds so the JIT settles, then the best of the measured rounds is
+ * reported per unit of work. Tasks return a checksum so their work cannot be optimised away.
+ */
+public final class Benchmark {
+
+    public interface Task {
+        long run();
+    }
+
+    private static volatile long sink;
+
+    private Benchmark() {}
+
+    /**
+     * Times task and prints the best round in nanoseconds per unit; returns that figure.
+     */
+    public static double time(String name, int warmups, int rounds, long units, String unit, Task task) {
+        for (int i = 0; i < warmups; i++)
+            sink += task.run();
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            sink += task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        double perUnit = (double) best / units;
+        System.out.printf("%-40s %10.3f ns/%s  (best of %d, %.2f ms)%n", name, perUnit, unit, rounds, best / 1e6);
+        return perUnit;
+    }
+
+    /**
+     * Repeats snippet until the text is at least length characters long.
+     */
+    public static char[] repeat(String snippet, int length) {
+        StringBuilder sb = new StringBuilder(length + snippet.length());
+        while (sb.length() < length)
+            sb.append(snippet);
+        return sb.toString().toCharArray();
+    }
+}
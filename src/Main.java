@@ -7,10 +7,12 @@ import lexer.Tokeniser;
 import parser.Parser;
 import sem.SemanticAnalyzer;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.io.StringWriter;
 
 public class Main {
     private static final int FILE_NOT_FOUND = 2;
@@ -26,7 +28,8 @@ public class Main {
 
     private static void usage() {
         System.out.println("Usage: java "+Main.class.getSimpleName()+" pass inputfile outputfile");
-        System.out.println("where pass is either: -lexer, -parser, -ast, -sem or -gen");
+        System.out.println("where pass is either: -lexer, -parser, -ast, -ast-lines, -sem or -gen");
+        System.out.println("-ast-lines prints the AST as -ast does, with a line per declaration and statement");
         System.exit(-1);
     }
 
@@ -36,10 +39,11 @@ public class Main {
             usage();
 
         Mode mode = null;
+        boolean lines = false;
         switch (args[0]) {
             case "-lexer": mode = Mode.LEXER; break;    case "-parser": mode = Mode.PARSER; break;
             case "-ast":   mode = Mode.AST; break;      case "-sem":    mode = Mode.SEMANTICANALYSIS; break;
-            case "-gen":   mode = Mode.GEN; break;
+            case "-gen":   mode = Mode.GEN; break;      case "-ast-lines": mode = Mode.AST; lines = true; break;
             default:
                 usage();
                 break;
@@ -50,11 +54,15 @@ public class Main {
 
         Scanner scanner;
         try {
-            scanner = new Scanner(inputFile);
+            scanner = Scanner.map(inputFile);
         } catch (FileNotFoundException e) {
             System.out.println("File "+inputFile.toString()+" does not exist.");
             System.exit(FILE_NOT_FOUND);
             return;
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            System.exit(-1);
+            return;
         }
 
         Tokeniser tokeniser = new Tokeniser(scanner);
@@ -80,14 +88,11 @@ public class Main {
             if (parser.getErrorCount() == 0) {
                 System.out.println("Parsing: pass");
                 System.out.println("Printing out AST:");
-                PrintWriter writer;
-                StringWriter sw = new StringWriter();
+                // The dump can be far larger than the program, so it goes out as it is printed.
                 try {
-                    writer = new PrintWriter(sw);
-                    programAst.accept(new ASTPrinter(writer));
+                    PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+                    programAst.accept(new ASTPrinter(writer, lines));
                     writer.flush();
-                    System.out.print(sw.toString());
-                    writer.close();
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
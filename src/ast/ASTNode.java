@@ -2,4 +2,9 @@ package ast;
 
 public interface ASTNode {
     public <T> T accept(ASTVisitor<T> v);
+
+    /**
+     * The kind of this node, for passes that dispatch with a switch (see SwitchVisitor).
+     */
+    public NodeKind kind();
 }
@@ -1,279 +1,236 @@
 package ast;
 
 import java.io.PrintWriter;
-
-public class ASTPrinter implements ASTVisitor<Void> {
+import java.util.List;
+
+/**
+ * Prints an AST as nested Kind(child,child,...) terms, straight to the writer as it goes.
+ *
+ * The standard format is a single line. The line format, for tools and diffs, breaks the line
+ * after each comma between the declarations of the program and between the declarations and
+ * statements of a block, with no indentation; joining its lines gives the standard format.
+ *
+ * The walk keeps its place on a stack of frames (see StackVisitor), so trees of any depth print.
+ */
+public class ASTPrinter extends StackVisitor<Void> {
 
     private PrintWriter writer;
 
-    public ASTPrinter(PrintWriter writer) {
-            this.writer = writer;
-    }
+    // Separates the items of a program or block.
+    private final String itemDelimiter;
 
-    @Override
-    public Void visitBlock(Block b) {
-        writer.print("Block(");
-        String delimiter = "";
-        for (VarDecl vd : b.varDeclsInBlock) {
-            writer.print(delimiter);
-            vd.accept(this);
-            delimiter = ",";
-        }
-        for (Stmt stmt : b.stmtsInBlock) {
-            writer.print(delimiter);
-            stmt.accept(this);
-            delimiter = ",";
+    public ASTPrinter(PrintWriter writer) {
+        this(writer, false);
+    }
+
+    public ASTPrinter(PrintWriter writer, boolean lines) {
+        this.writer = writer;
+        this.itemDelimiter = lines ? ",\n" : ",";
+    }
+
+    @Override
+    protected Void step(Frame f, Void child) {
+        switch (f.node.kind()) {
+            case PROGRAM:           return program((Program) f.node, f);
+            case FUN_DECL:          return funDecl((FunDecl) f.node, f);
+            case BLOCK:             return block((Block) f.node, f);
+            case VAR_DECL:          return varDecl((VarDecl) f.node, f);
+            case BASE_TYPE:         return leaf(String.valueOf(f.node));
+            case STRUCT_TYPE:       return structType((StructType) f.node, f);
+            case ARRAY_TYPE:        return arrayType((ArrayType) f.node, f);
+            case POINTER_TYPE:      return unary("PointerType(", ((PointerType) f.node).type, f);
+            case VAR_EXPR:          return leaf("VarExpr(" + ((VarExpr) f.node).name + ")");
+            case INT_LITERAL:       return leaf("IntLiteral(" + ((IntLiteral) f.node).value + ")");
+            case CHR_LITERAL:       return leaf("ChrLiteral(" + ((ChrLiteral) f.node).value + ")");
+            case STR_LITERAL:       return leaf("StrLiteral(" + ((StrLiteral) f.node).value + ")");
+            case FUN_CALL_EXPR:     return funCallExpr((FunCallExpr) f.node, f);
+            case BIN_OP:            return binOp((BinOp) f.node, f);
+            case IF:                return ifStmt((If) f.node, f);
+            case WHILE: {
+                While whileStmt = (While) f.node;
+                return binary("While(", whileStmt.whileConditionExpr, ",", whileStmt.whileStmt, f);
+            }
+            case ASSIGN: {
+                Assign assignStmt = (Assign) f.node;
+                return binary("Assign(", assignStmt.lhs, ",", assignStmt.rhs, f);
+            }
+            case RETURN:            return unary("Return(", ((Return) f.node).returnExpr, f);
+            case EXPR_STMT:         return unary("ExprStmt(", ((ExprStmt) f.node).exprStmt, f);
+            case ARRAY_ACCESS_EXPR: {
+                ArrayAccessExpr arrayAccessExpr = (ArrayAccessExpr) f.node;
+                return binary("ArrayAccessExpr(", arrayAccessExpr.arrayName, ",", arrayAccessExpr.arrayIndex, f);
+            }
+            case SIZE_OF_EXPR:      return unary("SizeOfExpr(", ((SizeOfExpr) f.node).type, f);
+            case VALUE_AT_EXPR:     return unary("ValueAtExpr(", ((ValueAtExpr) f.node).valueAtExp, f);
+            case TYPECAST_EXPR: {
+                TypecastExpr typecastExpr = (TypecastExpr) f.node;
+                return binary("TypecastExpr(", typecastExpr.type, ",", typecastExpr.typecastedExpr, f);
+            }
+            case FIELD_ACCESS_EXPR: return fieldAccessExpr((FieldAccessExpr) f.node, f);
+            default:
+                throw new IllegalStateException("unknown node kind " + f.node.kind());
         }
-        writer.print(")");
-        return null;
     }
 
-    @Override
-    public Void visitFunDecl(FunDecl fd) {
-        writer.print("FunDecl(");
-        fd.type.accept(this);
-        writer.print(","+fd.name+",");
-        for (VarDecl vd : fd.params) {
-            vd.accept(this);
-            writer.print(",");
-        }
-        fd.block.accept(this);
-        writer.print(")");
+    private Void leaf(String text) {
+        writer.print(text);
         return null;
     }
 
-    @Override
-    public Void visitProgram(Program p) {
-        writer.print("Program(");
-        String delimiter = "";
-        for (StructType st : p.structTypes) {
-            writer.print(delimiter);
-            delimiter = ",";
-            st.accept(this);
-        }
-        for (VarDecl vd : p.varDecls) {
-            writer.print(delimiter);
-            delimiter = ",";
-            vd.accept(this);
-        }
-        for (FunDecl fd : p.funDecls) {
-            writer.print(delimiter);
-            delimiter = ",";
-            fd.accept(this);
+    // Prints open, the child and the closing parenthesis.
+    private Void unary(String open, ASTNode node, Frame f) {
+        if (f.step == 0) {
+            writer.print(open);
+            return call(node);
         }
         writer.print(")");
-	    writer.flush();
         return null;
     }
 
-    @Override
-    public Void visitVarDecl(VarDecl vd){
-        writer.print("VarDecl(");
-        vd.type.accept(this);
-        writer.print(",");
-        writer.print(vd.varName);
-        writer.print(")");
-        return null;
-    }
-
-    @Override
-    public Void visitVarExpr(VarExpr v) {
-        writer.print("VarExpr(");
-        writer.print(v.name);
-        writer.print(")");
-        return null;
-    }
-
-    @Override
-    public Void visitBaseType(BaseType bt) {
-        writer.print(bt);
-        writer.flush();
-        return null;
-    }
-
-    @Override
-    public Void visitStructType(StructType st) {
-        writer.print("StructType(");
-        writer.print(st.structName);
-        String delimiter = ",";
-        for (VarDecl vd : st.structVarDecls) {
-            writer.print(delimiter);
-            vd.accept(this);
+    // Prints open, the first child, delimiter, the second child and the closing parenthesis.
+    private Void binary(String open, ASTNode first, String delimiter, ASTNode second, Frame f) {
+        switch (f.step) {
+            case 0:
+                writer.print(open);
+                return call(first);
+            case 1:
+                writer.print(delimiter);
+                return call(second);
+            default:
+                writer.print(")");
+                return null;
         }
-        writer.print(")");
-        return null;
     }
 
-    @Override
-    public Void visitArrayType(ArrayType at) {
-        writer.print("ArrayType(");
-        at.type.accept(this);
-        writer.print(",");
-        writer.print(at.numElements);
-        writer.print(")");
-        return null;
-    }
-
-    @Override
-    public Void visitPointerType(PointerType pt) {
-        writer.print("PointerType(");
-        pt.type.accept(this);
-        writer.print(")");
-        return null;
-    }
-
-    @Override
-    public Void visitIntLiteral(IntLiteral il) {
-        writer.print("IntLiteral(");
-        writer.print(il.value);
-        writer.print(")");
-        return null;
-    }
-
-    @Override
-    public Void visitChrLiteral(ChrLiteral cl) {
-        writer.print("ChrLiteral(");
-        writer.print(cl.value);
-        writer.print(")");
-        return null;
+    // Prints the next of items, after delimiter unless it is the first of the node's items;
+    // f.index counts those printed. Returns false once all are.
+    private boolean item(List<? extends ASTNode> items, int before, String delimiter, Frame f) {
+        int i = f.index - before;
+        if (i < 0 || i >= items.size())
+            return false;
+        if (f.index > 0)
+            writer.print(delimiter);
+        f.index++;
+        f.saved = items.get(i);
+        return true;
     }
 
-    @Override
-    public Void visitStrLiteral(StrLiteral sl) {
-        writer.print("StrLiteral(");
-        writer.print(sl.value);
+    private Void block(Block b, Frame f) {
+        if (f.step == 0)
+            writer.print("Block(");
+        int vars = b.varDeclsInBlock.size();
+        if (item(b.varDeclsInBlock, 0, itemDelimiter, f) || item(b.stmtsInBlock, vars, itemDelimiter, f))
+            return call((ASTNode) f.saved);
         writer.print(")");
         return null;
     }
 
-    @Override
-    public Void visitFunCallExpr(FunCallExpr fce) {
-        writer.print("FunCallExpr(");
-        writer.print(fce.functionName);
-        String delimiter = ",";
-        for (Expr funcallArgExpr : fce.functionArgsExprs) {
-            writer.print(delimiter);
-            funcallArgExpr.accept(this);
-            delimiter = ",";
+    private Void funDecl(FunDecl fd, Frame f) {
+        if (f.step == 0) {
+            writer.print("FunDecl(");
+            return call(fd.type);
         }
+        if (f.mark == 1) {
+            writer.print(")");
+            return null;
+        }
+        writer.print(f.step == 1 ? ","+fd.name+"," : ",");
+        if (f.index < fd.params.size())
+            return call(fd.params.get(f.index++));
+        f.mark = 1;
+        return call(fd.block());
+    }
+
+    private Void program(Program p, Frame f) {
+        if (f.step == 0)
+            writer.print("Program(");
+        int structs = p.structTypes.size();
+        int vars = structs + p.varDecls.size();
+        if (item(p.structTypes, 0, itemDelimiter, f) || item(p.varDecls, structs, itemDelimiter, f)
+                || item(p.funDecls, vars, itemDelimiter, f))
+            return call((ASTNode) f.saved);
         writer.print(")");
+	    writer.flush();
         return null;
     }
 
-    @Override
-    public Void visitBinOpExpr(BinOp binOp) {
-        writer.print("BinOp(");
-        binOp.lhs.accept(this);
-        writer.print(",");
-        writer.print(binOp.op);
+    private Void varDecl(VarDecl vd, Frame f) {
+        if (f.step == 0) {
+            writer.print("VarDecl(");
+            return call(vd.type);
+        }
         writer.print(",");
-        binOp.rhs.accept(this);
-        writer.print(")");
-        return null;
-    }
-
-    @Override
-    public Void visitStmtExpr(Stmt stmt) {
-        writer.print("Stmt(");
-
+        writer.print(vd.varName);
         writer.print(")");
         return null;
     }
 
-    @Override
-    public Void visitIfStmt(If ifStmt) {
-        writer.print("If(");
-        ifStmt.ifConditionExpr.accept(this);
-        writer.print(",");
-        ifStmt.ifStmtBlock.accept(this);
-        if (ifStmt.elseStmtBlock != null) {
+    private Void structType(StructType st, Frame f) {
+        if (f.step == 0) {
+            writer.print("StructType(");
+            writer.print(st.structName);
+        }
+        if (f.index < st.structVarDecls.size()) {
             writer.print(",");
-            ifStmt.elseStmtBlock.accept(this);
+            return call(st.structVarDecls.get(f.index++));
         }
         writer.print(")");
         return null;
     }
 
-    @Override
-    public Void visitWhileStmt(While whileStmt) {
-        writer.print("While(");
-        whileStmt.whileConditionExpr.accept(this);
-        writer.print(",");
-        whileStmt.whileStmt.accept(this);
-        writer.print(")");
-        return null;
-    }
-
-    @Override
-    public Void visitAssignStmt(Assign assignStmt) {
-        writer.print("Assign(");
-        assignStmt.lhs.accept(this);
-        writer.print(",");
-        assignStmt.rhs.accept(this);
-        writer.print(")");
-        return null;
-    }
-
-    @Override
-    public Void visitReturnStmt(Return returnStmt) {
-        writer.print("Return(");
-        if (returnStmt.returnExpr == null) {
-            writer.print("");
-        } else {
-            returnStmt.returnExpr.accept(this);
+    private Void arrayType(ArrayType at, Frame f) {
+        if (f.step == 0) {
+            writer.print("ArrayType(");
+            return call(at.type);
         }
-        writer.print(")");
-        return null;
-    }
-
-    @Override
-    public Void visitExprStmt(ExprStmt exprStmt) {
-        writer.print("ExprStmt(");
-        exprStmt.exprStmt.accept(this);
-        writer.print(")");
-        return null;
-    }
-
-    @Override
-    public Void visitArrayAccessExpr(ArrayAccessExpr arrayAccessExpr) {
-        writer.print("ArrayAccessExpr(");
-        arrayAccessExpr.arrayName.accept(this);
         writer.print(",");
-        arrayAccessExpr.arrayIndex.accept(this);
+        writer.print(at.numElements);
         writer.print(")");
         return null;
     }
 
-    @Override
-    public Void visitSizeOfExpr(SizeOfExpr sizeOfExpr) {
-        writer.print("SizeOfExpr(");
-        sizeOfExpr.type.accept(this);
+    private Void funCallExpr(FunCallExpr fce, Frame f) {
+        if (f.step == 0) {
+            writer.print("FunCallExpr(");
+            writer.print(fce.functionName);
+        }
+        if (f.index < fce.functionArgsExprs.size()) {
+            writer.print(",");
+            return call(fce.functionArgsExprs.get(f.index++));
+        }
         writer.print(")");
         return null;
     }
 
-    @Override
-    public Void visitValueAtExpr(ValueAtExpr valueAtExpr) {
-        writer.print("ValueAtExpr(");
-        valueAtExpr.valueAtExp.accept(this);
-        writer.print(")");
-        return null;
+    private Void binOp(BinOp binOp, Frame f) {
+        return binary("BinOp(", binOp.lhs, ","+binOp.op+",", binOp.rhs, f);
     }
 
-    @Override
-    public Void visitTypecastExpr(TypecastExpr typecastExpr) {
-        writer.print("TypecastExpr(");
-        typecastExpr.type.accept(this);
-        writer.print(",");
-        typecastExpr.typecastedExpr.accept(this);
-        writer.print(")");
-        return null;
+    private Void ifStmt(If ifStmt, Frame f) {
+        switch (f.step) {
+            case 0:
+                writer.print("If(");
+                return call(ifStmt.ifConditionExpr);
+            case 1:
+                writer.print(",");
+                return call(ifStmt.ifStmtBlock);
+            case 2:
+                if (ifStmt.elseStmtBlock != null) {
+                    writer.print(",");
+                    return call(ifStmt.elseStmtBlock);
+                }
+                // fall through
+            default:
+                writer.print(")");
+                return null;
+        }
     }
 
-    @Override
-    public Void visitFieldAccessExpr(FieldAccessExpr fieldAccessExpr) {
-        writer.print("FieldAccessExpr(");
-        fieldAccessExpr.fieldAccessExpr.accept(this);
+    private Void fieldAccessExpr(FieldAccessExpr fieldAccessExpr, Frame f) {
+        if (f.step == 0) {
+            writer.print("FieldAccessExpr(");
+            return call(fieldAccessExpr.fieldAccessExpr);
+        }
         writer.print(",");
         writer.print(fieldAccessExpr.fieldAccessName);
         writer.print(")");
@@ -0,0 +1,359 @@
+package ast;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a Program written by ASTWriter; see there for the format. Types are rebuilt through
+ * Types, so they are canonical like those the parser makes.
+ */
+public class ASTReader {
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+    private static final BaseType[] BASE_TYPES = BaseType.values();
+    private static final Op[] OPS = Op.values();
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position = 0;
+    private int limit = 0;
+
+    private final List<String> strings = new ArrayList<String>();
+    private final List<Type> types = new ArrayList<Type>();
+
+    public ASTReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads one program. The stream is read ahead in blocks, so it should hold nothing else.
+     */
+    public Program read() throws IOException {
+        for (byte b : ASTWriter.MAGIC) {
+            if (readByte() != b)
+                throw new IOException("not a binary AST");
+        }
+        int version = readVarint();
+        if (version != ASTWriter.VERSION)
+            throw new IOException("unsupported binary AST version " + version);
+
+        ASTNode node = node();
+        if (!(node instanceof Program))
+            throw new IOException("binary AST does not hold a program");
+        return (Program) node;
+    }
+
+    // What a node holds after its span, in the order it is written.
+    private enum Field { STRING, TYPE, INT, CHAR, OP, NODE, NODES }
+
+    private static final class Slot {
+        final Field field;
+        final Class<? extends ASTNode> expected;
+
+        Slot(Field field, Class<? extends ASTNode> expected) {
+            this.field = field;
+            this.expected = expected;
+        }
+    }
+
+    private static final Slot STRING = new Slot(Field.STRING, null);
+    private static final Slot TYPE = new Slot(Field.TYPE, null);
+
+    private static Slot node(Class<? extends ASTNode> expected) {
+        return new Slot(Field.NODE, expected);
+    }
+
+    private static Slot nodes(Class<? extends ASTNode> expected) {
+        return new Slot(Field.NODES, expected);
+    }
+
+    // The fields of each node kind; null for the types, which are not nodes.
+    private static final Slot[][] FIELDS = new Slot[KINDS.length][];
+
+    static {
+        fields(NodeKind.STRUCT_TYPE, STRING, nodes(VarDecl.class));
+        fields(NodeKind.PROGRAM, nodes(StructType.class), nodes(VarDecl.class), nodes(FunDecl.class));
+        fields(NodeKind.FUN_DECL, TYPE, STRING, nodes(VarDecl.class), node(Block.class));
+        fields(NodeKind.VAR_DECL, TYPE, STRING);
+        fields(NodeKind.BLOCK, nodes(VarDecl.class), nodes(Stmt.class));
+        fields(NodeKind.WHILE, node(Expr.class), node(Stmt.class));
+        fields(NodeKind.IF, node(Expr.class), node(Stmt.class), node(Stmt.class));
+        fields(NodeKind.ASSIGN, node(Expr.class), node(Expr.class));
+        fields(NodeKind.RETURN, node(Expr.class));
+        fields(NodeKind.EXPR_STMT, node(Expr.class));
+        fields(NodeKind.VAR_EXPR, STRING);
+        fields(NodeKind.INT_LITERAL, new Slot(Field.INT, null));
+        fields(NodeKind.CHR_LITERAL, new Slot(Field.CHAR, null));
+        fields(NodeKind.STR_LITERAL, STRING);
+        fields(NodeKind.FUN_CALL_EXPR, STRING, nodes(Expr.class));
+        fields(NodeKind.BIN_OP, new Slot(Field.OP, null), node(Expr.class), node(Expr.class));
+        fields(NodeKind.ARRAY_ACCESS_EXPR, node(Expr.class), node(Expr.class));
+        fields(NodeKind.FIELD_ACCESS_EXPR, node(Expr.class), STRING);
+        fields(NodeKind.VALUE_AT_EXPR, node(Expr.class));
+        fields(NodeKind.SIZE_OF_EXPR, TYPE);
+        fields(NodeKind.TYPECAST_EXPR, TYPE, node(Expr.class));
+    }
+
+    private static void fields(NodeKind kind, Slot... slots) {
+        FIELDS[kind.ordinal()] = slots;
+    }
+
+    // A node being read: the fields read so far, and the list being read into if any.
+    private static final class Pending {
+        NodeKind kind;
+        int start;
+        int length;
+        Slot[] slots;
+        int slot;
+        final Object[] values = new Object[4];
+        int value;
+        List<ASTNode> list;
+        int remaining;
+    }
+
+    // The nodes being read, innermost last. Reading keeps its place here instead of recursing,
+    // so trees of any depth read.
+    private Pending[] pending = new Pending[64];
+    private int depth = 0;
+
+    private ASTNode node() throws IOException {
+        int base = depth;
+        if (!enter())
+            return null;
+        while (true) {
+            Pending p = pending[depth - 1];
+            if (p.slot == p.slots.length) {
+                SourceNode node = build(p);
+                node.span = p.start < 0 ? SourceNode.NONE : SourceNode.span(p.start, p.start + p.length);
+                p.list = null;
+                depth--;
+                if (depth == base)
+                    return node;
+                add(pending[depth - 1], node);
+                continue;
+            }
+            Slot slot = p.slots[p.slot];
+            switch (slot.field) {
+                case STRING:
+                    p.values[p.slot++] = string();
+                    break;
+                case TYPE:
+                    p.values[p.slot++] = type();
+                    break;
+                case INT: {
+                    int n = readVarint();
+                    p.value = (n >>> 1) ^ -(n & 1);
+                    p.slot++;
+                    break;
+                }
+                case CHAR:
+                    p.value = readVarint();
+                    p.slot++;
+                    break;
+                case OP: {
+                    int op = readVarint();
+                    if (op < 0 || op > OPS.length)
+                        throw new IOException("bad operator " + (op - 1));
+                    p.values[p.slot++] = op == 0 ? null : OPS[op - 1];
+                    break;
+                }
+                case NODE:
+                    if (!enter())
+                        p.values[p.slot++] = null;
+                    break;
+                case NODES:
+                    if (p.list == null) {
+                        int size = readVarint();
+                        p.list = new ArrayList<ASTNode>(Math.min(size, 1024));
+                        p.remaining = size;
+                    }
+                    if (p.remaining <= 0) {
+                        p.values[p.slot++] = p.list;
+                        p.list = null;
+                    } else {
+                        p.remaining--;
+                        if (!enter())
+                            p.list.add(null);
+                    }
+                    break;
+            }
+        }
+    }
+
+    // Reads the tag and span of a node and starts reading the rest; false if there is no node.
+    private boolean enter() throws IOException {
+        int tag = readVarint();
+        if (tag == 0)
+            return false;
+        if (tag < 0 || tag > KINDS.length)
+            throw new IOException("bad node kind " + (tag - 1));
+        int start = readVarint() - 1;
+        int length = readVarint();
+        if (start < -1 || length < 0 || start == -1 && length != 0)
+            throw new IOException("bad span " + start + "+" + length);
+        NodeKind kind = KINDS[tag - 1];
+        if (FIELDS[kind.ordinal()] == null)
+            throw new IOException("type " + kind + " written as a node");
+
+        if (depth == pending.length)
+            pending = Arrays.copyOf(pending, depth * 2);
+        Pending p = pending[depth];
+        if (p == null)
+            p = pending[depth] = new Pending();
+        depth++;
+        p.kind = kind;
+        p.start = start;
+        p.length = length;
+        p.slots = FIELDS[kind.ordinal()];
+        p.slot = 0;
+        return true;
+    }
+
+    // Stores a child read for the node p is reading.
+    private static void add(Pending p, ASTNode node) throws IOException {
+        Class<? extends ASTNode> expected = p.slots[p.slot].expected;
+        if (!expected.isInstance(node))
+            throw new IOException("found " + node.kind() + " where a " + expected.getSimpleName() + " belongs");
+        if (p.list != null)
+            p.list.add(node);
+        else
+            p.values[p.slot++] = node;
+    }
+
+    // The fields were checked against FIELDS as they were read, so the casts hold.
+    @SuppressWarnings("unchecked")
+    private static SourceNode build(Pending p) {
+        Object[] v = p.values;
+        switch (p.kind) {
+            case STRUCT_TYPE:
+                return new StructType((String) v[0], (List<VarDecl>) v[1]);
+            case PROGRAM:
+                return new Program((List<StructType>) v[0], (List<VarDecl>) v[1], (List<FunDecl>) v[2]);
+            case FUN_DECL:
+                return new FunDecl((Type) v[0], (String) v[1], (List<VarDecl>) v[2], (Block) v[3]);
+            case VAR_DECL:
+                return new VarDecl((Type) v[0], (String) v[1]);
+            case BLOCK:
+                return new Block((List<VarDecl>) v[0], (List<Stmt>) v[1]);
+            case WHILE:
+                return new While((Expr) v[0], (Stmt) v[1]);
+            case IF:
+                return new If((Expr) v[0], (Stmt) v[1], (Stmt) v[2]);
+            case ASSIGN:
+                return new Assign((Expr) v[0], (Expr) v[1]);
+            case RETURN:
+                return new Return((Expr) v[0]);
+            case EXPR_STMT:
+                return new ExprStmt((Expr) v[0]);
+            case VAR_EXPR:
+                return new VarExpr((String) v[0]);
+            case INT_LITERAL:
+                return new IntLiteral(p.value);
+            case CHR_LITERAL:
+                return new ChrLiteral((char) p.value);
+            case STR_LITERAL:
+                return new StrLiteral((String) v[0]);
+            case FUN_CALL_EXPR:
+                return new FunCallExpr((String) v[0], (List<Expr>) v[1]);
+            case BIN_OP:
+                return new BinOp((Expr) v[1], (Op) v[0], (Expr) v[2]);
+            case ARRAY_ACCESS_EXPR:
+                return new ArrayAccessExpr((Expr) v[0], (Expr) v[1]);
+            case FIELD_ACCESS_EXPR:
+                return new FieldAccessExpr((Expr) v[0], (String) v[1]);
+            case VALUE_AT_EXPR:
+                return new ValueAtExpr((Expr) v[0]);
+            case SIZE_OF_EXPR:
+                return new SizeOfExpr((Type) v[0]);
+            case TYPECAST_EXPR:
+                return new TypecastExpr((Type) v[0], (Expr) v[1]);
+            default:
+                throw new IllegalStateException("no fields for " + p.kind);
+        }
+    }
+
+    private String string() throws IOException {
+        int ref = readVarint();
+        if (ref == 0)
+            return null;
+        if (ref == 1) {
+            int length = readVarint();
+            if (length < 0)
+                throw new IOException("bad string length " + length);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++)
+                bytes[i] = (byte) readByte();
+            String s = new String(bytes, ASTWriter.UTF8);
+            strings.add(s);
+            return s;
+        }
+        if (ref < 0 || ref - 2 >= strings.size())
+            throw new IOException("bad string reference " + (ref - 2));
+        return strings.get(ref - 2);
+    }
+
+    private Type type() throws IOException {
+        int ref = readVarint();
+        if (ref == 0)
+            return null;
+        if (ref >= 2 || ref < 0) {
+            if (ref < 0 || ref - 2 >= types.size())
+                throw new IOException("bad type reference " + (ref - 2));
+            return types.get(ref - 2);
+        }
+
+        int kind = readVarint();
+        if (kind < 0 || kind >= KINDS.length)
+            throw new IOException("bad type kind " + kind);
+        Type type;
+        switch (KINDS[kind]) {
+            case BASE_TYPE: {
+                int ordinal = readVarint();
+                if (ordinal < 0 || ordinal >= BASE_TYPES.length)
+                    throw new IOException("bad base type " + ordinal);
+                type = BASE_TYPES[ordinal];
+                break;
+            }
+            case POINTER_TYPE:
+                type = Types.pointer(type());
+                break;
+            case ARRAY_TYPE:
+                type = Types.array(type(), readVarint());
+                break;
+            case STRUCT_TYPE:
+                type = Types.struct(string());
+                break;
+            default:
+                throw new IOException("bad type kind " + kind);
+        }
+        types.add(type);
+        return type;
+    }
+
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("varint too long");
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                throw new EOFException("binary AST ends early");
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+}
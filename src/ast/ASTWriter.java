@@ -0,0 +1,338 @@
+package ast;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a Program in the binary AST format, which ASTReader reads back.
+ *
+ * The file starts with the bytes "MAST" and the format version. Then comes the program as a
+ * pre-order walk of its nodes. Each node starts with its NodeKind ordinal plus one, or 0 for a
+ * missing node, then its span as start offset plus one and length, or 0 and 0 for the span
+ * NONE, followed by its payload and children in field order; a list is its length followed by
+ * its elements. Integers are unsigned LEB128 varints, zig-zag encoded if they can be negative.
+ *
+ * Strings (names and literals) and types are numbered in order of first use and written by
+ * number: 0 is null, 1 means a new entry follows in full and takes the next number, and n + 2
+ * refers to entry n. A string entry is its UTF-8 length and bytes. A type entry is its NodeKind
+ * ordinal and then a BaseType ordinal, a pointed-to type, an element type and length, or a
+ * struct name. Types are canonical, so each distinct type is written once. Struct declarations
+ * are nodes, not types.
+ *
+ * Only the syntax is written, as in a FlatAST; the semantic passes fill in the rest again. The
+ * walk keeps its place on a stack of frames (see StackVisitor), so trees of any depth write.
+ */
+public class ASTWriter extends StackVisitor<Void> {
+
+    public static final byte[] MAGIC = { 'M', 'A', 'S', 'T' };
+    public static final int VERSION = 3;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[1 << 16];
+    private int buffered = 0;
+    private IOException error;
+
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+    private final Map<Type, Integer> types = new IdentityHashMap<Type, Integer>();
+
+    public ASTWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes program and flushes the stream; does not close it.
+     */
+    public void write(Program program) throws IOException {
+        for (byte b : MAGIC)
+            writeByte(b);
+        writeVarint(VERSION);
+        if (program == null)
+            writeVarint(0);
+        walk(program);
+        flushBuffer();
+        if (error != null)
+            throw error;
+        out.flush();
+    }
+
+    // Writes node, or 0 if there is none, and asks for the rest of it if it has child nodes.
+    private Void node(ASTNode node) {
+        if (node == null || leaf(node, node.kind())) {
+            if (node == null)
+                writeVarint(0);
+            return call(null);
+        }
+        return call(node);
+    }
+
+    // Writes node whole if it has no child nodes, which spares it a frame; false if it has.
+    private boolean leaf(ASTNode node, NodeKind kind) {
+        switch (kind) {
+            case VAR_DECL: {
+                VarDecl vd = (VarDecl) node;
+                header(node, kind);
+                type(vd.type);
+                string(vd.varName);
+                return true;
+            }
+            case VAR_EXPR:
+                header(node, kind);
+                string(((VarExpr) node).name);
+                return true;
+            case INT_LITERAL: {
+                int value = ((IntLiteral) node).value;
+                header(node, kind);
+                writeVarint((value << 1) ^ (value >> 31));
+                return true;
+            }
+            case CHR_LITERAL:
+                header(node, kind);
+                writeVarint(((ChrLiteral) node).value);
+                return true;
+            case STR_LITERAL:
+                header(node, kind);
+                string(((StrLiteral) node).value);
+                return true;
+            case SIZE_OF_EXPR:
+                header(node, kind);
+                type(((SizeOfExpr) node).type);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void header(ASTNode node, NodeKind kind) {
+        writeVarint(kind.ordinal() + 1);
+        if (node instanceof SourceNode) {
+            SourceNode source = (SourceNode) node;
+            if (source.span == SourceNode.NONE) {
+                writeVarint(0);
+                writeVarint(0);
+            } else {
+                writeVarint(source.start() + 1);
+                writeVarint(source.end() - source.start());
+            }
+        }
+    }
+
+    // Whether nodes has an element left to write, writing its length before the first. f.mark
+    // is the list of the node being written and f.index the next element; both move on once
+    // the list is done.
+    private boolean more(List<? extends ASTNode> nodes, Frame f) {
+        if (f.index == 0)
+            writeVarint(nodes.size());
+        if (f.index < nodes.size())
+            return true;
+        f.index = 0;
+        f.mark++;
+        return false;
+    }
+
+    private void string(String s) {
+        if (s == null) {
+            writeVarint(0);
+            return;
+        }
+        Integer index = strings.get(s);
+        if (index != null) {
+            writeVarint(index + 2);
+            return;
+        }
+        strings.put(s, strings.size());
+        writeVarint(1);
+        byte[] bytes = s.getBytes(UTF8);
+        writeVarint(bytes.length);
+        for (byte b : bytes)
+            writeByte(b);
+    }
+
+    private void type(Type type) {
+        if (type == null) {
+            writeVarint(0);
+            return;
+        }
+        Integer index = types.get(type);
+        if (index != null) {
+            writeVarint(index + 2);
+            return;
+        }
+        writeVarint(1);
+        writeVarint(type.kind().ordinal());
+        if (type instanceof BaseType) {
+            writeVarint(((BaseType) type).ordinal());
+        } else if (type instanceof PointerType) {
+            type(((PointerType) type).type);
+        } else if (type instanceof ArrayType) {
+            type(((ArrayType) type).type);
+            writeVarint(((ArrayType) type).numElements);
+        } else {
+            string(((StructType) type).structName);
+        }
+        // Numbered once complete, so the entries it refers to come first.
+        types.put(type, types.size());
+    }
+
+    @Override
+    protected Void step(Frame f, Void child) {
+        ASTNode node = f.node;
+        NodeKind kind = node.kind();
+        if (f.step == 0) {
+            if (leaf(node, kind))
+                return null;
+            header(node, kind);
+        }
+        switch (kind) {
+            case STRUCT_TYPE: {
+                StructType st = (StructType) node;
+                if (f.step == 0)
+                    string(st.structName);
+                if (f.mark == 0 && more(st.structVarDecls, f))
+                    return node(st.structVarDecls.get(f.index++));
+                return null;
+            }
+            case PROGRAM: {
+                Program p = (Program) node;
+                if (f.mark == 0 && more(p.structTypes, f))
+                    return node(p.structTypes.get(f.index++));
+                if (f.mark == 1 && more(p.varDecls, f))
+                    return node(p.varDecls.get(f.index++));
+                if (f.mark == 2 && more(p.funDecls, f))
+                    return node(p.funDecls.get(f.index++));
+                return null;
+            }
+            case FUN_DECL: {
+                FunDecl fd = (FunDecl) node;
+                if (f.step == 0) {
+                    type(fd.type);
+                    string(fd.name);
+                }
+                if (f.mark == 0 && more(fd.params, f))
+                    return node(fd.params.get(f.index++));
+                if (f.mark == 1) {
+                    f.mark++;
+                    return node(fd.block());
+                }
+                return null;
+            }
+            case BLOCK: {
+                Block b = (Block) node;
+                if (f.mark == 0 && more(b.varDeclsInBlock, f))
+                    return node(b.varDeclsInBlock.get(f.index++));
+                if (f.mark == 1 && more(b.stmtsInBlock, f))
+                    return node(b.stmtsInBlock.get(f.index++));
+                return null;
+            }
+            case WHILE: {
+                While whileStmt = (While) node;
+                switch (f.step) {
+                    case 0:  return node(whileStmt.whileConditionExpr);
+                    case 1:  return node(whileStmt.whileStmt);
+                    default: return null;
+                }
+            }
+            case IF: {
+                If ifStmt = (If) node;
+                switch (f.step) {
+                    case 0:  return node(ifStmt.ifConditionExpr);
+                    case 1:  return node(ifStmt.ifStmtBlock);
+                    case 2:  return node(ifStmt.elseStmtBlock);
+                    default: return null;
+                }
+            }
+            case ASSIGN: {
+                Assign assignStmt = (Assign) node;
+                switch (f.step) {
+                    case 0:  return node(assignStmt.lhs);
+                    case 1:  return node(assignStmt.rhs);
+                    default: return null;
+                }
+            }
+            case RETURN:
+                return f.step == 0 ? node(((Return) node).returnExpr) : null;
+            case EXPR_STMT:
+                return f.step == 0 ? node(((ExprStmt) node).exprStmt) : null;
+            case FUN_CALL_EXPR: {
+                FunCallExpr fce = (FunCallExpr) node;
+                if (f.step == 0)
+                    string(fce.functionName);
+                if (f.mark == 0 && more(fce.functionArgsExprs, f))
+                    return node(fce.functionArgsExprs.get(f.index++));
+                return null;
+            }
+            case BIN_OP: {
+                BinOp binOp = (BinOp) node;
+                switch (f.step) {
+                    case 0:
+                        writeVarint(binOp.op == null ? 0 : binOp.op.ordinal() + 1);
+                        return node(binOp.lhs);
+                    case 1:
+                        return node(binOp.rhs);
+                    default:
+                        return null;
+                }
+            }
+            case ARRAY_ACCESS_EXPR: {
+                ArrayAccessExpr arrayAccessExpr = (ArrayAccessExpr) node;
+                switch (f.step) {
+                    case 0:  return node(arrayAccessExpr.arrayName);
+                    case 1:  return node(arrayAccessExpr.arrayIndex);
+                    default: return null;
+                }
+            }
+            case FIELD_ACCESS_EXPR: {
+                FieldAccessExpr fieldAccessExpr = (FieldAccessExpr) node;
+                if (f.step == 0)
+                    return node(fieldAccessExpr.fieldAccessExpr);
+                string(fieldAccessExpr.fieldAccessName);
+                return null;
+            }
+            case VALUE_AT_EXPR:
+                return f.step == 0 ? node(((ValueAtExpr) node).valueAtExp) : null;
+            case TYPECAST_EXPR: {
+                TypecastExpr typecastExpr = (TypecastExpr) node;
+                if (f.step == 0) {
+                    type(typecastExpr.type);
+                    return node(typecastExpr.typecastedExpr);
+                }
+                return null;
+            }
+            default:
+                // Types are written through type(); only struct declarations are nodes.
+                throw new IllegalStateException("type written as a node");
+        }
+    }
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    private void writeByte(int b) {
+        if (buffered == buffer.length)
+            flushBuffer();
+        buffer[buffered++] = (byte) b;
+    }
+
+    // The steps cannot throw, so the first write error is kept for write() to throw.
+    private void flushBuffer() {
+        if (error == null) {
+            try {
+                out.write(buffer, 0, buffered);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        buffered = 0;
+    }
+}
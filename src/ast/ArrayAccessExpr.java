@@ -17,4 +17,9 @@ public class ArrayAccessExpr extends Expr {
     public <T> T accept(ASTVisitor<T> v) {
         return v.visitArrayAccessExpr(this);
     }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.ARRAY_ACCESS_EXPR;
+    }
 }
@@ -8,7 +8,7 @@ public class ArrayType implements Type {
     public final Type type;
     public final int numElements;
 
-    public ArrayType(Type type, int numElements) {
+    ArrayType(Type type, int numElements) {
         this.type = type;
         this.numElements = numElements;
     }
@@ -18,6 +18,11 @@ public class ArrayType implements Type {
         return v.visitArrayType(this);
     }
 
+    @Override
+    public NodeKind kind() {
+        return NodeKind.ARRAY_TYPE;
+    }
+
     @Override
     public int getSize() {
         return 4 * type.getSize() * numElements;
@@ -17,4 +17,9 @@ public class Assign extends Stmt {
     public <T> T accept(ASTVisitor<T> v) {
         return v.visitAssignStmt(this);
     }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.ASSIGN;
+    }
 }
@@ -7,6 +7,10 @@ public enum BaseType implements Type {
         return v.visitBaseType(this);
     }
 
+    public NodeKind kind() {
+        return NodeKind.BASE_TYPE;
+    }
+
     @Override
     public int getSize() {
         return 1;
@@ -19,4 +19,9 @@ public class BinOp extends Expr {
     public <T> T accept(ASTVisitor<T> v) {
         return v.visitBinOpExpr(this);
     }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.BIN_OP;
+    }
 }
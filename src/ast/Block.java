@@ -15,4 +15,8 @@ public class Block extends Stmt {
     public <T> T accept(ASTVisitor<T> v) {
 	    return v.visitBlock(this);
     }
+
+    public NodeKind kind() {
+        return NodeKind.BLOCK;
+    }
 }
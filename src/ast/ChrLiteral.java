@@ -16,4 +16,9 @@ public class ChrLiteral extends Expr {
         return v.visitChrLiteral(this);
     }
 
+    @Override
+    public NodeKind kind() {
+        return NodeKind.CHR_LITERAL;
+    }
+
 }
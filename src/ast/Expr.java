@@ -1,6 +1,6 @@
 package ast;
 
-public abstract class Expr implements ASTNode {
+public abstract class Expr extends SourceNode {
 
     public Type type; // to be filled in by the type analyser
     public abstract <T> T accept(ASTVisitor<T> v);
@@ -15,4 +15,9 @@ public class ExprStmt extends Stmt {
     public <T> T accept(ASTVisitor<T> v) {
         return v.visitExprStmt(this);
     }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.EXPR_STMT;
+    }
 }
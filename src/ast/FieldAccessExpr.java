@@ -7,6 +7,7 @@ public class FieldAccessExpr extends Expr {
 
     public final Expr fieldAccessExpr;
     public final String fieldAccessName;
+    public StructLayout.Field field; // to be filled in by the type analyser
 
     public FieldAccessExpr(Expr fieldAccessExpr, String fieldAccessName) {
         this.fieldAccessExpr = fieldAccessExpr;
@@ -17,4 +18,9 @@ public class FieldAccessExpr extends Expr {
     public <T> T accept(ASTVisitor<T> v) {
         return v.visitFieldAccessExpr(this);
     }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.FIELD_ACCESS_EXPR;
+    }
 }
@@ -0,0 +1,311 @@
+package ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An AST stored in primitive arrays instead of one object per node.
+ *
+ * A node is an index into the arrays. Each node has a kind, an int value and a text (an index
+ * into a string table) for its payload, and a run of child indices in a shared edge array.
+ * NodeKind lists what each kind keeps where. Children are added before their parent, so the
+ * root is the last node.
+ *
+ * Only the syntax is kept: the annotations the semantic passes add to the object tree (types
+ * of expressions, declarations of names, frame offsets) are not. FlatASTBuilder flattens an
+ * object tree and toTree() turns a flat AST back into one.
+ */
+public class FlatAST {
+
+    public static final int NONE = -1;
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+
+    private byte[] kinds;
+    private int[] values;
+    private int[] texts;
+    private int[] firstChild;
+    private int[] childCount;
+    private int size = 0;
+
+    private int[] edges;
+    private int edgeCount = 0;
+
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+
+    public FlatAST() {
+        this(256);
+    }
+
+    public FlatAST(int capacity) {
+        capacity = Math.max(capacity, 16);
+        kinds = new byte[capacity];
+        values = new int[capacity];
+        texts = new int[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        edges = new int[capacity];
+    }
+
+    /**
+     * Appends a node and returns its index. text may be null.
+     */
+    public int add(NodeKind kind, int value, String text, int... children) {
+        if (size == kinds.length)
+            growNodes();
+        while (edgeCount + children.length > edges.length)
+            edges = Arrays.copyOf(edges, edges.length * 2);
+
+        kinds[size] = (byte) kind.ordinal();
+        values[size] = value;
+        texts[size] = text == null ? NONE : intern(text);
+        firstChild[size] = edgeCount;
+        childCount[size] = children.length;
+        System.arraycopy(children, 0, edges, edgeCount, children.length);
+        edgeCount += children.length;
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The last node added, which is the root once a tree is complete.
+     */
+    public int root() {
+        return size - 1;
+    }
+
+    public NodeKind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    public int value(int node) {
+        return values[node];
+    }
+
+    public String text(int node) {
+        int t = texts[node];
+        return t == NONE ? null : strings.get(t);
+    }
+
+    public int childCount(int node) {
+        return childCount[node];
+    }
+
+    /**
+     * The i^th child of node, or NONE.
+     */
+    public int child(int node, int i) {
+        return edges[firstChild[node] + i];
+    }
+
+    /**
+     * Number of consecutive children of node from the from^th on that are of the given kind,
+     * such as the VAR_DECLs that start a BLOCK.
+     */
+    public int countRun(int node, int from, NodeKind kind) {
+        int i = from;
+        while (i < childCount[node]) {
+            int c = child(node, i);
+            if (c == NONE || kinds[c] != kind.ordinal())
+                break;
+            i++;
+        }
+        return i - from;
+    }
+
+    public <T> T accept(int node, FlatASTVisitor<T> v) {
+        switch (kind(node)) {
+            case BASE_TYPE:         return v.visitBaseType(this, node);
+            case STRUCT_TYPE:       return v.visitStructType(this, node);
+            case ARRAY_TYPE:        return v.visitArrayType(this, node);
+            case POINTER_TYPE:      return v.visitPointerType(this, node);
+            case PROGRAM:           return v.visitProgram(this, node);
+            case FUN_DECL:          return v.visitFunDecl(this, node);
+            case VAR_DECL:          return v.visitVarDecl(this, node);
+            case BLOCK:             return v.visitBlock(this, node);
+            case WHILE:             return v.visitWhileStmt(this, node);
+            case IF:                return v.visitIfStmt(this, node);
+            case ASSIGN:            return v.visitAssignStmt(this, node);
+            case RETURN:            return v.visitReturnStmt(this, node);
+            case EXPR_STMT:         return v.visitExprStmt(this, node);
+            case VAR_EXPR:          return v.visitVarExpr(this, node);
+            case INT_LITERAL:       return v.visitIntLiteral(this, node);
+            case CHR_LITERAL:       return v.visitChrLiteral(this, node);
+            case STR_LITERAL:       return v.visitStrLiteral(this, node);
+            case FUN_CALL_EXPR:     return v.visitFunCallExpr(this, node);
+            case BIN_OP:            return v.visitBinOpExpr(this, node);
+            case ARRAY_ACCESS_EXPR: return v.visitArrayAccessExpr(this, node);
+            case FIELD_ACCESS_EXPR: return v.visitFieldAccessExpr(this, node);
+            case VALUE_AT_EXPR:     return v.visitValueAtExpr(this, node);
+            case SIZE_OF_EXPR:      return v.visitSizeOfExpr(this, node);
+            case TYPECAST_EXPR:     return v.visitTypecastExpr(this, node);
+            default:
+                throw new IllegalStateException("unknown node kind " + kind(node));
+        }
+    }
+
+    /**
+     * Rebuilds the object tree of a PROGRAM node.
+     */
+    public Program toProgram(int node) {
+        return (Program) toTree(node);
+    }
+
+    /**
+     * Rebuilds the object tree of node; null for NONE.
+     */
+    public ASTNode toTree(int node) {
+        if (node == NONE)
+            return null;
+        // A post-order walk with stacks of its own rather than recursion, so any depth of
+        // nesting rebuilds: path holds the nodes being rebuilt and the next child of each, and
+        // built the trees of their children so far, which a node takes once it has them all.
+        int[] path = new int[32];
+        int[] next = new int[32];
+        int depth = 1;
+        path[0] = node;
+        ASTNode[] built = new ASTNode[32];
+        int count = 0;
+        while (true) {
+            int top = path[depth - 1];
+            if (next[depth - 1] < childCount(top)) {
+                int child = child(top, next[depth - 1]++);
+                if (child == NONE || childCount(child) == 0) {
+                    // Nothing to wait for: a leaf is rebuilt on the spot.
+                    if (count == built.length)
+                        built = Arrays.copyOf(built, count * 2);
+                    built[count] = child == NONE ? null : build(child, built, count);
+                    count++;
+                } else {
+                    if (depth == path.length) {
+                        path = Arrays.copyOf(path, depth * 2);
+                        next = Arrays.copyOf(next, depth * 2);
+                    }
+                    path[depth] = child;
+                    next[depth++] = 0;
+                }
+                continue;
+            }
+            count -= childCount(top);
+            ASTNode tree = build(top, built, count);
+            if (--depth == 0)
+                return tree;
+            if (count == built.length)
+                built = Arrays.copyOf(built, count * 2);
+            built[count++] = tree;
+        }
+    }
+
+    // Rebuilds node from the trees of its children, which are built[at] on.
+    private ASTNode build(int node, ASTNode[] built, int at) {
+        switch (kind(node)) {
+            case BASE_TYPE:
+                return BaseType.values()[value(node)];
+            case STRUCT_TYPE:
+                if (childCount(node) == 0)
+                    return Types.struct(text(node));
+                return new StructType(text(node), varDecls(built, at, at + childCount(node)));
+            case ARRAY_TYPE:
+                return Types.array((Type) built[at], value(node));
+            case POINTER_TYPE:
+                return Types.pointer((Type) built[at]);
+            case PROGRAM: {
+                int structs = countRun(node, 0, NodeKind.STRUCT_TYPE);
+                int vars = structs + countRun(node, structs, NodeKind.VAR_DECL);
+                List<StructType> structTypes = new ArrayList<StructType>(structs);
+                for (int i = 0; i < structs; i++)
+                    structTypes.add((StructType) built[at + i]);
+                List<FunDecl> funDecls = new ArrayList<FunDecl>(childCount(node) - vars);
+                for (int i = vars; i < childCount(node); i++)
+                    funDecls.add((FunDecl) built[at + i]);
+                return new Program(structTypes, varDecls(built, at + structs, at + vars), funDecls);
+            }
+            case FUN_DECL: {
+                int last = childCount(node) - 1;
+                return new FunDecl((Type) built[at], text(node), varDecls(built, at + 1, at + last),
+                        (Block) built[at + last]);
+            }
+            case VAR_DECL:
+                return new VarDecl((Type) built[at], text(node));
+            case BLOCK: {
+                int vars = countRun(node, 0, NodeKind.VAR_DECL);
+                List<Stmt> stmts = new ArrayList<Stmt>(childCount(node) - vars);
+                for (int i = vars; i < childCount(node); i++)
+                    stmts.add((Stmt) built[at + i]);
+                return new Block(varDecls(built, at, at + vars), stmts);
+            }
+            case WHILE:
+                return new While((Expr) built[at], (Stmt) built[at + 1]);
+            case IF:
+                return new If((Expr) built[at], (Stmt) built[at + 1], (Stmt) built[at + 2]);
+            case ASSIGN:
+                return new Assign((Expr) built[at], (Expr) built[at + 1]);
+            case RETURN:
+                return new Return((Expr) built[at]);
+            case EXPR_STMT:
+                return new ExprStmt((Expr) built[at]);
+            case VAR_EXPR:
+                return new VarExpr(text(node));
+            case INT_LITERAL:
+                return new IntLiteral(value(node));
+            case CHR_LITERAL:
+                return new ChrLiteral((char) value(node));
+            case STR_LITERAL:
+                return new StrLiteral(text(node));
+            case FUN_CALL_EXPR: {
+                List<Expr> args = new ArrayList<Expr>(childCount(node));
+                for (int i = 0; i < childCount(node); i++)
+                    args.add((Expr) built[at + i]);
+                return new FunCallExpr(text(node), args);
+            }
+            case BIN_OP:
+                return new BinOp((Expr) built[at], value(node) == NONE ? null : Op.values()[value(node)],
+                        (Expr) built[at + 1]);
+            case ARRAY_ACCESS_EXPR:
+                return new ArrayAccessExpr((Expr) built[at], (Expr) built[at + 1]);
+            case FIELD_ACCESS_EXPR:
+                return new FieldAccessExpr((Expr) built[at], text(node));
+            case VALUE_AT_EXPR:
+                return new ValueAtExpr((Expr) built[at]);
+            case SIZE_OF_EXPR:
+                return new SizeOfExpr((Type) built[at]);
+            case TYPECAST_EXPR:
+                return new TypecastExpr((Type) built[at], (Expr) built[at + 1]);
+            default:
+                throw new IllegalStateException("unknown node kind " + kind(node));
+        }
+    }
+
+    private static List<VarDecl> varDecls(ASTNode[] built, int from, int to) {
+        List<VarDecl> decls = new ArrayList<VarDecl>(Math.max(to - from, 0));
+        for (int i = from; i < to; i++)
+            decls.add((VarDecl) built[i]);
+        return decls;
+    }
+
+    private int intern(String text) {
+        Integer index = stringIndex.get(text);
+        if (index == null) {
+            index = strings.size();
+            strings.add(text);
+            stringIndex.put(text, index);
+        }
+        return index;
+    }
+
+    private void growNodes() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        values = Arrays.copyOf(values, capacity);
+        texts = Arrays.copyOf(texts, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        childCount = Arrays.copyOf(childCount, capacity);
+    }
+}
@@ -0,0 +1,200 @@
+package ast;
+
+/**
+ * Flattens an object tree into a FlatAST. Each node's children are added, then the node, and
+ * the walk returns the node's index. The walk keeps its place on a stack of frames (see
+ * StackVisitor), so trees of any depth flatten.
+ */
+public class FlatASTBuilder extends StackVisitor<Integer> {
+
+    private final FlatAST ast;
+
+    public FlatASTBuilder(FlatAST ast) {
+        this.ast = ast;
+    }
+
+    /**
+     * Flattens program into a new FlatAST whose root is the PROGRAM node.
+     */
+    public static FlatAST flatten(Program program) {
+        FlatAST ast = new FlatAST();
+        program.accept(new FlatASTBuilder(ast));
+        return ast;
+    }
+
+    private static final int[] NO_CHILDREN = new int[0];
+
+    // Asks for the node's children one a step, keeping their indices in f.saved, then adds
+    // the node. Children without children of their own are added on the spot, which spares
+    // them a frame.
+    @Override
+    protected Integer step(Frame f, Integer child) {
+        NodeKind kind = f.node.kind();
+        int[] children;
+        if (f.step == 0) {
+            children = new int[childCount(f.node, kind)];
+            f.saved = children;
+        } else {
+            children = (int[]) f.saved;
+            children[f.index++] = child;
+        }
+        while (f.index < children.length) {
+            ASTNode next = child(f.node, kind, f.index);
+            if (next == null) {
+                children[f.index++] = FlatAST.NONE;
+                continue;
+            }
+            NodeKind nextKind = next.kind();
+            if (childCount(next, nextKind) != 0)
+                return call(next);
+            children[f.index++] = add(next, nextKind, NO_CHILDREN);
+        }
+        return add(f.node, kind, children);
+    }
+
+    // The children of each kind, laid out as NodeKind lists them.
+    private static int childCount(ASTNode node, NodeKind kind) {
+        switch (kind) {
+            case STRUCT_TYPE:
+                return ((StructType) node).structVarDecls.size();
+            case PROGRAM: {
+                Program p = (Program) node;
+                return p.structTypes.size() + p.varDecls.size() + p.funDecls.size();
+            }
+            case FUN_DECL:
+                return ((FunDecl) node).params.size() + 2;
+            case BLOCK: {
+                Block b = (Block) node;
+                return b.varDeclsInBlock.size() + b.stmtsInBlock.size();
+            }
+            case FUN_CALL_EXPR:
+                return ((FunCallExpr) node).functionArgsExprs.size();
+            case IF:
+                return 3;
+            case WHILE:
+            case ASSIGN:
+            case BIN_OP:
+            case ARRAY_ACCESS_EXPR:
+            case TYPECAST_EXPR:
+                return 2;
+            case ARRAY_TYPE:
+            case POINTER_TYPE:
+            case VAR_DECL:
+            case RETURN:
+            case EXPR_STMT:
+            case FIELD_ACCESS_EXPR:
+            case VALUE_AT_EXPR:
+            case SIZE_OF_EXPR:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    private static ASTNode child(ASTNode node, NodeKind kind, int i) {
+        switch (kind) {
+            case STRUCT_TYPE:
+                return ((StructType) node).structVarDecls.get(i);
+            case PROGRAM: {
+                Program p = (Program) node;
+                if (i < p.structTypes.size())
+                    return p.structTypes.get(i);
+                i -= p.structTypes.size();
+                if (i < p.varDecls.size())
+                    return p.varDecls.get(i);
+                return p.funDecls.get(i - p.varDecls.size());
+            }
+            case FUN_DECL: {
+                FunDecl fd = (FunDecl) node;
+                if (i == 0)
+                    return fd.type;
+                if (i <= fd.params.size())
+                    return fd.params.get(i - 1);
+                return fd.block();
+            }
+            case BLOCK: {
+                Block b = (Block) node;
+                if (i < b.varDeclsInBlock.size())
+                    return b.varDeclsInBlock.get(i);
+                return b.stmtsInBlock.get(i - b.varDeclsInBlock.size());
+            }
+            case FUN_CALL_EXPR:
+                return ((FunCallExpr) node).functionArgsExprs.get(i);
+            case IF: {
+                If ifStmt = (If) node;
+                return i == 0 ? ifStmt.ifConditionExpr : i == 1 ? ifStmt.ifStmtBlock : ifStmt.elseStmtBlock;
+            }
+            case WHILE: {
+                While whileStmt = (While) node;
+                return i == 0 ? whileStmt.whileConditionExpr : whileStmt.whileStmt;
+            }
+            case ASSIGN: {
+                Assign assignStmt = (Assign) node;
+                return i == 0 ? assignStmt.lhs : assignStmt.rhs;
+            }
+            case BIN_OP: {
+                BinOp binOp = (BinOp) node;
+                return i == 0 ? binOp.lhs : binOp.rhs;
+            }
+            case ARRAY_ACCESS_EXPR: {
+                ArrayAccessExpr arrayAccessExpr = (ArrayAccessExpr) node;
+                return i == 0 ? arrayAccessExpr.arrayName : arrayAccessExpr.arrayIndex;
+            }
+            case TYPECAST_EXPR: {
+                TypecastExpr typecastExpr = (TypecastExpr) node;
+                return i == 0 ? typecastExpr.type : typecastExpr.typecastedExpr;
+            }
+            case ARRAY_TYPE:
+                return ((ArrayType) node).type;
+            case POINTER_TYPE:
+                return ((PointerType) node).type;
+            case VAR_DECL:
+                return ((VarDecl) node).type;
+            case RETURN:
+                return ((Return) node).returnExpr;
+            case EXPR_STMT:
+                return ((ExprStmt) node).exprStmt;
+            case FIELD_ACCESS_EXPR:
+                return ((FieldAccessExpr) node).fieldAccessExpr;
+            case VALUE_AT_EXPR:
+                return ((ValueAtExpr) node).valueAtExp;
+            case SIZE_OF_EXPR:
+                return ((SizeOfExpr) node).type;
+            default:
+                throw new IllegalStateException(kind + " has no children");
+        }
+    }
+
+    private int add(ASTNode node, NodeKind kind, int[] children) {
+        switch (kind) {
+            case BASE_TYPE:
+                return ast.add(NodeKind.BASE_TYPE, ((BaseType) node).ordinal(), null);
+            case STRUCT_TYPE:
+                return ast.add(NodeKind.STRUCT_TYPE, 0, ((StructType) node).structName, children);
+            case ARRAY_TYPE:
+                return ast.add(NodeKind.ARRAY_TYPE, ((ArrayType) node).numElements, null, children);
+            case FUN_DECL:
+                return ast.add(NodeKind.FUN_DECL, 0, ((FunDecl) node).name, children);
+            case VAR_DECL:
+                return ast.add(NodeKind.VAR_DECL, 0, ((VarDecl) node).varName, children);
+            case VAR_EXPR:
+                return ast.add(NodeKind.VAR_EXPR, 0, ((VarExpr) node).name, children);
+            case INT_LITERAL:
+                return ast.add(NodeKind.INT_LITERAL, ((IntLiteral) node).value, null, children);
+            case CHR_LITERAL:
+                return ast.add(NodeKind.CHR_LITERAL, ((ChrLiteral) node).value, null, children);
+            case STR_LITERAL:
+                return ast.add(NodeKind.STR_LITERAL, 0, ((StrLiteral) node).value, children);
+            case FUN_CALL_EXPR:
+                return ast.add(NodeKind.FUN_CALL_EXPR, 0, ((FunCallExpr) node).functionName, children);
+            case BIN_OP: {
+                Op op = ((BinOp) node).op;
+                return ast.add(NodeKind.BIN_OP, op == null ? FlatAST.NONE : op.ordinal(), null, children);
+            }
+            case FIELD_ACCESS_EXPR:
+                return ast.add(NodeKind.FIELD_ACCESS_EXPR, 0, ((FieldAccessExpr) node).fieldAccessName, children);
+            default:
+                return ast.add(kind, 0, null, children);
+        }
+    }
+}
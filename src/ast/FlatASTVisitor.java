@@ -0,0 +1,32 @@
+package ast;
+
+/**
+ * Visitor over a FlatAST, with one method per node kind like ASTVisitor. A node is passed as
+ * the arena holding it and its index there; FlatAST.accept dispatches on the node's kind.
+ */
+public interface FlatASTVisitor<T> {
+    public T visitBaseType(FlatAST ast, int node);
+    public T visitStructType(FlatAST ast, int node);
+    public T visitBlock(FlatAST ast, int node);
+    public T visitFunDecl(FlatAST ast, int node);
+    public T visitProgram(FlatAST ast, int node);
+    public T visitVarDecl(FlatAST ast, int node);
+    public T visitVarExpr(FlatAST ast, int node);
+    public T visitArrayType(FlatAST ast, int node);
+    public T visitPointerType(FlatAST ast, int node);
+    public T visitIntLiteral(FlatAST ast, int node);
+    public T visitChrLiteral(FlatAST ast, int node);
+    public T visitStrLiteral(FlatAST ast, int node);
+    public T visitFunCallExpr(FlatAST ast, int node);
+    public T visitBinOpExpr(FlatAST ast, int node);
+    public T visitIfStmt(FlatAST ast, int node);
+    public T visitWhileStmt(FlatAST ast, int node);
+    public T visitAssignStmt(FlatAST ast, int node);
+    public T visitReturnStmt(FlatAST ast, int node);
+    public T visitExprStmt(FlatAST ast, int node);
+    public T visitArrayAccessExpr(FlatAST ast, int node);
+    public T visitSizeOfExpr(FlatAST ast, int node);
+    public T visitValueAtExpr(FlatAST ast, int node);
+    public T visitTypecastExpr(FlatAST ast, int node);
+    public T visitFieldAccessExpr(FlatAST ast, int node);
+}
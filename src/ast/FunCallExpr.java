@@ -21,4 +21,9 @@ public class FunCallExpr extends Expr {
     public <T> T accept(ASTVisitor<T> v) {
         return v.visitFunCallExpr(this);
     }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.FUN_CALL_EXPR;
+    }
 }
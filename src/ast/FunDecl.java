@@ -2,11 +2,11 @@ package ast;
 
 import java.util.List;
 
-public class FunDecl implements ASTNode {
+public class FunDecl extends SourceNode {
     public final Type type;
     public final String name;
     public final List<VarDecl> params;
-    public final Block block;
+    private final Block block;
 
     public FunDecl(Type type, String name, List<VarDecl> params, Block block) {
 	    this.type = type;
@@ -15,7 +15,18 @@ public class FunDecl implements ASTNode {
 	    this.block = block;
     }
 
+    /**
+     * The function body; see LazyFunDecl for bodies parsed on first use.
+     */
+    public Block block() {
+        return block;
+    }
+
     public <T> T accept(ASTVisitor<T> v) {
 	return v.visitFunDecl(this);
     }
+
+    public NodeKind kind() {
+        return NodeKind.FUN_DECL;
+    }
 }
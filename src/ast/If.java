@@ -19,4 +19,9 @@ public class If extends Stmt {
     public <T> T accept(ASTVisitor<T> v) {
         return v.visitIfStmt(this);
     }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.IF;
+    }
 }
@@ -15,4 +15,9 @@ public class IntLiteral extends Expr {
     public <T> T accept(ASTVisitor<T> v) {
         return v.visitIntLiteral(this);
     }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.INT_LITERAL;
+    }
 }
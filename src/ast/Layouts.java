@@ -0,0 +1,133 @@
+package ast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sizes and alignments of the types of one program, in bytes, and the layouts of its structs.
+ *
+ * An int or a pointer takes a word and a char a byte. An array takes its element size times its
+ * length. A struct's fields are laid out in decreasing order of alignment, which leaves no
+ * padding between them, and its size is rounded up to its alignment. Programs cannot take the
+ * address of a field, so the order is not visible to them.
+ *
+ * Each struct declaration is laid out once, when it is first asked for. A struct type in a
+ * declaration is the canonical reference from Types, so it is looked up by identity rather than
+ * by name. A struct that is unknown or contains itself has no layout and size 0.
+ *
+ * Type.getSize() is something else: the code generator's count of stack words for a variable.
+ */
+public final class Layouts {
+
+    public static final int WORD = 4;
+
+    // Marks in the layout table for a struct being laid out, and for one found to contain itself.
+    private static final Object IN_PROGRESS = new Object();
+    private static final Object CYCLIC = new Object();
+
+    // Canonical struct type references to the declarations they name.
+    private final Map<StructType, StructType> declarations = new IdentityHashMap<StructType, StructType>();
+    private final Map<StructType, Object> layouts = new IdentityHashMap<StructType, Object>();
+
+    // The declarations being laid out, each containing the next.
+    private final List<StructType> path = new ArrayList<StructType>();
+
+    public Layouts(List<StructType> structDecls) {
+        for (StructType st : structDecls) {
+            StructType reference = Types.struct(st.structName);
+            if (!declarations.containsKey(reference))
+                declarations.put(reference, st);
+        }
+    }
+
+    /**
+     * The layout of the struct st declares or names, or null if there is none.
+     */
+    public StructLayout layout(StructType st) {
+        StructType decl = st.structVarDecls.isEmpty() ? declarations.get(st) : st;
+        if (decl == null)
+            return null;
+        Object layout = layouts.get(decl);
+        if (layout == IN_PROGRESS) {
+            // decl contains itself through every declaration laid out since it, and so does each
+            // of them, whichever of the cycle was asked for first.
+            int i = path.size() - 1;
+            while (path.get(i) != decl)
+                layouts.put(path.get(i--), CYCLIC);
+            layouts.put(decl, CYCLIC);
+            return null;
+        }
+        if (layout == null) {
+            layouts.put(decl, IN_PROGRESS);
+            path.add(decl);
+            StructLayout computed = computeLayout(decl);
+            path.remove(path.size() - 1);
+            if (layouts.get(decl) == IN_PROGRESS)
+                layouts.put(decl, computed);
+            layout = layouts.get(decl);
+        }
+        return layout instanceof StructLayout ? (StructLayout) layout : null;
+    }
+
+    public int sizeOf(Type type) {
+        if (type == BaseType.INT)
+            return WORD;
+        if (type == BaseType.CHAR || type == BaseType.VOID)
+            return 1;
+        if (type instanceof PointerType)
+            return WORD;
+        if (type instanceof ArrayType)
+            return ((ArrayType) type).numElements * sizeOf(((ArrayType) type).type);
+        if (type instanceof StructType) {
+            StructLayout layout = layout((StructType) type);
+            return layout == null ? 0 : layout.size;
+        }
+        return 0;
+    }
+
+    public int alignmentOf(Type type) {
+        if (type == BaseType.INT || type instanceof PointerType)
+            return WORD;
+        if (type instanceof ArrayType)
+            return alignmentOf(((ArrayType) type).type);
+        if (type instanceof StructType) {
+            StructLayout layout = layout((StructType) type);
+            return layout == null ? 1 : layout.alignment;
+        }
+        return 1;
+    }
+
+    private StructLayout computeLayout(StructType decl) {
+        List<VarDecl> order = new ArrayList<VarDecl>(decl.structVarDecls);
+        // Stable, so fields of equal alignment keep their declared order.
+        Collections.sort(order, new Comparator<VarDecl>() {
+            @Override
+            public int compare(VarDecl a, VarDecl b) {
+                return alignmentOf(b.type) - alignmentOf(a.type);
+            }
+        });
+
+        List<StructLayout.Field> fields = new ArrayList<StructLayout.Field>(order.size());
+        int offset = 0;
+        int alignment = 1;
+        for (VarDecl vd : order) {
+            int fieldAlignment = alignmentOf(vd.type);
+            offset = align(offset, fieldAlignment);
+            fields.add(new StructLayout.Field(vd, offset));
+            offset += sizeOf(vd.type);
+            alignment = Math.max(alignment, fieldAlignment);
+        }
+        return new StructLayout(decl, fields, align(offset, alignment), alignment);
+    }
+
+    /**
+     * n rounded up to a multiple of alignment.
+     */
+    public static int align(int n, int alignment) {
+        return (n + alignment - 1) / alignment * alignment;
+    }
+}
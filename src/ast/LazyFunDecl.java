@@ -0,0 +1,39 @@
+package ast;
+
+import java.util.List;
+
+/**
+ * A function whose body the parser only skimmed. The Block is parsed the first time block()
+ * is called, so a program whose bodies are never inspected costs little more than its
+ * signatures.
+ */
+public class LazyFunDecl extends FunDecl {
+
+    /**
+     * Parses a skimmed body.
+     */
+    public interface Body {
+        Block parse();
+    }
+
+    private Body body;
+    private Block block;
+
+    public LazyFunDecl(Type type, String name, List<VarDecl> params, Body body) {
+        super(type, name, params, null);
+        this.body = body;
+    }
+
+    @Override
+    public synchronized Block block() {
+        if (body != null) {
+            block = body.parse();
+            body = null;
+        }
+        return block;
+    }
+
+    public synchronized boolean isParsed() {
+        return body == null;
+    }
+}
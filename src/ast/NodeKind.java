@@ -0,0 +1,35 @@
+package ast;
+
+/**
+ * The kinds of AST node, one per concrete node class (a LazyFunDecl is a FUN_DECL), as
+ * returned by ASTNode.kind().
+ *
+ * In a FlatAST the children of each kind are laid out as listed here; a missing optional
+ * child (or a node the parser could not build) is FlatAST.NONE.
+ */
+public enum NodeKind {
+    BASE_TYPE,          // value: BaseType ordinal
+    STRUCT_TYPE,        // text: struct name; children: field VAR_DECLs (none for a reference)
+    ARRAY_TYPE,         // value: number of elements; children: element type
+    POINTER_TYPE,       // children: pointed-to type
+    PROGRAM,            // children: STRUCT_TYPEs, then VAR_DECLs, then FUN_DECLs
+    FUN_DECL,           // text: name; children: return type, parameter VAR_DECLs, BLOCK
+    VAR_DECL,           // text: name; children: type
+    BLOCK,              // children: VAR_DECLs, then statements
+    WHILE,              // children: condition, body
+    IF,                 // children: condition, then branch, else branch
+    ASSIGN,             // children: lhs, rhs
+    RETURN,             // children: returned expression
+    EXPR_STMT,          // children: expression
+    VAR_EXPR,           // text: name
+    INT_LITERAL,        // value: the integer
+    CHR_LITERAL,        // value: the character
+    STR_LITERAL,        // text: the string
+    FUN_CALL_EXPR,      // text: function name; children: arguments
+    BIN_OP,             // value: Op ordinal; children: lhs, rhs
+    ARRAY_ACCESS_EXPR,  // children: array, index
+    FIELD_ACCESS_EXPR,  // text: field name; children: structure
+    VALUE_AT_EXPR,      // children: pointer
+    SIZE_OF_EXPR,       // children: type
+    TYPECAST_EXPR       // children: type, expression
+}
@@ -7,7 +7,7 @@ public class PointerType implements Type {
 
     public final Type type;
 
-    public PointerType(Type type) {
+    PointerType(Type type) {
         this.type = type;
     }
 
@@ -16,8 +16,14 @@ public class PointerType implements Type {
         return v.visitPointerType(this);
     }
 
+    @Override
+    public NodeKind kind() {
+        return NodeKind.POINTER_TYPE;
+    }
+
     @Override
     public int getSize() {
-        return type.getSize();
+        // A pointer takes a word whatever it points to, like an int.
+        return BaseType.INT.getSize();
     }
 }
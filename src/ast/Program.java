@@ -2,11 +2,12 @@ package ast;
 
 import java.util.List;
 
-public class Program implements ASTNode {
+public class Program extends SourceNode {
 
     public final List<StructType> structTypes;
     public final List<VarDecl> varDecls;
     public final List<FunDecl> funDecls;
+    public Layouts layouts; // to be filled in by the type analyser
 
     public Program(List<StructType> structTypes, List<VarDecl> varDecls, List<FunDecl> funDecls) {
         this.structTypes = structTypes;
@@ -17,4 +18,8 @@ public class Program implements ASTNode {
     public <T> T accept(ASTVisitor<T> v) {
 	return v.visitProgram(this);
     }
+
+    public NodeKind kind() {
+        return NodeKind.PROGRAM;
+    }
 }
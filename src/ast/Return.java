@@ -16,4 +16,9 @@ public class Return extends Stmt {
         return v.visitReturnStmt(this);
     }
 
+    @Override
+    public NodeKind kind() {
+        return NodeKind.RETURN;
+    }
+
 }
@@ -15,4 +15,9 @@ public class SizeOfExpr extends Expr {
     public <T> T accept(ASTVisitor<T> v) {
         return v.visitSizeOfExpr(this);
     }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.SIZE_OF_EXPR;
+    }
 }
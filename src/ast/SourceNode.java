@@ -0,0 +1,37 @@
+package ast;
+
+/**
+ * A node that stands for a piece of the source: every node but the types, which are shared
+ * (see Types). A struct declaration is a SourceNode too, but a struct reference is not one
+ * of its own.
+ *
+ * The piece of source is kept as two offsets packed into one long, so no node needs an
+ * object for it; util.LineIndex resolves an offset to a line and column. Nodes made other
+ * than by the parser, or from tokens whose offsets are not known, have the span NONE.
+ */
+public abstract class SourceNode implements ASTNode {
+
+    // Starts at -1, which no offset does, so it is not the span of any piece of source.
+    public static final long NONE = span(-1, -1);
+
+    // Start offset in the high 32 bits, end offset (exclusive) in the low 32 bits.
+    public long span = NONE;
+
+    public static long span(int start, int end) {
+        return ((long) start << 32) | (end & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Offset of the node's first character in the source, or -1 if its span is NONE.
+     */
+    public int start() {
+        return (int) (span >>> 32);
+    }
+
+    /**
+     * Offset of the character after the node's last, or -1 if its span is NONE.
+     */
+    public int end() {
+        return (int) span;
+    }
+}
@@ -0,0 +1,226 @@
+package ast;
+
+import java.util.Arrays;
+
+/**
+ * Base class for passes that walk the tree with a stack of frames on the heap instead of
+ * recursing, so no nesting depth can overflow the JVM stack.
+ *
+ * A pass implements step(), which the walk calls for the frame on top of the stack: first
+ * when the frame's node is entered, then again each time a child it asked for is done, with
+ * that child's result. A step either asks for a child by returning call(child), or returns
+ * the node's result, which ends the frame. frame.step counts the steps taken so far, and
+ * frame.index, frame.mark and frame.saved keep whatever else the node needs between steps,
+ * which is what local variables do in a recursive visitor.
+ *
+ * The visitX methods walk from the node they are given, so node.accept(pass) works as for
+ * any visitor, including from within a step.
+ */
+public abstract class StackVisitor<T> implements ASTVisitor<T> {
+
+    protected static final class Frame {
+        public ASTNode node;
+        public int step;
+        public int index;
+        public int mark;
+        public Object saved;
+
+        void enter(ASTNode node) {
+            this.node = node;
+            step = 0;
+            index = 0;
+            mark = 0;
+            saved = null;
+        }
+    }
+
+    private Frame[] frames = new Frame[64];
+    private int depth = 0;
+
+    private boolean calling;
+    private ASTNode callee;
+
+    /**
+     * Takes the next step at frame's node; child is the result of the child asked for by the
+     * previous step, or null on entry.
+     */
+    protected abstract T step(Frame frame, T child);
+
+    /**
+     * Asks for child to be visited before the frame's next step; return what it returns. A
+     * null child has a null result and is not visited.
+     */
+    protected final T call(ASTNode child) {
+        calling = true;
+        callee = child;
+        return null;
+    }
+
+    /**
+     * Visits node and returns its result.
+     */
+    public final T walk(ASTNode node) {
+        if (node == null)
+            return null;
+        int base = depth;
+        push(node);
+        T result = null;
+        try {
+            while (depth > base) {
+                Frame frame = frames[depth - 1];
+                calling = false;
+                T value = step(frame, result);
+                frame.step++;
+                if (calling) {
+                    calling = false;
+                    result = null;
+                    if (callee != null)
+                        push(callee);
+                } else {
+                    result = value;
+                    frame.node = null;
+                    frame.saved = null;
+                    depth--;
+                }
+            }
+        } finally {
+            depth = base;
+        }
+        return result;
+    }
+
+    private void push(ASTNode node) {
+        if (depth == frames.length)
+            frames = Arrays.copyOf(frames, depth * 2);
+        Frame frame = frames[depth];
+        if (frame == null)
+            frame = frames[depth] = new Frame();
+        frame.enter(node);
+        depth++;
+    }
+
+    @Override
+    public final T visitBaseType(BaseType bt) {
+        return walk(bt);
+    }
+
+    @Override
+    public final T visitStructType(StructType st) {
+        return walk(st);
+    }
+
+    @Override
+    public final T visitBlock(Block b) {
+        return walk(b);
+    }
+
+    @Override
+    public final T visitFunDecl(FunDecl p) {
+        return walk(p);
+    }
+
+    @Override
+    public final T visitProgram(Program p) {
+        return walk(p);
+    }
+
+    @Override
+    public final T visitVarDecl(VarDecl vd) {
+        return walk(vd);
+    }
+
+    @Override
+    public final T visitVarExpr(VarExpr v) {
+        return walk(v);
+    }
+
+    @Override
+    public final T visitArrayType(ArrayType at) {
+        return walk(at);
+    }
+
+    @Override
+    public final T visitPointerType(PointerType pt) {
+        return walk(pt);
+    }
+
+    @Override
+    public final T visitIntLiteral(IntLiteral il) {
+        return walk(il);
+    }
+
+    @Override
+    public final T visitChrLiteral(ChrLiteral cl) {
+        return walk(cl);
+    }
+
+    @Override
+    public final T visitStrLiteral(StrLiteral sl) {
+        return walk(sl);
+    }
+
+    @Override
+    public final T visitFunCallExpr(FunCallExpr fce) {
+        return walk(fce);
+    }
+
+    @Override
+    public final T visitBinOpExpr(BinOp binOp) {
+        return walk(binOp);
+    }
+
+    @Override
+    public final T visitStmtExpr(Stmt stmt) {
+        return walk(stmt);
+    }
+
+    @Override
+    public final T visitIfStmt(If ifStmt) {
+        return walk(ifStmt);
+    }
+
+    @Override
+    public final T visitWhileStmt(While whileStmt) {
+        return walk(whileStmt);
+    }
+
+    @Override
+    public final T visitAssignStmt(Assign assignStmt) {
+        return walk(assignStmt);
+    }
+
+    @Override
+    public final T visitReturnStmt(Return returnStmt) {
+        return walk(returnStmt);
+    }
+
+    @Override
+    public final T visitExprStmt(ExprStmt exprStmt) {
+        return walk(exprStmt);
+    }
+
+    @Override
+    public final T visitArrayAccessExpr(ArrayAccessExpr arrayAccessExpr) {
+        return walk(arrayAccessExpr);
+    }
+
+    @Override
+    public final T visitSizeOfExpr(SizeOfExpr sizeOfExpr) {
+        return walk(sizeOfExpr);
+    }
+
+    @Override
+    public final T visitValueAtExpr(ValueAtExpr valueAtExpr) {
+        return walk(valueAtExpr);
+    }
+
+    @Override
+    public final T visitTypecastExpr(TypecastExpr typecastExpr) {
+        return walk(typecastExpr);
+    }
+
+    @Override
+    public final T visitFieldAccessExpr(FieldAccessExpr fieldAccessExpr) {
+        return walk(fieldAccessExpr);
+    }
+}
@@ -1,5 +1,5 @@
 package ast;
 
-public abstract class Stmt implements ASTNode {
+public abstract class Stmt extends SourceNode {
     public abstract <T> T accept(ASTVisitor<T> v);
 }
@@ -16,4 +16,9 @@ public class StrLiteral extends Expr {
         return v.visitStrLiteral(this);
     }
 
+    @Override
+    public NodeKind kind() {
+        return NodeKind.STR_LITERAL;
+    }
+
 }
@@ -0,0 +1,59 @@
+package ast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where the fields of a struct are in memory: its size, its alignment, and the offset and type
+ * of each field by name. Layouts makes one per struct declaration.
+ */
+public final class StructLayout {
+
+    public static final class Field {
+        public final VarDecl decl;
+        public final Type type;
+        public final int offset;
+
+        Field(VarDecl decl, int offset) {
+            this.decl = decl;
+            this.type = decl.type;
+            this.offset = offset;
+        }
+    }
+
+    public final StructType struct;
+    public final int size;
+    public final int alignment;
+
+    private final List<Field> fields;
+    private final Map<String, Field> byName;
+
+    StructLayout(StructType struct, List<Field> fields, int size, int alignment) {
+        this.struct = struct;
+        this.fields = Collections.unmodifiableList(new ArrayList<Field>(fields));
+        this.size = size;
+        this.alignment = alignment;
+        byName = new HashMap<String, Field>();
+        for (Field field : fields) {
+            if (!byName.containsKey(field.decl.varName))
+                byName.put(field.decl.varName, field);
+        }
+    }
+
+    /**
+     * The field called name, or null if the struct has none.
+     */
+    public Field field(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * The fields in memory order.
+     */
+    public List<Field> fields() {
+        return fields;
+    }
+}
@@ -3,7 +3,7 @@ package ast;
 import java.util.List;
 
 
-public class StructType implements Type {
+public class StructType extends SourceNode implements Type {
 
     public final String structName;
     public final List<VarDecl> structVarDecls;
@@ -17,6 +17,10 @@ public class StructType implements Type {
         return v.visitStructType(this);
     }
 
+    public NodeKind kind() {
+        return NodeKind.STRUCT_TYPE;
+    }
+
     @Override
     public int getSize() {
         return 0;
@@ -0,0 +1,50 @@
+package ast;
+
+/**
+ * Base class for passes that dispatch on ASTNode.kind() with a switch instead of calling
+ * accept. A pass extending it calls visit(child) where it would call child.accept(this).
+ *
+ * The accept call in each visit method is shared by every node class, so the JIT sees many
+ * receiver types there and cannot inline it, and the visitX call inside accept then sees every
+ * pass. Here the only call on the node is kind(), which returns a constant, and the visitX
+ * calls are made on the pass itself.
+ * bench/ast/DispatchBenchmark compares the two.
+ */
+public abstract class SwitchVisitor<T> implements ASTVisitor<T> {
+
+    /**
+     * Visits node as node.accept(this) would; null for a null node.
+     */
+    public T visit(ASTNode node) {
+        if (node == null)
+            return null;
+        switch (node.kind()) {
+            case BASE_TYPE:         return visitBaseType((BaseType) node);
+            case STRUCT_TYPE:       return visitStructType((StructType) node);
+            case ARRAY_TYPE:        return visitArrayType((ArrayType) node);
+            case POINTER_TYPE:      return visitPointerType((PointerType) node);
+            case PROGRAM:           return visitProgram((Program) node);
+            case FUN_DECL:          return visitFunDecl((FunDecl) node);
+            case VAR_DECL:          return visitVarDecl((VarDecl) node);
+            case BLOCK:             return visitBlock((Block) node);
+            case WHILE:             return visitWhileStmt((While) node);
+            case IF:                return visitIfStmt((If) node);
+            case ASSIGN:            return visitAssignStmt((Assign) node);
+            case RETURN:            return visitReturnStmt((Return) node);
+            case EXPR_STMT:         return visitExprStmt((ExprStmt) node);
+            case VAR_EXPR:          return visitVarExpr((VarExpr) node);
+            case INT_LITERAL:       return visitIntLiteral((IntLiteral) node);
+            case CHR_LITERAL:       return visitChrLiteral((ChrLiteral) node);
+            case STR_LITERAL:       return visitStrLiteral((StrLiteral) node);
+            case FUN_CALL_EXPR:     return visitFunCallExpr((FunCallExpr) node);
+            case BIN_OP:            return visitBinOpExpr((BinOp) node);
+            case ARRAY_ACCESS_EXPR: return visitArrayAccessExpr((ArrayAccessExpr) node);
+            case FIELD_ACCESS_EXPR: return visitFieldAccessExpr((FieldAccessExpr) node);
+            case VALUE_AT_EXPR:     return visitValueAtExpr((ValueAtExpr) node);
+            case SIZE_OF_EXPR:      return visitSizeOfExpr((SizeOfExpr) node);
+            case TYPECAST_EXPR:     return visitTypecastExpr((TypecastExpr) node);
+            default:
+                throw new IllegalStateException("unknown node kind " + node.kind());
+        }
+    }
+}
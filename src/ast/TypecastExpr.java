@@ -17,4 +17,9 @@ public class TypecastExpr extends Expr {
     public <T> T accept(ASTVisitor<T> v) {
         return v.visitTypecastExpr(this);
     }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.TYPECAST_EXPR;
+    }
 }
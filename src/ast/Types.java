@@ -0,0 +1,67 @@
+package ast;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Makes the canonical instance of each type, so that two types are equal exactly when they are
+ * the same object.
+ *
+ * BaseTypes are canonical already. A pointer or array type is built from a canonical element
+ * type, so it is keyed on that object. A struct type used in a declaration is keyed on its name;
+ * the StructType of a struct declaration, which carries the fields, is not a type reference and
+ * is not interned.
+ *
+ * The tables are shared by every parser and checker, including those running in parallel.
+ */
+public final class Types {
+
+    private static final Map<Type, PointerType> pointers = new HashMap<Type, PointerType>();
+    private static final Map<Type, Map<Integer, ArrayType>> arrays = new HashMap<Type, Map<Integer, ArrayType>>();
+    private static final Map<String, StructType> structs = new HashMap<String, StructType>();
+
+    private Types() {
+    }
+
+    /**
+     * The type pointing to type.
+     */
+    public static synchronized PointerType pointer(Type type) {
+        PointerType pointer = pointers.get(type);
+        if (pointer == null) {
+            pointer = new PointerType(type);
+            pointers.put(type, pointer);
+        }
+        return pointer;
+    }
+
+    /**
+     * The type of an array of numElements elements of type.
+     */
+    public static synchronized ArrayType array(Type type, int numElements) {
+        Map<Integer, ArrayType> sizes = arrays.get(type);
+        if (sizes == null) {
+            sizes = new HashMap<Integer, ArrayType>();
+            arrays.put(type, sizes);
+        }
+        ArrayType array = sizes.get(numElements);
+        if (array == null) {
+            array = new ArrayType(type, numElements);
+            sizes.put(numElements, array);
+        }
+        return array;
+    }
+
+    /**
+     * The type naming struct structName; it has no fields of its own.
+     */
+    public static synchronized StructType struct(String structName) {
+        StructType struct = structs.get(structName);
+        if (struct == null) {
+            struct = new StructType(structName, Collections.<VarDecl>emptyList());
+            structs.put(structName, struct);
+        }
+        return struct;
+    }
+}
@@ -15,4 +15,9 @@ public class ValueAtExpr extends Expr {
     public <T> T accept(ASTVisitor<T> v) {
         return v.visitValueAtExpr(this);
     }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.VALUE_AT_EXPR;
+    }
 }
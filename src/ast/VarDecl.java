@@ -1,6 +1,6 @@
 package ast;
 
-public class VarDecl implements ASTNode {
+public class VarDecl extends SourceNode {
     public final Type type;
     public final String varName;
 
@@ -19,4 +19,8 @@ public class VarDecl implements ASTNode {
     public <T> T accept(ASTVisitor<T> v) {
 	return v.visitVarDecl(this);
     }
+
+    public NodeKind kind() {
+        return NodeKind.VAR_DECL;
+    }
 }
@@ -12,4 +12,8 @@ public class VarExpr extends Expr {
     public <T> T accept(ASTVisitor<T> v) {
 	    return v.visitVarExpr(this);
     }
+
+    public NodeKind kind() {
+        return NodeKind.VAR_EXPR;
+    }
 }
@@ -17,4 +17,9 @@ public class While extends Stmt {
     public <T> T accept(ASTVisitor<T> v) {
         return v.visitWhileStmt(this);
     }
+
+    @Override
+    public NodeKind kind() {
+        return NodeKind.WHILE;
+    }
 }
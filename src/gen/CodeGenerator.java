@@ -10,7 +10,7 @@ import java.util.*;
 import static gen.Register.ra;
 import static gen.Register.v0;
 
-public class CodeGenerator implements ASTVisitor<Register> {
+public class CodeGenerator extends StackVisitor<Register> {
 
     private static final int PRINT_INTEGER = 1;
     private static final int PRINT_STRING = 4;
@@ -37,11 +37,11 @@ public class CodeGenerator implements ASTVisitor<Register> {
     // Stores all MIPS Assembly language data items.
     private StringBuilder dataSegment;
 
-    // Stores mappings for variable name -> how far relative to $fp it was allocated.
-    private Map<String, Integer> map = new HashMap<>();
-
     private int framePtr = 0;
 
+    // Sizes and struct layouts, worked out by the type checker.
+    private Layouts layouts;
+
     // Collects all the strings
     Map<String, String> strs = new HashMap<>();
 
@@ -114,56 +114,83 @@ public class CodeGenerator implements ASTVisitor<Register> {
     }
 
     @Override
-    public Register visitProgram(Program p) {
+    protected Register step(Frame f, Register child) {
+        switch (f.node.kind()) {
+            case PROGRAM:           return program((Program) f.node, f);
+            case FUN_DECL:          return funDecl((FunDecl) f.node, f);
+            case VAR_DECL:          return varDecl((VarDecl) f.node);
+            case BLOCK:             return block((Block) f.node, f);
+            case VAR_EXPR:          return varExpr((VarExpr) f.node);
+            case INT_LITERAL:       return intLiteral((IntLiteral) f.node);
+            case CHR_LITERAL:       return chrLiteral((ChrLiteral) f.node);
+            case STR_LITERAL:       return strLiteral((StrLiteral) f.node);
+            case FUN_CALL_EXPR:     return funCallExpr((FunCallExpr) f.node, f, child);
+            case BIN_OP:            return binOp((BinOp) f.node, f, child);
+            case IF:                return ifStmt((If) f.node, f, child);
+            case WHILE:             return whileStmt((While) f.node, f, child);
+            case ASSIGN:            return assignStmt((Assign) f.node, f, child);
+            case RETURN:            return returnStmt((Return) f.node, f, child);
+            case EXPR_STMT:
+                if (f.step == 0) {
+                    return call(((ExprStmt) f.node).exprStmt);
+                }
+                return null;
+            case SIZE_OF_EXPR:      return sizeOfExpr((SizeOfExpr) f.node);
+            case TYPECAST_EXPR:
+                if (f.step == 0) {
+                    return call(((TypecastExpr) f.node).typecastedExpr);
+                }
+                return child;
+            case FIELD_ACCESS_EXPR: return fieldAccessExpr((FieldAccessExpr) f.node, f, child);
+            default:
+                // Types generate nothing; array access and value at are not supported yet.
+                return null;
+        }
+    }
 
-        dataSegment.append(".data" + "\n");
-        dataSegment.append(".align 2\n");
+    private Register program(Program p, Frame f) {
 
-        for (StructType st : p.structTypes) {
-            st.accept(this);
-        }
+        if (f.step == 0) {
+            layouts = p.layouts;
 
-        for (VarDecl vd : p.varDecls) {
-            vd.accept(this);
-        }
+            dataSegment.append(".data" + "\n");
+            dataSegment.append(".align 2\n");
 
+            // Struct declarations take no space of their own.
+
+            for (VarDecl vd : p.varDecls) {
+                varDecl(vd);
+            }
 
-        textSegment.append(".text" + "\n");
-        textSegment.append("j main\n");
 
-        for (FunDecl fd : p.funDecls) {
-            fd.accept(this);
+            textSegment.append(".text" + "\n");
+            textSegment.append("j main\n");
         }
 
+        if (f.index < p.funDecls.size()) {
+            return call(p.funDecls.get(f.index++));
+        }
 
-        // TODO: add malloc
 
+        // TODO: add malloc
 
 
-        return null;
-    }
 
-    @Override
-    public Register visitBaseType(BaseType bt) {
         return null;
     }
 
-    @Override
-    public Register visitStructType(StructType st) {
-        return null;
-    }
+    private Register block(Block b, Frame f) {
 
-    @Override
-    public Register visitBlock(Block b) {
+        if (f.step == 0) {
+            for (VarDecl vd : b.varDeclsInBlock) {
+                varDecl(vd);
+            }
 
-        for (VarDecl vd : b.varDeclsInBlock) {
-            vd.accept(this);
+            textSegment.append("\n");
         }
 
-        textSegment.append("\n");
-
-        for (Stmt stmt : b.stmtsInBlock) {
-            stmt.accept(this);
+        if (f.index < b.stmtsInBlock.size()) {
+            return call(b.stmtsInBlock.get(f.index++));
         }
 
         textSegment.append("\n");
@@ -201,35 +228,61 @@ public class CodeGenerator implements ASTVisitor<Register> {
         return false;
     }
 
-    @Override
-    public Register visitFunDecl(FunDecl fd) {
-        textSegment.append(fd.name + ":" + "\n");
-
-        // Function arguments are pushed on the stack. Obtain them and add an offset
-        // so we can access them later.
-        int fpOffset = BYTES_FOR_SAVED_REGISTERS + BYTES_FOR_OLD_FP + BYTES_FOR_RA + BYTES_FOR_SPACE; // 84
-        for (VarDecl vd : fd.params) {
-            vd.fpOffset = fpOffset;
-            int size = vd.type.getSize();
-            if (size == 1) {
-                fpOffset += 4;
+    /*
+     * The function's block is generated here rather than as a Block, since it shares the
+     * function's frame; f.saved holds it, or null for a library function.
+     */
+    private Register funDecl(FunDecl fd, Frame f) {
+        if (f.step == 0) {
+            textSegment.append(fd.name + ":" + "\n");
+
+            textSegment.append("# Prologue for function: " + fd.name + "\n");
+            generatePrologue();
+            textSegment.append("# END of Prologue for function: " + fd.name + "\n\n");
+
+            if (fd.name.equals("main")) {
+                m = true;
             } else {
-                fpOffset += size;
+                m = false;
+            }
+            textSegment.append("# Entering block for function: " + fd.name + "\n");
+            if (!library_function(fd)) {
+                // Function arguments are pushed on the stack. Obtain them and add an offset
+                // so we can access them later. A library function reads its argument from a
+                // fixed offset, and its declaration is shared by every program, so it is left
+                // alone.
+                int fpOffset = BYTES_FOR_SAVED_REGISTERS + BYTES_FOR_OLD_FP + BYTES_FOR_RA + BYTES_FOR_SPACE; // 84
+                for (VarDecl vd : fd.params) {
+                    vd.fpOffset = fpOffset;
+                    int size = vd.type.getSize();
+                    if (size == 1) {
+                        fpOffset += 4;
+                    } else {
+                        fpOffset += size;
+                    }
+                }
+
+                Block b = fd.block();
+                f.saved = b;
+                for (VarDecl vd : b.varDeclsInBlock) {
+                    varDecl(vd);
+                }
+
+                textSegment.append("\n");
             }
         }
 
-        textSegment.append("# Prologue for function: " + fd.name + "\n");
-        generatePrologue();
-        textSegment.append("# END of Prologue for function: " + fd.name + "\n\n");
+        Block b = (Block) f.saved;
+        if (b != null) {
+            if (f.index < b.stmtsInBlock.size()) {
+                return call(b.stmtsInBlock.get(f.index++));
+            }
 
-        if (fd.name.equals("main")) {
-            m = true;
-        } else {
-            m = false;
-        }
-        textSegment.append("# Entering block for function: " + fd.name + "\n");
-        if (!library_function(fd)) {
-            visitFunctionBlock(fd.block);
+            textSegment.append("\n");
+
+
+            // Reset local variables offset tracker.
+            localVariablesOffset = 0;
         }
         textSegment.append("# Leaving block for function: " + fd.name + "\n\n");
 
@@ -264,36 +317,15 @@ public class CodeGenerator implements ASTVisitor<Register> {
         textSegment.append("\n\t# Done restoring temporary registers.\n\n");
     }
 
-    public Register visitFunctionBlock(Block b) {
-        for (VarDecl vd : b.varDeclsInBlock) {
-            vd.accept(this);
-        }
-
-        textSegment.append("\n");
-
-
-        for (Stmt stmt : b.stmtsInBlock) {
-            stmt.accept(this);
-        }
-
-        textSegment.append("\n");
-
-
-        // Reset local variables offset tracker.
-        localVariablesOffset = 0;
-
-
-        return null;
-    }
-
-    @Override
-    public Register visitVarDecl(VarDecl vd) {
+    private Register varDecl(VarDecl vd) {
         boolean isGlobal = vd.isGlobal;
         if (isGlobal) {
             if (vd.type instanceof ArrayType) {
                 // Global array declaration. Need to compute the space for array typy and multiply by array size.
                 int size = vd.type.getSize();
                 dataSegment.append(vd.varName + ": .space " + size + "\n");
+            } else if (vd.type instanceof StructType) {
+                dataSegment.append(vd.varName + ": .space " + structSpace(vd.type) + "\n");
             } else {
                 // Variable declarations marked by typechecker as global are stored in data segment.
                 dataSegment.append(vd.varName + ": .word 0\n");
@@ -305,6 +337,8 @@ public class CodeGenerator implements ASTVisitor<Register> {
             if (size == 1) {
                 // BaseType
                 size = 4;
+            } else if (vd.type instanceof StructType) {
+                size = structSpace(vd.type);
             }
             vd.offset = localVariablesOffset;
             textSegment.append("\taddi $sp, $sp, " + (-size));
@@ -314,8 +348,12 @@ public class CodeGenerator implements ASTVisitor<Register> {
         return null;
     }
 
-    @Override
-    public Register visitVarExpr(VarExpr v) {
+    // Bytes a struct variable takes in the data segment or on the stack, a whole number of words.
+    private int structSpace(Type structType) {
+        return Layouts.align(layouts.sizeOf(structType), Layouts.WORD);
+    }
+
+    private Register varExpr(VarExpr v) {
         VarDecl vd = v.vd;
         boolean isGlobal = vd.isGlobal;
         boolean isParameter = vd.isParameter;
@@ -347,32 +385,19 @@ public class CodeGenerator implements ASTVisitor<Register> {
         }
     }
 
-    @Override
-    public Register visitArrayType(ArrayType at) {
-        return null;
-    }
-
-    @Override
-    public Register visitPointerType(PointerType pt) {
-        return null;
-    }
-
-    @Override
-    public Register visitIntLiteral(IntLiteral il) {
+    private Register intLiteral(IntLiteral il) {
         Register result = getRegister();
         textSegment.append("\t" + "li " + result.toString() + ", " + il.value + "\n");
         return result;
     }
 
-    @Override
-    public Register visitChrLiteral(ChrLiteral cl) {
+    private Register chrLiteral(ChrLiteral cl) {
         Register result = getRegister();
         textSegment.append("\t" + "li " + result.toString() + ", " + "'" + cl.value + "'" + "\n");
         return result;
     }
 
-    @Override
-    public Register visitStrLiteral(StrLiteral sl) {
+    private Register strLiteral(StrLiteral sl) {
         Register result = getRegister();
         String label = "str_label_" + stringLabelCount;
         dataSegment.append(label + ": " + ".asciiz " + "\"" + sl.value + "\"" + "\n");
@@ -382,29 +407,30 @@ public class CodeGenerator implements ASTVisitor<Register> {
         return result;
     }
 
-    @Override
-    public Register visitFunCallExpr(FunCallExpr fce) {
+    private Register funCallExpr(FunCallExpr fce, Frame f, Register child) {
         // Function call can take immediate values, global variables
         // local variables and parameters. Quite complex.
         // All arguments to the function must be placed on the stack.
 
-        textSegment.append("\n");
-
-        int resetBytes = 0;
-        Register result;
-        // Put arguments on the stack in reverse order.
         int numArguments = fce.functionArgsExprs.size();
-        for (int i = numArguments - 1; i >= 0; i--) {
-            result = fce.functionArgsExprs.get(i).accept(this);
+        if (f.step == 0) {
+            textSegment.append("\n");
+        } else {
+            Register result = child;
             textSegment.append("\tsw " + result.toString() + ", " + "0($sp)");
             textSegment.append(" # Store the argument on the stack.\n");
 
             textSegment.append("\taddi $sp, $sp, -4");
             textSegment.append(" # Prepare stack for another argument\n\n");
-            resetBytes += 4;
             freeRegister(result);
         }
 
+        // Put arguments on the stack in reverse order.
+        if (f.index < numArguments) {
+            return call(fce.functionArgsExprs.get(numArguments - 1 - f.index++));
+        }
+        int resetBytes = 4 * numArguments;
+
         textSegment.append("\tsw $ra, 0($sp)");
         textSegment.append(" # Save return address.\n");
 
@@ -427,7 +453,7 @@ public class CodeGenerator implements ASTVisitor<Register> {
 
         // Move the result of function call from return register $vo.
         if (!fce.fd.name.startsWith("print")) {
-            result = getRegister();
+            Register result = getRegister();
             textSegment.append("\tmove " + result.toString() + ", " + "$v0");
             textSegment.append(" # Move function call result to a register to use by the caller.\n");
             return result;
@@ -436,10 +462,16 @@ public class CodeGenerator implements ASTVisitor<Register> {
         return null;
     }
 
-    @Override
-    public Register visitBinOpExpr(BinOp binOp) {
-        Register lhs = binOp.lhs.accept(this);
-        Register rhs = binOp.rhs.accept(this);
+    private Register binOp(BinOp binOp, Frame f, Register child) {
+        if (f.step == 0) {
+            return call(binOp.lhs);
+        }
+        if (f.step == 1) {
+            f.saved = child;
+            return call(binOp.rhs);
+        }
+        Register lhs = (Register) f.saved;
+        Register rhs = child;
         Register result = getRegister();
 
         switch (binOp.op) {
@@ -497,104 +529,126 @@ public class CodeGenerator implements ASTVisitor<Register> {
         return result;
     }
 
-    @Override
-    public Register visitStmtExpr(Stmt stmt) {
-        return null;
-    }
-
-    @Override
-    public Register visitIfStmt(If ifStmt) {
-        int saved = labelCount;
-        labelCount++;
-        Register condition = ifStmt.ifConditionExpr.accept(this);
-
-        if (condition != null) {
-            textSegment.append("\t" + "beq " + condition.toString() + ", " + "$0");
-        }
+    // f.index holds the statement's label number.
+    private Register ifStmt(If ifStmt, Frame f, Register child) {
+        int saved = f.index;
+        switch (f.step) {
+            case 0:
+                f.index = labelCount;
+                labelCount++;
+                return call(ifStmt.ifConditionExpr);
+            case 1:
+                Register condition = child;
 
-        textSegment.append(", else_" + saved + "\n");
+                if (condition != null) {
+                    textSegment.append("\t" + "beq " + condition.toString() + ", " + "$0");
+                }
 
-        ifStmt.ifStmtBlock.accept(this);
+                textSegment.append(", else_" + saved + "\n");
 
+                return call(ifStmt.ifStmtBlock);
+            case 2:
+                textSegment.append("\t" + "j " + "if_continue_" + saved + "\n");
+                textSegment.append("else_" + (saved) + ":\n");
 
-        textSegment.append("\t" + "j " + "if_continue_" + saved + "\n");
-        textSegment.append("else_" + (saved) + ":\n");
+                return call(ifStmt.elseStmtBlock);
+            default:
+                textSegment.append("if_continue_" + (saved) + ":\n");
 
-        int p = saved;
 
-        if (ifStmt.elseStmtBlock != null) {
-            ifStmt.elseStmtBlock.accept(this);
+                return null;
         }
-
-        textSegment.append("if_continue_" + (p) + ":\n");
-
-
-        return null;
     }
 
-    @Override
-    public Register visitWhileStmt(While whileStmt) {
-        int saved = loops;
-        loops++;
-        textSegment.append("\tb end_loop_" + saved + "\n");
+    // f.index holds the loop's label number.
+    private Register whileStmt(While whileStmt, Frame f, Register child) {
+        int saved = f.index;
+        switch (f.step) {
+            case 0:
+                f.index = loops;
+                loops++;
+                textSegment.append("\tb end_loop_" + f.index + "\n");
 
-        textSegment.append("loop_" + saved + ":\n");
+                textSegment.append("loop_" + f.index + ":\n");
 
-        whileStmt.whileStmt.accept(this);
+                return call(whileStmt.whileStmt);
+            case 1:
+                textSegment.append("end_loop_" + saved + ":" + "\n");
 
+                return call(whileStmt.whileConditionExpr);
+            default:
+                Register condition = child;
 
-        textSegment.append("end_loop_" + saved + ":" + "\n");
+                if (condition != null) {
+                    textSegment.append("\t" + "beq " + condition.toString() + ", " + "$0");
+                }
 
-        Register condition = whileStmt.whileConditionExpr.accept(this);
+                textSegment.append(", loop_exit_" + saved + "\n");
+                textSegment.append("\t j loop_" +saved + "\n");
+                textSegment.append("loop_exit_" + saved + ":\n");
 
-        if (condition != null) {
-            textSegment.append("\t" + "beq " + condition.toString() + ", " + "$0");
+                return null;
         }
-
-        textSegment.append(", loop_exit_" + saved + "\n");
-        textSegment.append("\t j loop_" +saved + "\n");
-        textSegment.append("loop_exit_" + saved + ":\n");
-
-        return null;
     }
 
-    @Override
-    public Register visitAssignStmt(Assign assignStmt) {
-        Register rhs = assignStmt.rhs.accept(this);
-        if (assignStmt.lhs instanceof VarExpr) {
-            // Var expression can be global, local.
-            VarDecl vd = ((VarExpr) assignStmt.lhs).vd;
-            boolean isGlobal = vd.isGlobal;
-            boolean isParameter = vd.isParameter;
-            if (isGlobal) {
-                Register address = getRegister();
-                textSegment.append("\tla " + address.toString() + ", " + vd.varName);
-                textSegment.append(" # Load address of global variable.\n");
-                textSegment.append("\tsw " + rhs.toString() + ", " + "(" + address.toString() + ")");
-                textSegment.append(" # Store value to global variable.\n");
-                freeRegister(address);
-                freeRegister(rhs);
-            } else if (isParameter) {
-                int fpOffset = vd.fpOffset;
-                textSegment.append("\tsw " + rhs.toString() + ", " + (fpOffset) + "($fp)");
-                textSegment.append(" # Store value into function parameter " + vd.varName  + "\n");
-                freeRegister(rhs);
-            } else {
-                // If lhs is local, then obtain the offset from current $fp.
-                int offset = vd.offset;
-                // Store the rhs register into the offset from $fp.
-                textSegment.append("\tsw " + rhs.toString() + ", " + (-offset) + "($fp)");
-                textSegment.append(" # Store register for local variable " + vd.varName + "\n");
-                freeRegister(rhs);
+    // f.saved holds the rhs register while the address of a field is worked out.
+    private Register assignStmt(Assign assignStmt, Frame f, Register child) {
+        if (f.step == 0) {
+            return call(assignStmt.rhs);
+        }
+        if (f.step == 1) {
+            Register rhs = child;
+            if (assignStmt.lhs instanceof VarExpr) {
+                // Var expression can be global, local.
+                VarDecl vd = ((VarExpr) assignStmt.lhs).vd;
+                boolean isGlobal = vd.isGlobal;
+                boolean isParameter = vd.isParameter;
+                if (isGlobal) {
+                    Register address = getRegister();
+                    textSegment.append("\tla " + address.toString() + ", " + vd.varName);
+                    textSegment.append(" # Load address of global variable.\n");
+                    textSegment.append("\tsw " + rhs.toString() + ", " + "(" + address.toString() + ")");
+                    textSegment.append(" # Store value to global variable.\n");
+                    freeRegister(address);
+                    freeRegister(rhs);
+                } else if (isParameter) {
+                    int fpOffset = vd.fpOffset;
+                    textSegment.append("\tsw " + rhs.toString() + ", " + (fpOffset) + "($fp)");
+                    textSegment.append(" # Store value into function parameter " + vd.varName  + "\n");
+                    freeRegister(rhs);
+                } else {
+                    // If lhs is local, then obtain the offset from current $fp.
+                    int offset = vd.offset;
+                    // Store the rhs register into the offset from $fp.
+                    textSegment.append("\tsw " + rhs.toString() + ", " + (-offset) + "($fp)");
+                    textSegment.append(" # Store register for local variable " + vd.varName + "\n");
+                    freeRegister(rhs);
+                }
+            } else if (assignStmt.lhs instanceof FieldAccessExpr) {
+                f.saved = rhs;
+                return call(structPointer(((FieldAccessExpr) assignStmt.lhs).fieldAccessExpr));
             }
+            return null;
         }
+
+        Register rhs = (Register) f.saved;
+        FieldAccessExpr fieldAccessExpr = (FieldAccessExpr) assignStmt.lhs;
+        Register address = structAddress(fieldAccessExpr.fieldAccessExpr, child);
+        StructLayout.Field field = field(fieldAccessExpr);
+        String store = field.type == BaseType.CHAR ? "sb " : "sw ";
+        textSegment.append("\t" + store + rhs.toString() + ", " + field.offset + "(" + address.toString() + ")");
+        textSegment.append(" # Store value into field " + fieldAccessExpr.fieldAccessName + "\n");
+        freeRegister(address);
+        freeRegister(rhs);
         return null;
     }
 
-    @Override
-    public Register visitReturnStmt(Return returnStmt) {
+    private Register returnStmt(Return returnStmt, Frame f, Register child) {
         if (returnStmt.returnExpr != null) {
-            Register tmp = returnStmt.returnExpr.accept(this);
+            if (f.step == 0) {
+                return call(returnStmt.returnExpr);
+            }
+            Register tmp = child;
             textSegment.append("\taddi $sp, $fp, 76\n");
             textSegment.append("\t" + "move " + v0.toString() + ", " + tmp.toString() + "\n");
             freeRegister(tmp);
@@ -612,36 +666,95 @@ public class CodeGenerator implements ASTVisitor<Register> {
         return null;
     }
 
-    @Override
-    public Register visitExprStmt(ExprStmt exprStmt) {
-        exprStmt.exprStmt.accept(this);
-        return null;
+    private Register sizeOfExpr(SizeOfExpr sizeOfExpr) {
+        // The size is known at compile time.
+        Register result = getRegister();
+        textSegment.append("\t" + "li " + result.toString() + ", " + layouts.sizeOf(sizeOfExpr.type));
+        textSegment.append(" # sizeof\n");
+        return result;
     }
 
-    @Override
-    public Register visitArrayAccessExpr(ArrayAccessExpr arrayAccessExpr) {
-        return null;
+    private Register fieldAccessExpr(FieldAccessExpr fieldAccessExpr, Frame f, Register child) {
+        if (f.step == 0) {
+            return call(structPointer(fieldAccessExpr.fieldAccessExpr));
+        }
+        // The field is at a fixed offset from the start of the struct, which the layout gives.
+        StructLayout.Field field = field(fieldAccessExpr);
+        Register result = structAddress(fieldAccessExpr.fieldAccessExpr, child);
+        if (field.type instanceof StructType || field.type instanceof ArrayType) {
+            // An aggregate field is used through its address.
+            textSegment.append("\taddi " + result.toString() + ", " + result.toString() + ", " + field.offset);
+        } else {
+            String load = field.type == BaseType.CHAR ? "lb " : "lw ";
+            textSegment.append("\t" + load + result.toString() + ", " + field.offset + "(" + result.toString() + ")");
+        }
+        textSegment.append(" # Load field " + fieldAccessExpr.fieldAccessName + "\n");
+        return result;
     }
 
-    @Override
-    public Register visitSizeOfExpr(SizeOfExpr sizeOfExpr) {
-        return null;
+    /*
+     * The address of a struct is worked out in two parts. First the expression that gives the
+     * address of the innermost struct is visited: the pointer of a value at, or any other
+     * struct-valued expression, which leaves the struct's address in its register. A struct
+     * variable needs nothing visited, so structPointer() gives null for it.
+     */
+    private static ASTNode structPointer(Expr struct) {
+        Expr base = structBase(struct);
+        if (base instanceof VarExpr) {
+            return null;
+        } else if (base instanceof ValueAtExpr) {
+            return ((ValueAtExpr) base).valueAtExp;
+        }
+        return base;
     }
 
-    @Override
-    public Register visitValueAtExpr(ValueAtExpr valueAtExpr) {
-        return null;
+    private static Expr structBase(Expr struct) {
+        while (struct instanceof FieldAccessExpr) {
+            struct = ((FieldAccessExpr) struct).fieldAccessExpr;
+        }
+        return struct;
     }
 
-    @Override
-    public Register visitTypecastExpr(TypecastExpr typecastExpr) {
-        Register result = typecastExpr.typecastedExpr.accept(this);
-        return result;
+    /*
+     * Then, given the register structPointer()'s node left, this puts the address of struct in a
+     * register: a struct variable, a struct field of another struct, or the struct a pointer
+     * points to.
+     */
+    private Register structAddress(Expr struct, Register pointer) {
+        Expr base = structBase(struct);
+        Register address = pointer;
+        if (base instanceof VarExpr) {
+            VarDecl vd = ((VarExpr) base).vd;
+            address = getRegister();
+            if (vd.isGlobal) {
+                textSegment.append("\tla " + address.toString() + ", " + vd.varName);
+            } else if (vd.isParameter) {
+                textSegment.append("\taddi " + address.toString() + ", $fp, " + vd.fpOffset);
+            } else {
+                // Locals grow down from -offset($fp), so the struct starts at its lowest word.
+                int start = vd.offset + structSpace(vd.type) - Layouts.WORD;
+                textSegment.append("\taddi " + address.toString() + ", $fp, " + (-start));
+            }
+            textSegment.append(" # Address of struct " + vd.varName + "\n");
+        }
+
+        // Fields of fields, from the innermost out.
+        List<FieldAccessExpr> fields = new ArrayList<>();
+        for (Expr e = struct; e instanceof FieldAccessExpr; e = ((FieldAccessExpr) e).fieldAccessExpr) {
+            fields.add((FieldAccessExpr) e);
+        }
+        for (int i = fields.size() - 1; i >= 0; i--) {
+            FieldAccessExpr fieldAccessExpr = fields.get(i);
+            textSegment.append("\taddi " + address.toString() + ", " + address.toString() + ", " + field(fieldAccessExpr).offset);
+            textSegment.append(" # Address of field " + fieldAccessExpr.fieldAccessName + "\n");
+        }
+        return address;
     }
 
-    @Override
-    public Register visitFieldAccessExpr(FieldAccessExpr fieldAccessExpr) {
-        return null;
+    // The type checker binds the field of every field access it accepts.
+    private static StructLayout.Field field(FieldAccessExpr fieldAccessExpr) {
+        assert fieldAccessExpr.field != null : "unchecked access to field " + fieldAccessExpr.fieldAccessName;
+        return fieldAccessExpr.field;
     }
 
     private void generatePrologue() {
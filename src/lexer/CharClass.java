@@ -0,0 +1,75 @@
+package lexer;
+
+import lexer.Token.TokenClass;
+
+/**
+ * Table-driven character classification for the lexer. The language is pure ASCII
+ * (see grammar/ebnf.txt), so one byte of class bits per ASCII character replaces the
+ * Unicode-aware Character.isXxx predicates; anything outside ASCII, and EOF, has no class.
+ */
+final class CharClass {
+
+    static final int SPACE         = 1;  // same set as Character.isWhitespace over ASCII
+    static final int ALPHA         = 2;  // 'a'..'z', 'A'..'Z'
+    static final int DIGIT         = 4;  // '0'..'9'
+    static final int UNDERSCORE    = 8;  // '_'
+    static final int ESCAPE        = 16; // escaped as itself: \\ \' \"
+    static final int LETTER_ESCAPE = 32; // escaped by letter: \t \r \n \f \b
+
+    static final int IDENTIFIER_START = ALPHA | UNDERSCORE;
+    static final int IDENTIFIER_PART  = ALPHA | DIGIT | UNDERSCORE;
+
+    private static final byte[] CLASSES = new byte[128];
+
+    // Token for each character that is a complete token on its own, null otherwise.
+    private static final TokenClass[] SINGLE_CHAR_TOKENS = new TokenClass[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if (Character.isWhitespace(c))
+                CLASSES[c] |= SPACE;
+        }
+        for (char c = 'a'; c <= 'z'; c++)
+            CLASSES[c] |= ALPHA;
+        for (char c = 'A'; c <= 'Z'; c++)
+            CLASSES[c] |= ALPHA;
+        for (char c = '0'; c <= '9'; c++)
+            CLASSES[c] |= DIGIT;
+        CLASSES['_'] |= UNDERSCORE;
+        for (char c : "\\'\"".toCharArray())
+            CLASSES[c] |= ESCAPE;
+        for (char c : "trnfb".toCharArray())
+            CLASSES[c] |= LETTER_ESCAPE;
+
+        SINGLE_CHAR_TOKENS['+'] = TokenClass.PLUS;
+        SINGLE_CHAR_TOKENS['-'] = TokenClass.MINUS;
+        SINGLE_CHAR_TOKENS['*'] = TokenClass.ASTERIX;
+        SINGLE_CHAR_TOKENS['%'] = TokenClass.REM;
+        SINGLE_CHAR_TOKENS['['] = TokenClass.LSBR;
+        SINGLE_CHAR_TOKENS[']'] = TokenClass.RSBR;
+        SINGLE_CHAR_TOKENS['{'] = TokenClass.LBRA;
+        SINGLE_CHAR_TOKENS['}'] = TokenClass.RBRA;
+        SINGLE_CHAR_TOKENS['('] = TokenClass.LPAR;
+        SINGLE_CHAR_TOKENS[')'] = TokenClass.RPAR;
+        SINGLE_CHAR_TOKENS[','] = TokenClass.COMMA;
+        SINGLE_CHAR_TOKENS[';'] = TokenClass.SC;
+        SINGLE_CHAR_TOKENS['.'] = TokenClass.DOT;
+    }
+
+    private CharClass() {}
+
+    /**
+     * True if c (a character or Scanner.EOF) has any of the class bits in mask.
+     */
+    static boolean is(int c, int mask) {
+        return (c & ~0x7F) == 0 && (CLASSES[c] & mask) != 0;
+    }
+
+    /**
+     * The token c forms on its own (delimiters, '.', and the operators that never
+     * start a longer token), or null.
+     */
+    static TokenClass singleCharToken(int c) {
+        return (c & ~0x7F) == 0 ? SINGLE_CHAR_TOKENS[c] : null;
+    }
+}
@@ -0,0 +1,52 @@
+package lexer;
+
+/**
+ * Minimised DFA recognising every token of the language, as a flat transition table.
+ *
+ * Input symbols are the 128 ASCII characters, OTHER (any non-ASCII character) and EOF.
+ * Symbols that no state tells apart share a column, so the table has one row per state and
+ * one column per symbol class. Accepting states carry the action of the rule they accept:
+ * a token class ordinal or SKIP. A lookahead state accepts without consuming the symbol
+ * that led to it (one symbol of trailing context).
+ */
+final class Dfa {
+
+    static final int OTHER = 128;
+    static final int EOF = 129;
+    static final int SYMBOLS = 130;
+
+    static final int DEAD = -1;
+    static final int NO_ACTION = -1;
+    static final int SKIP = -2;
+
+    final int start;
+    final int columns;
+    final byte[] symbolClass; // symbol -> column
+    final int[] next;         // state * columns + column -> state, or DEAD
+    final int[] action;       // state -> token class ordinal, SKIP or NO_ACTION
+    final boolean[] lookahead;
+
+    Dfa(int start, int columns, byte[] symbolClass, int[] next, int[] action, boolean[] lookahead) {
+        this.start = start;
+        this.columns = columns;
+        this.symbolClass = symbolClass;
+        this.next = next;
+        this.action = action;
+        this.lookahead = lookahead;
+    }
+
+    int states() {
+        return action.length;
+    }
+
+    private static Dfa lexer;
+
+    /**
+     * The lexer DFA, generated from DfaBuilder's rules on first use and cached for the JVM.
+     */
+    static synchronized Dfa lexer() {
+        if (lexer == null)
+            lexer = DfaBuilder.lexerRules().build();
+        return lexer;
+    }
+}
@@ -0,0 +1,396 @@
+package lexer;
+
+import lexer.Token.TokenClass;
+
+import java.util.*;
+
+/**
+ * Generates the lexer DFA from the token definitions.
+ *
+ * Rules are written with the small set of combinators below, compiled to an NFA by
+ * Thompson's construction, turned into a DFA by subset construction and minimised by
+ * partition refinement. When several rules accept the same input, the earliest one wins;
+ * the longest match always wins over a shorter one.
+ *
+ * A fragment is an int[] {start, end} of NFA states and must be used exactly once.
+ */
+final class DfaBuilder {
+
+    // NFA: per state, symbol-set edges and epsilon edges.
+    private final List<List<BitSet>> edgeSymbols = new ArrayList<>();
+    private final List<List<Integer>> edgeTargets = new ArrayList<>();
+    private final List<List<Integer>> epsilons = new ArrayList<>();
+    private final List<Integer> acceptRule = new ArrayList<>();
+
+    private final int start;
+    private final List<Integer> ruleActions = new ArrayList<>();
+    private final List<Boolean> ruleLookahead = new ArrayList<>();
+
+    DfaBuilder() {
+        start = state();
+    }
+
+    /**
+     * The lexical rules of the language, mirroring the definitions in Token.TokenClass and
+     * the error recovery of the hand-written Tokeniser: an INVALID rule matches exactly what
+     * the Tokeniser consumes before reporting the character that follows.
+     */
+    static DfaBuilder lexerRules() {
+        DfaBuilder b = new DfaBuilder();
+
+        // Keywords and types come before IDENTIFIER so that they win ties.
+        b.rule(b.literal("int"), TokenClass.INT);
+        b.rule(b.literal("void"), TokenClass.VOID);
+        b.rule(b.literal("char"), TokenClass.CHAR);
+        b.rule(b.literal("if"), TokenClass.IF);
+        b.rule(b.literal("else"), TokenClass.ELSE);
+        b.rule(b.literal("while"), TokenClass.WHILE);
+        b.rule(b.literal("return"), TokenClass.RETURN);
+        b.rule(b.literal("struct"), TokenClass.STRUCT);
+        b.rule(b.literal("sizeof"), TokenClass.SIZEOF);
+
+        b.rule(b.seq(b.symbols(identifierStart()), b.star(b.symbols(identifierPart()))), TokenClass.IDENTIFIER);
+        b.rule(b.plus(b.symbols(range('0', '9'))), TokenClass.INT_LITERAL);
+
+        // White space and comments.
+        BitSet space = new BitSet();
+        for (char c = 0; c < 128; c++) {
+            if (CharClass.is(c, CharClass.SPACE))
+                space.set(c);
+        }
+        b.rule(b.plus(b.symbols(space)), Dfa.SKIP, false);
+        b.rule(b.seq(b.literal("//"), b.star(b.symbols(allBut("\n")))), Dfa.SKIP, false);
+        b.rule(b.seq(b.literal("/*"), b.commentBody(), b.plus(b.literal("*")), b.literal("/")), Dfa.SKIP, false);
+        // An unterminated comment runs into the end of file.
+        b.rule(b.seq(b.literal("/*"), b.commentBody(), b.star(b.literal("*")), b.eof()), TokenClass.EOF.ordinal(), false);
+
+        // Operators and delimiters.
+        String[][] fixed = {
+            {"+", "PLUS"}, {"-", "MINUS"}, {"*", "ASTERIX"}, {"/", "DIV"}, {"%", "REM"},
+            {"[", "LSBR"}, {"]", "RSBR"}, {"{", "LBRA"}, {"}", "RBRA"}, {"(", "LPAR"}, {")", "RPAR"},
+            {",", "COMMA"}, {";", "SC"}, {".", "DOT"},
+            {"=", "ASSIGN"}, {"==", "EQ"}, {"!=", "NE"}, {"<", "LT"}, {"<=", "LE"}, {">", "GT"}, {">=", "GE"},
+            {"&&", "AND"}, {"||", "OR"}, {"#include", "INCLUDE"}
+        };
+        for (String[] f : fixed)
+            b.rule(b.literal(f[0]), TokenClass.valueOf(f[1]));
+        b.rule(b.seq(b.literal("#"), b.star(b.symbols(alpha()))), TokenClass.INVALID);
+        b.rule(b.literal("&"), TokenClass.INVALID);
+        b.rule(b.literal("|"), TokenClass.INVALID);
+        b.rule(b.literal("!"), TokenClass.INVALID);
+
+        // String literals, a bad escape and a missing closing quote.
+        b.rule(b.seq(b.literal("\""), b.stringBody(), b.literal("\"")), TokenClass.STRING_LITERAL);
+        b.rule(b.seq(b.literal("\""), b.stringBody(), b.literal("\\"), b.symbols(badEscape())), TokenClass.INVALID.ordinal(), true);
+        b.rule(b.seq(b.literal("\""), b.stringBody(), b.eof()), TokenClass.INVALID.ordinal(), true);
+
+        // Character literals and the ways they can go wrong.
+        b.rule(b.seq(b.literal("'"), b.charBody(), b.literal("'")), TokenClass.CHAR_LITERAL);
+        b.rule(b.literal("''"), TokenClass.INVALID.ordinal(), true);
+        b.rule(b.seq(b.literal("'\\"), b.symbols(badEscape())), TokenClass.INVALID.ordinal(), true);
+        b.rule(b.seq(b.literal("'"), b.charBody(), b.symbols(orEof(allBut("'")))), TokenClass.INVALID.ordinal(), true);
+        b.rule(b.seq(b.literal("'"), b.eof()), TokenClass.INVALID.ordinal(), true);
+
+        return b;
+    }
+
+    /*
+     * Rules.
+     */
+
+    void rule(int[] fragment, TokenClass tokenClass) {
+        rule(fragment, tokenClass.ordinal(), false);
+    }
+
+    void rule(int[] fragment, int action, boolean lookahead) {
+        acceptRule.set(fragment[1], ruleActions.size());
+        ruleActions.add(action);
+        ruleLookahead.add(lookahead);
+        epsilons.get(start).add(fragment[0]);
+    }
+
+    /*
+     * Fragments.
+     */
+
+    int[] symbols(BitSet on) {
+        int s = state();
+        int e = state();
+        edgeSymbols.get(s).add(on);
+        edgeTargets.get(s).add(e);
+        return new int[] {s, e};
+    }
+
+    int[] eof() {
+        BitSet on = new BitSet();
+        on.set(Dfa.EOF);
+        return symbols(on);
+    }
+
+    int[] literal(String text) {
+        int[][] parts = new int[text.length()][];
+        for (int i = 0; i < text.length(); i++) {
+            BitSet on = new BitSet();
+            on.set(text.charAt(i));
+            parts[i] = symbols(on);
+        }
+        return seq(parts);
+    }
+
+    int[] seq(int[]... parts) {
+        for (int i = 0; i + 1 < parts.length; i++)
+            epsilons.get(parts[i][1]).add(parts[i + 1][0]);
+        return new int[] {parts[0][0], parts[parts.length - 1][1]};
+    }
+
+    int[] alt(int[]... parts) {
+        int s = state();
+        int e = state();
+        for (int[] part : parts) {
+            epsilons.get(s).add(part[0]);
+            epsilons.get(part[1]).add(e);
+        }
+        return new int[] {s, e};
+    }
+
+    int[] star(int[] f) {
+        int s = state();
+        int e = state();
+        epsilons.get(s).add(f[0]);
+        epsilons.get(s).add(e);
+        epsilons.get(f[1]).add(f[0]);
+        epsilons.get(f[1]).add(e);
+        return new int[] {s, e};
+    }
+
+    int[] plus(int[] f) {
+        int s = state();
+        int e = state();
+        epsilons.get(s).add(f[0]);
+        epsilons.get(f[1]).add(f[0]);
+        epsilons.get(f[1]).add(e);
+        return new int[] {s, e};
+    }
+
+    // ([^*] | \*+[^*/])*  -- anything that does not close the comment yet
+    private int[] commentBody() {
+        return star(alt(symbols(allBut("*")), seq(plus(literal("*")), symbols(allBut("*/")))));
+    }
+
+    // ([^"\\] | \\[\\'"tnrfb])*
+    private int[] stringBody() {
+        return star(alt(symbols(allBut("\"\\")), seq(literal("\\"), symbols(escape()))));
+    }
+
+    // [^'\\] | \\[\\'"tnrfb]
+    private int[] charBody() {
+        return alt(symbols(allBut("'\\")), seq(literal("\\"), symbols(escape())));
+    }
+
+    /*
+     * Symbol sets.
+     */
+
+    private static BitSet range(char from, char to) {
+        BitSet on = new BitSet();
+        on.set(from, to + 1);
+        return on;
+    }
+
+    private static BitSet alpha() {
+        BitSet on = range('a', 'z');
+        on.or(range('A', 'Z'));
+        return on;
+    }
+
+    private static BitSet identifierStart() {
+        BitSet on = alpha();
+        on.set('_');
+        return on;
+    }
+
+    private static BitSet identifierPart() {
+        BitSet on = identifierStart();
+        on.or(range('0', '9'));
+        return on;
+    }
+
+    private static BitSet escape() {
+        BitSet on = new BitSet();
+        for (char c : "\\'\"tnrfb".toCharArray())
+            on.set(c);
+        return on;
+    }
+
+    private static BitSet badEscape() {
+        BitSet on = new BitSet();
+        on.set(0, Dfa.SYMBOLS);
+        on.andNot(escape());
+        return on;
+    }
+
+    // Every character (OTHER included) but the given ones; never EOF.
+    private static BitSet allBut(String excluded) {
+        BitSet on = new BitSet();
+        on.set(0, Dfa.OTHER + 1);
+        for (char c : excluded.toCharArray())
+            on.clear(c);
+        return on;
+    }
+
+    private static BitSet orEof(BitSet on) {
+        on.set(Dfa.EOF);
+        return on;
+    }
+
+    private int state() {
+        edgeSymbols.add(new ArrayList<BitSet>());
+        edgeTargets.add(new ArrayList<Integer>());
+        epsilons.add(new ArrayList<Integer>());
+        acceptRule.add(-1);
+        return acceptRule.size() - 1;
+    }
+
+    /*
+     * NFA -> DFA -> minimal DFA.
+     */
+
+    Dfa build() {
+        // Subset construction. DFA states are numbered in discovery order; -1 is the dead state.
+        List<BitSet> sets = new ArrayList<>();
+        Map<BitSet, Integer> ids = new HashMap<>();
+        List<int[]> transitions = new ArrayList<>();
+
+        BitSet initial = closure(singleton(start));
+        sets.add(initial);
+        ids.put(initial, 0);
+        for (int d = 0; d < sets.size(); d++) {
+            BitSet set = sets.get(d);
+            int[] row = new int[Dfa.SYMBOLS];
+            for (int symbol = 0; symbol < Dfa.SYMBOLS; symbol++) {
+                BitSet moved = new BitSet();
+                for (int n = set.nextSetBit(0); n >= 0; n = set.nextSetBit(n + 1)) {
+                    List<BitSet> on = edgeSymbols.get(n);
+                    for (int i = 0; i < on.size(); i++) {
+                        if (on.get(i).get(symbol))
+                            moved.set(edgeTargets.get(n).get(i));
+                    }
+                }
+                if (moved.isEmpty()) {
+                    row[symbol] = Dfa.DEAD;
+                    continue;
+                }
+                BitSet target = closure(moved);
+                Integer id = ids.get(target);
+                if (id == null) {
+                    id = sets.size();
+                    sets.add(target);
+                    ids.put(target, id);
+                }
+                row[symbol] = id;
+            }
+            transitions.add(row);
+        }
+
+        // The rule each DFA state accepts: the earliest accepting NFA rule in its set.
+        int n = sets.size();
+        int[] rule = new int[n];
+        for (int d = 0; d < n; d++) {
+            rule[d] = -1;
+            BitSet set = sets.get(d);
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                int r = acceptRule.get(s);
+                if (r >= 0 && (rule[d] < 0 || r < rule[d]))
+                    rule[d] = r;
+            }
+        }
+
+        // Minimisation by partition refinement, starting from "same accepted rule" and
+        // splitting blocks until every state's successors agree block-wise on every symbol.
+        int[] block = new int[n];
+        Map<Integer, Integer> initialBlocks = new HashMap<>();
+        for (int d = 0; d < n; d++) {
+            Integer b = initialBlocks.get(rule[d]);
+            if (b == null) {
+                b = initialBlocks.size();
+                initialBlocks.put(rule[d], b);
+            }
+            block[d] = b;
+        }
+        int blocks = initialBlocks.size();
+        while (true) {
+            Map<List<Integer>, Integer> signatures = new HashMap<>();
+            int[] refined = new int[n];
+            for (int d = 0; d < n; d++) {
+                List<Integer> signature = new ArrayList<>(Dfa.SYMBOLS + 1);
+                signature.add(block[d]);
+                int[] row = transitions.get(d);
+                for (int symbol = 0; symbol < Dfa.SYMBOLS; symbol++)
+                    signature.add(row[symbol] == Dfa.DEAD ? -1 : block[row[symbol]]);
+                Integer b = signatures.get(signature);
+                if (b == null) {
+                    b = signatures.size();
+                    signatures.put(signature, b);
+                }
+                refined[d] = b;
+            }
+            block = refined;
+            if (signatures.size() == blocks)
+                break;
+            blocks = signatures.size();
+        }
+
+        // Symbols whose columns agree in every state share a column of the table.
+        byte[] symbolClass = new byte[Dfa.SYMBOLS];
+        Map<List<Integer>, Integer> columnIds = new HashMap<>();
+        for (int symbol = 0; symbol < Dfa.SYMBOLS; symbol++) {
+            List<Integer> column = new ArrayList<>(n);
+            for (int d = 0; d < n; d++) {
+                int t = transitions.get(d)[symbol];
+                column.add(t == Dfa.DEAD ? -1 : block[t]);
+            }
+            Integer c = columnIds.get(column);
+            if (c == null) {
+                c = columnIds.size();
+                columnIds.put(column, c);
+            }
+            symbolClass[symbol] = (byte) (int) c;
+        }
+        int columns = columnIds.size();
+
+        int[] next = new int[blocks * columns];
+        int[] action = new int[blocks];
+        boolean[] lookahead = new boolean[blocks];
+        for (int d = 0; d < n; d++) {
+            int b = block[d];
+            action[b] = rule[d] < 0 ? Dfa.NO_ACTION : ruleActions.get(rule[d]);
+            lookahead[b] = rule[d] >= 0 && ruleLookahead.get(rule[d]);
+            int[] row = transitions.get(d);
+            for (int symbol = 0; symbol < Dfa.SYMBOLS; symbol++)
+                next[b * columns + symbolClass[symbol]] = row[symbol] == Dfa.DEAD ? Dfa.DEAD : block[row[symbol]];
+        }
+        return new Dfa(block[0], columns, symbolClass, next, action, lookahead);
+    }
+
+    private static BitSet singleton(int state) {
+        BitSet set = new BitSet();
+        set.set(state);
+        return set;
+    }
+
+    private BitSet closure(BitSet states) {
+        BitSet result = (BitSet) states.clone();
+        Deque<Integer> work = new ArrayDeque<>();
+        for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1))
+            work.push(s);
+        while (!work.isEmpty()) {
+            for (int t : epsilons.get(work.pop())) {
+                if (!result.get(t)) {
+                    result.set(t);
+                    work.push(t);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,147 @@
+package lexer;
+
+import lexer.Token.TokenClass;
+import util.NameTable;
+
+/**
+ * Table-driven tokeniser running the generated lexer DFA (see DfaBuilder) over the array of an
+ * array-backed Scanner. It produces the same tokens and lexing errors as the hand-written
+ * Tokeniser, but dispatching on a character costs one table lookup instead of a cascade of tests.
+ */
+public class DfaTokeniser extends Tokeniser {
+
+    private static final TokenClass[] CLASSES = TokenClass.values();
+
+    private final Dfa dfa = Dfa.lexer();
+
+    public DfaTokeniser(Scanner scanner) {
+        this(scanner, NameTable.GLOBAL);
+    }
+
+    public DfaTokeniser(Scanner scanner, NameTable names) {
+        super(scanner, names);
+        if (scanner.chars == null)
+            throw new IllegalArgumentException("DfaTokeniser needs an array-backed Scanner");
+    }
+
+    @Override
+    TokenClass next() {
+        final char[] chars = scanner.chars;
+        final int limit = scanner.limit;
+        final byte[] symbolClass = dfa.symbolClass;
+        final int[] table = dfa.next;
+        final int columns = dfa.columns;
+        final int[] action = dfa.action;
+
+        while (true) {
+            int from = scanner.pos;
+            int line = scanner.line;
+            int column = scanner.column;
+            tokenOffset = from;
+
+            // Longest match: run until the DFA dies, remembering the last accepting state seen.
+            int state = dfa.start;
+            int accepted = Dfa.NO_ACTION;
+            int end = from;
+            for (int i = from; ; i++) {
+                int symbol = i < limit ? chars[i] : Dfa.EOF;
+                if (symbol >= Dfa.OTHER && i < limit)
+                    symbol = Dfa.OTHER;
+                state = table[state * columns + symbolClass[symbol]];
+                if (state == Dfa.DEAD)
+                    break;
+                if (action[state] != Dfa.NO_ACTION) {
+                    accepted = action[state];
+                    // Neither EOF nor a lookahead symbol is part of the token.
+                    end = dfa.lookahead[state] || symbol == Dfa.EOF ? i : i + 1;
+                }
+                if (symbol == Dfa.EOF)
+                    break;
+            }
+
+            if (accepted == Dfa.NO_ACTION) {
+                if (from == limit)
+                    return token(TokenClass.EOF, line, column);
+
+                // Not the start of any token: skip the character and report it.
+                advance(from + 1);
+                error(chars[from], line, column);
+                return token(TokenClass.INVALID, line, column);
+            }
+
+            advance(end);
+            if (accepted == Dfa.SKIP)
+                continue;
+
+            TokenClass tokenClass = CLASSES[accepted];
+            switch (tokenClass) {
+                case IDENTIFIER:
+                    return token(tokenClass, names.intern(chars, from, end - from), line, column);
+                case INT_LITERAL:
+                    return token(tokenClass, new String(chars, from, end - from), line, column);
+                case STRING_LITERAL:
+                    return token(tokenClass, stringData(chars, from + 1, end - 1), line, column);
+                case CHAR_LITERAL:
+                    return token(tokenClass, charData(chars, from + 1), line, column);
+                case INVALID:
+                    // Reported against the character the token stopped at, as the Tokeniser does.
+                    error(end < limit ? chars[end] : Scanner.EOF, line, column);
+                    return token(tokenClass, line, column);
+                case EOF:
+                    // An unterminated comment ran to the end of file.
+                    tokenOffset = end;
+                    return token(tokenClass, scanner.line, scanner.column);
+                default:
+                    return token(tokenClass, Token.fixedData(tokenClass), line, column);
+            }
+        }
+    }
+
+    // Moves the scanner up to end, keeping line and column exactly as Scanner.next would.
+    private void advance(int end) {
+        char[] chars = scanner.chars;
+        int line = scanner.line;
+        int column = scanner.column;
+        for (int i = scanner.pos; i < end; i++) {
+            char c = chars[i];
+            if (c == '\n' || c == '\r') {
+                line++;
+                column = 0;
+            } else {
+                column++;
+            }
+        }
+        scanner.pos = end;
+        scanner.line = line;
+        scanner.column = column;
+    }
+
+    // Letter escapes are kept in their escaped form, the others stand for themselves.
+    private static String stringData(char[] chars, int from, int to) {
+        StringBuilder sb = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = chars[i];
+            if (c == '\\') {
+                c = chars[++i];
+                if (CharClass.is(c, CharClass.LETTER_ESCAPE))
+                    sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static String charData(char[] chars, int from) {
+        char c = chars[from];
+        if (c != '\\')
+            return String.valueOf(c);
+        switch (chars[from + 1]) {
+            case 'n': return "\n";
+            case 'f': return "\f";
+            case 'r': return "\r";
+            case 'b': return "\b";
+            case 't': return "\t";
+            default:  return String.valueOf(chars[from + 1]);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package lexer;
+
+import lexer.Token.TokenClass;
+import util.NameTable;
+
+/**
+ * Re-lexes a source after an edit, starting from the previous tokens.
+ *
+ * Only the tokens around the edit are lexed again. Lexing restarts at the last token that
+ * starts before the edit, because a token can look one character past its end. It stops at the
+ * first token starting after the inserted text where the old stream also had a token start.
+ * The text from there on is unchanged and the tokeniser carries no state from one token to the
+ * next, so every later old token is reused, moved to its new offset, line and column.
+ */
+public final class IncrementalTokeniser {
+
+    /**
+     * The new tokens and what changed. New tokens [0, changedFrom) are old tokens
+     * [0, changedFrom), and new tokens [changedTo, size) are old tokens [replacedTo, old size)
+     * moved; only new tokens [changedFrom, changedTo), which replace old tokens
+     * [changedFrom, replacedTo), were lexed again.
+     */
+    public static final class Result {
+        public final char[] source;
+        public final TokenBuffer tokens;
+        public final int changedFrom;
+        public final int changedTo;
+        public final int replacedTo;
+
+        Result(char[] source, TokenBuffer tokens, int changedFrom, int changedTo, int replacedTo) {
+            this.source = source;
+            this.tokens = tokens;
+            this.changedFrom = changedFrom;
+            this.changedTo = changedTo;
+            this.replacedTo = replacedTo;
+        }
+    }
+
+    private final NameTable names;
+
+    public IncrementalTokeniser() {
+        this(NameTable.GLOBAL);
+    }
+
+    public IncrementalTokeniser(NameTable names) {
+        this.names = names;
+    }
+
+    /**
+     * Applies the edit replacing source[offset, offset + removed) with inserted and re-lexes
+     * what it affects. tokens must be the complete token stream of source, EOF included, with
+     * offsets indexing source. Lexing errors in the re-lexed range are reported as usual.
+     */
+    public Result relex(char[] source, TokenBuffer tokens, int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > source.length)
+            throw new IllegalArgumentException("edit out of range");
+
+        char[] edited = new char[source.length - removed + inserted.length()];
+        System.arraycopy(source, 0, edited, 0, offset);
+        inserted.getChars(0, inserted.length(), edited, offset);
+        System.arraycopy(source, offset + removed, edited, offset + inserted.length(),
+                source.length - offset - removed);
+
+        int delta = inserted.length() - removed;
+        int editEnd = offset + inserted.length();
+
+        // Restart at the last token starting before the edit, or at the top of the file.
+        int restart = lastStartBefore(tokens, offset);
+        Scanner scanner;
+        if (restart < 0) {
+            restart = 0;
+            scanner = new Scanner(edited);
+        } else {
+            scanner = new Scanner(edited, tokens.offset(restart), edited.length);
+            scanner.line = tokens.line(restart);
+            scanner.column = tokens.column(restart);
+        }
+
+        TokenBuffer result = new TokenBuffer(tokens.size() + 16);
+        result.append(tokens, 0, restart);
+
+        Tokeniser tokeniser = new Tokeniser(scanner, names);
+        int old = restart;
+        while (true) {
+            TokenClass tokenClass = tokeniser.next(result);
+            int last = result.size() - 1;
+            int start = result.offset(last);
+
+            if (start >= editEnd) {
+                int oldStart = start - delta;
+                while (old < tokens.size() && tokens.offset(old) < oldStart)
+                    old++;
+                if (old < tokens.size() && tokens.offset(old) == oldStart) {
+                    // Back in step with the old stream: reuse the rest of it, this token included.
+                    int lineDelta = result.line(last) - tokens.line(old);
+                    int columnDelta = result.column(last) - tokens.column(old);
+                    result.truncate(last);
+                    result.appendShifted(tokens, old, tokens.size(),
+                            delta, lineDelta, tokens.line(old), columnDelta);
+                    return new Result(edited, result, restart, last, old);
+                }
+            }
+
+            if (tokenClass == TokenClass.EOF)
+                return new Result(edited, result, restart, result.size(), tokens.size());
+        }
+    }
+
+    // Index of the last token whose offset is below offset, or -1.
+    private static int lastStartBefore(TokenBuffer tokens, int offset) {
+        int low = 0;
+        int high = tokens.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (tokens.offset(mid) < offset)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return high;
+    }
+}
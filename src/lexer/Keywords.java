@@ -0,0 +1,54 @@
+package lexer;
+
+import lexer.Token.TokenClass;
+
+/**
+ * Recognises keywords and type names directly on a character range, dispatching on
+ * length and first character so that at most one keyword is compared per identifier.
+ */
+final class Keywords {
+
+    private Keywords() {}
+
+    /**
+     * Returns the keyword class spelled by chars[from, from + length), or null for an identifier.
+     */
+    static TokenClass lookup(char[] chars, int from, int length) {
+        switch (length) {
+            case 2:
+                if (chars[from] == 'i' && chars[from + 1] == 'f')
+                    return TokenClass.IF;
+                return null;
+            case 3:
+                return spells("int", chars, from) ? TokenClass.INT : null;
+            case 4:
+                switch (chars[from]) {
+                    case 'v': return spells("void", chars, from) ? TokenClass.VOID : null;
+                    case 'c': return spells("char", chars, from) ? TokenClass.CHAR : null;
+                    case 'e': return spells("else", chars, from) ? TokenClass.ELSE : null;
+                    default:  return null;
+                }
+            case 5:
+                return spells("while", chars, from) ? TokenClass.WHILE : null;
+            case 6:
+                switch (chars[from]) {
+                    case 'r': return spells("return", chars, from) ? TokenClass.RETURN : null;
+                    case 's':
+                        if (chars[from + 1] == 't')
+                            return spells("struct", chars, from) ? TokenClass.STRUCT : null;
+                        return spells("sizeof", chars, from) ? TokenClass.SIZEOF : null;
+                    default:  return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    private static boolean spells(String keyword, char[] chars, int from) {
+        for (int i = 0; i < keyword.length(); i++) {
+            if (chars[from + i] != keyword.charAt(i))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,218 @@
+package lexer;
+
+import util.NameTable;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Lexes a large array-backed source on a fork-join pool.
+ *
+ * A pre-scan splits the source just after newlines that lie outside string and character
+ * literals and block comments. Each chunk is lexed by its own Tokeniser, which starts on the
+ * chunk's line and stops at the next boundary, and the chunks are stitched together in order.
+ * The pre-scan only proposes boundaries. If a chunk does not stop exactly on the next one (an
+ * unterminated literal can fool the pre-scan, for instance), stitching lexes on from where it
+ * stopped until it reaches a later boundary. The tokens, positions and errors are therefore
+ * always those of sequential lexing.
+ */
+public class ParallelTokeniser {
+
+    // Below this many characters a chunk costs more to fork than to lex.
+    private static final int MIN_CHUNK = 1 << 18;
+
+    private static final int CODE = 0;
+    private static final int STRING = 1;
+    private static final int CHAR = 2;
+    private static final int LINE_COMMENT = 3;
+    private static final int BLOCK_COMMENT = 4;
+
+    private static ForkJoinPool sharedPool;
+
+    private final char[] chars;
+    private final int from;
+    private final int to;
+    private final int line;
+    private final int column;
+    private final ForkJoinPool pool;
+
+    private int error = 0;
+
+    public ParallelTokeniser(Scanner scanner) {
+        this(scanner, sharedPool());
+    }
+
+    public ParallelTokeniser(Scanner scanner, ForkJoinPool pool) {
+        if (scanner.chars == null)
+            throw new IllegalArgumentException("ParallelTokeniser needs an array-backed Scanner");
+        this.chars = scanner.chars;
+        this.from = scanner.pos;
+        this.to = scanner.limit;
+        this.line = scanner.line;
+        this.column = scanner.column;
+        this.pool = pool;
+    }
+
+    private static synchronized ForkJoinPool sharedPool() {
+        if (sharedPool == null)
+            sharedPool = new ForkJoinPool();
+        return sharedPool;
+    }
+
+    public int getErrorCount() {
+        return error;
+    }
+
+    /**
+     * Reads every token, EOF included, into a packed TokenBuffer. Lexing errors are printed
+     * once all chunks before them are stitched, in source order.
+     */
+    public TokenBuffer tokenise() {
+        int parallelism = pool.getParallelism();
+        if (parallelism < 2 || to - from < 2 * MIN_CHUNK) {
+            Chunk whole = new Chunk(from, line, column);
+            whole.compute();
+            report(whole.tokeniser);
+            return whole.tokens;
+        }
+
+        Chunk[] chunks = split(Math.max(MIN_CHUNK, (to - from) / (parallelism * 4)));
+
+        for (int i = 1; i < chunks.length; i++)
+            pool.execute(chunks[i]);
+        chunks[0].compute();
+
+        TokenBuffer tokens = new TokenBuffer((to - from) / 4);
+        int i = 0;
+        while (true) {
+            Chunk chunk = chunks[i];
+            if (i > 0)
+                chunk.join();
+
+            // Everything before the EOF token the chunk stopped with.
+            tokens.append(chunk.tokens, 0, chunk.tokens.size() - 1);
+
+            Tokeniser tokeniser = chunk.tokeniser;
+            if (tokeniser.stopOffset == Integer.MAX_VALUE) {
+                tokens.append(chunk.tokens, chunk.tokens.size() - 1, chunk.tokens.size());
+                report(tokeniser);
+                break;
+            }
+
+            int stopped = tokeniser.tokenOffset;
+            int next = i + 1;
+            while (next < chunks.length && chunks[next].start < stopped)
+                next++;
+
+            if (next < chunks.length && chunks[next].start == stopped) {
+                report(tokeniser);
+                for (int skipped = i + 1; skipped < next; skipped++)
+                    chunks[skipped].cancel(false);
+                i = next;
+            } else {
+                // Out of step with the boundaries: carry on sequentially up to the next one.
+                tokeniser.stopOffset = next < chunks.length ? chunks[next].start : Integer.MAX_VALUE;
+                chunk.compute();
+            }
+        }
+        return tokens;
+    }
+
+    private void report(Tokeniser tokeniser) {
+        System.out.print(tokeniser.errorLog);
+        error += tokeniser.getErrorCount();
+    }
+
+    /**
+     * Proposes chunks of about chunkSize characters, tracking just enough of the lexical
+     * structure to avoid splitting inside literals and comments.
+     */
+    private Chunk[] split(int chunkSize) {
+        Chunk[] chunks = new Chunk[1 + (to - from) / chunkSize];
+        int count = 0;
+        chunks[count++] = new Chunk(from, line, column);
+
+        int state = CODE;
+        boolean escaped = false;
+        int currentLine = line;
+        int target = from + chunkSize;
+        for (int i = from; i < to; i++) {
+            char c = chars[i];
+            if (c == '\n' || c == '\r') {
+                currentLine++;
+                escaped = false;
+                if (state == LINE_COMMENT)
+                    state = CODE;
+                if (c == '\n' && state == CODE && i + 1 >= target && to - (i + 1) >= chunkSize / 2
+                        && count < chunks.length) {
+                    chunks[count++] = new Chunk(i + 1, currentLine, 0);
+                    target = i + 1 + chunkSize;
+                }
+                continue;
+            }
+            switch (state) {
+                case CODE:
+                    if (c == '"') {
+                        state = STRING;
+                    } else if (c == '\'') {
+                        state = CHAR;
+                    } else if (c == '/' && i + 1 < to && chars[i + 1] == '/') {
+                        state = LINE_COMMENT;
+                        i++;
+                    } else if (c == '/' && i + 1 < to && chars[i + 1] == '*') {
+                        state = BLOCK_COMMENT;
+                        i++;
+                    }
+                    break;
+                case STRING:
+                case CHAR:
+                    if (escaped)
+                        escaped = false;
+                    else if (c == '\\')
+                        escaped = true;
+                    else if (c == (state == STRING ? '"' : '\''))
+                        state = CODE;
+                    break;
+                case BLOCK_COMMENT:
+                    if (c == '*' && i + 1 < to && chars[i + 1] == '/') {
+                        state = CODE;
+                        i++;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        chunks = Arrays.copyOf(chunks, count);
+        for (int i = 0; i + 1 < count; i++)
+            chunks[i].tokeniser.stopOffset = chunks[i + 1].start;
+        return chunks;
+    }
+
+    private final class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final int start;
+        final Tokeniser tokeniser;
+        TokenBuffer tokens;
+
+        Chunk(int start, int line, int column) {
+            this.start = start;
+            Scanner scanner = new Scanner(chars, start, to);
+            scanner.line = line;
+            scanner.column = column;
+            tokeniser = new Tokeniser(scanner, new NameTable(NameTable.GLOBAL));
+            tokeniser.errorLog = new StringBuilder();
+        }
+
+        // Lexes from where the tokeniser is up to its stop offset, replacing the previous tokens.
+        @Override
+        protected void compute() {
+            tokens = new TokenBuffer(Math.min(to - start, MIN_CHUNK) / 4);
+            tokeniser.tokenise(tokens);
+        }
+    }
+}
@@ -1,19 +1,70 @@
 package lexer;
 
+import util.LineIndex;
+
 import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 
 public class Scanner {
 
+    /**
+     * Returned by peek and next once the input is exhausted.
+     */
+    public static final int EOF = -1;
+
+    private static final int NOTHING_PEEKED = -2;
+
     BufferedReader input;
-    private int peeked = -1;
+    private int peeked = NOTHING_PEEKED;
+
+    // Whole source when the scanner is array-backed, null when streaming from input.
+    // Package-private so that DfaTokeniser can run its table over the array directly.
+    char[] chars;
+    private int start;
+    int pos;
+    int limit;
 
-    private int line = 1;
-    private int column = 1;
+    int line = 1;
+    int column = 1;
+
+    // Characters consumed so far when streaming from input.
+    private int consumed = 0;
 
     public Scanner(File source) throws FileNotFoundException {
         input = new BufferedReader(new FileReader(source));
     }
 
+    /**
+     * Array-backed scanner over source[from, to). Each character costs a bounds check
+     * and an array load instead of a call into a Reader.
+     */
+    public Scanner(char[] source, int from, int to) {
+        chars = source;
+        start = from;
+        pos = from;
+        limit = to;
+    }
+
+    public Scanner(char[] source) {
+        this(source, 0, source.length);
+    }
+
+    /**
+     * Maps the file with NIO and decodes it once (with the same default charset FileReader uses)
+     * into a char array the returned scanner moves through with an index.
+     */
+    public static Scanner map(File source) throws IOException {
+        try (FileInputStream in = new FileInputStream(source);
+             FileChannel channel = in.getChannel()) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CharBuffer decoded = Charset.defaultCharset().decode(bytes);
+            return new Scanner(decoded.array(), decoded.arrayOffset(), decoded.arrayOffset() + decoded.limit());
+        }
+    }
+
 
     public int getColumn() {
         return column;
@@ -23,31 +74,52 @@ public class Scanner {
         return line;
     }
 
-    public char peek() throws IOException {
-        if (peeked != -1)
-            return (char)peeked;
+    /**
+     * Offset of the next character in the source: an index into the backing array when
+     * array-backed, otherwise the number of characters read so far.
+     */
+    public int getOffset() {
+        return chars != null ? pos : consumed;
+    }
+
+    /**
+     * Index resolving the offsets of this scanner's source to lines and columns. Needs an
+     * array-backed scanner.
+     */
+    public LineIndex lineIndex() {
+        if (chars == null)
+            throw new IllegalStateException("a streaming scanner keeps no source to index");
+        return new LineIndex(chars, start, limit);
+    }
 
-        int r = input.read();
-        if (r == -1)
-            throw new EOFException();
+    public int peek() throws IOException {
+        if (chars != null)
+            return pos < limit ? chars[pos] : EOF;
 
-        peeked = r;
-        return (char) r;
+        if (peeked == NOTHING_PEEKED)
+            peeked = input.read();
+        return peeked;
     }
 
 
-    public char next() throws IOException {
-        char r;
-        if (peeked != -1) {
-            r = (char) peeked;
-            peeked = -1;
+    public int next() throws IOException {
+        int r;
+        if (chars != null) {
+            if (pos >= limit)
+                return EOF;
+            r = chars[pos++];
+        } else if (peeked != NOTHING_PEEKED) {
+            r = peeked;
+            peeked = NOTHING_PEEKED;
         } else {
-            int i = input.read();
-            if (i == -1)
-                throw new EOFException();
-            r = (char) i;
+            r = input.read();
         }
 
+        if (r == EOF)
+            return EOF;
+        if (chars == null)
+            consumed++;
+
         if (r == '\n' || r == '\r') {
             line++;
             column =0;
@@ -58,7 +130,8 @@ public class Scanner {
     }
 
     public void close() throws IOException {
-        input.close();
+        if (input != null)
+            input.close();
     }
 
 
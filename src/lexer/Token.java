@@ -73,25 +73,65 @@ public class Token {
     }
 
 
+    // Shared spelling of every token class whose text never varies, indexed by ordinal.
+    private static final String[] FIXED_DATA = new String[TokenClass.values().length];
+    static {
+        String[][] spellings = {
+            {"ASSIGN", "="}, {"LBRA", "{"}, {"RBRA", "}"}, {"LPAR", "("}, {"RPAR", ")"},
+            {"LSBR", "["}, {"RSBR", "]"}, {"SC", ";"}, {"COMMA", ","},
+            {"INT", "INT_TYPE"}, {"VOID", "VOID_TYPE"}, {"CHAR", "CHAR_TYPE"},
+            {"IF", "IF_KEYWORD"}, {"ELSE", "ELSE_KEYWORD"}, {"WHILE", "WHILE_KEYWORD"},
+            {"RETURN", "RETURN_KEYWORD"}, {"STRUCT", "STRUCT_KEYWORD"}, {"SIZEOF", "SIZEOF_KEYWORD"},
+            {"INCLUDE", "#include"}, {"AND", "&&"}, {"OR", "||"},
+            {"EQ", "=="}, {"NE", "!="}, {"LT", "<"}, {"GT", ">"}, {"LE", "<="}, {"GE", ">="},
+            {"PLUS", "+"}, {"MINUS", "-"}, {"ASTERIX", "*"}, {"DIV", "/"}, {"REM", "%"},
+            {"DOT", "."}, {"EOF", ""}, {"INVALID", ""}
+        };
+        for (String[] spelling : spellings)
+            FIXED_DATA[TokenClass.valueOf(spelling[0]).ordinal()] = spelling[1];
+    }
+
+    /**
+     * Returns the shared data of a token class whose spelling never varies, or null for
+     * identifiers and literals.
+     */
+    public static String fixedData(TokenClass tokenClass) {
+        return FIXED_DATA[tokenClass.ordinal()];
+    }
+
     public final TokenClass tokenClass;
     public final String data;
     public final Position position;
 
+    // Source offsets of the first character of the token and of the one after it, -1 if unknown.
+    public final int offset;
+    public final int end;
+
     public Token(TokenClass type, int lineNum, int colNum) {
         this(type, "", lineNum, colNum);
     }
 
     public Token (TokenClass tokenClass, String data, int lineNum, int colNum) {
+        this(tokenClass, data, lineNum, colNum, -1, -1);
+    }
+
+    public Token (TokenClass tokenClass, String data, int lineNum, int colNum, int offset, int end) {
         assert (tokenClass != null);
         this.tokenClass = tokenClass;
         this.data = data;
         this.position = new Position(lineNum, colNum);
+        this.offset = offset;
+        this.end = end;
     }
 
 
 
     @Override
     public String toString() {
+        return toString(tokenClass, data);
+    }
+
+    public static String toString(TokenClass tokenClass, String data) {
         if (data.equals(""))
             return tokenClass.toString();
         else
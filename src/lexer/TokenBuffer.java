@@ -0,0 +1,145 @@
+package lexer;
+
+import lexer.Token.TokenClass;
+import util.Position;
+
+import java.util.Arrays;
+
+/**
+ * Packed token stream: token classes, positions and source offsets live in primitive
+ * arrays instead of one Token (and one Position) object per token. Tokens with a fixed
+ * spelling share their data through Token.fixedData; only identifiers and literals keep
+ * a String of their own.
+ */
+public class TokenBuffer {
+
+    private static final TokenClass[] CLASSES = TokenClass.values();
+
+    private byte[] classes;
+    private long[] positions; // line in the high 32 bits, column in the low 32 bits
+    private int[] offsets;
+    private int[] ends;       // offset of the character after the token
+    private String[] data;    // null for fixed-spelling tokens
+    private int size = 0;
+
+    public TokenBuffer() {
+        this(1024);
+    }
+
+    public TokenBuffer(int capacity) {
+        capacity = Math.max(capacity, 16);
+        classes = new byte[capacity];
+        positions = new long[capacity];
+        offsets = new int[capacity];
+        ends = new int[capacity];
+        data = new String[capacity];
+    }
+
+    public void add(TokenClass tokenClass, String tokenData, int line, int column, int offset, int end) {
+        if (size == classes.length)
+            grow();
+        classes[size] = (byte) tokenClass.ordinal();
+        positions[size] = ((long) line << 32) | (column & 0xFFFFFFFFL);
+        offsets[size] = offset;
+        ends[size] = end;
+        data[size] = Token.fixedData(tokenClass) == null ? tokenData : null;
+        size++;
+    }
+
+    /**
+     * Appends token as if it started at offset; it keeps its length if known.
+     */
+    public void add(Token token, int offset) {
+        int length = token.offset >= 0 ? token.end - token.offset : 0;
+        add(token.tokenClass, token.data, token.position.getLine(), token.position.getColumn(), offset, offset + length);
+    }
+
+    /**
+     * Appends tokens [from, to) of other.
+     */
+    public void append(TokenBuffer other, int from, int to) {
+        int count = to - from;
+        while (size + count > classes.length)
+            grow();
+        System.arraycopy(other.classes, from, classes, size, count);
+        System.arraycopy(other.positions, from, positions, size, count);
+        System.arraycopy(other.offsets, from, offsets, size, count);
+        System.arraycopy(other.ends, from, ends, size, count);
+        System.arraycopy(other.data, from, data, size, count);
+        size += count;
+    }
+
+    /**
+     * Appends tokens [from, to) of other moved by offsetDelta characters and lineDelta lines.
+     * Those on line columnLine of other also move by columnDelta columns.
+     */
+    void appendShifted(TokenBuffer other, int from, int to,
+                       int offsetDelta, int lineDelta, int columnLine, int columnDelta) {
+        int first = size;
+        append(other, from, to);
+        for (int i = first; i < size; i++) {
+            int line = line(i);
+            int column = line == columnLine ? column(i) + columnDelta : column(i);
+            positions[i] = ((long) (line + lineDelta) << 32) | (column & 0xFFFFFFFFL);
+            offsets[i] += offsetDelta;
+            ends[i] += offsetDelta;
+        }
+    }
+
+    /**
+     * Drops every token from index size on.
+     */
+    void truncate(int size) {
+        Arrays.fill(data, size, this.size, null);
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenClass tokenClass(int i) {
+        return CLASSES[classes[i]];
+    }
+
+    public String data(int i) {
+        String d = data[i];
+        return d != null ? d : Token.fixedData(CLASSES[classes[i]]);
+    }
+
+    public int line(int i) {
+        return (int) (positions[i] >>> 32);
+    }
+
+    public int column(int i) {
+        return (int) positions[i];
+    }
+
+    public int offset(int i) {
+        return offsets[i];
+    }
+
+    public int end(int i) {
+        return ends[i];
+    }
+
+    public Position position(int i) {
+        return new Position(line(i), column(i));
+    }
+
+    /**
+     * Materialises the i^th token as a Token object.
+     */
+    public Token get(int i) {
+        return new Token(tokenClass(i), data(i), line(i), column(i), offsets[i], ends[i]);
+    }
+
+    private void grow() {
+        int capacity = classes.length * 2;
+        classes = Arrays.copyOf(classes, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        data = Arrays.copyOf(data, capacity);
+    }
+}
@@ -1,14 +1,37 @@
 package lexer;
 
 import lexer.Token.TokenClass;
+import util.NameTable;
 
-import java.io.EOFException;
 import java.io.IOException;
+import java.util.Arrays;
 
 
 public class Tokeniser {
 
-    private Scanner scanner;
+    final Scanner scanner;
+
+    // Names of identifiers are interned here; keywords never reach it.
+    final NameTable names;
+
+    // Reused for the characters of the identifier being read.
+    private char[] text = new char[64];
+
+    // The token most recently read by next(). It is kept in fields so that it can be appended
+    // to a TokenBuffer without creating a Token object.
+    private TokenClass tokenClass;
+    private String tokenData;
+    private int tokenLine;
+    private int tokenColumn;
+    int tokenOffset;
+    private int tokenEnd;
+
+    // When set, lexing errors are collected here instead of printed, so that a ParallelTokeniser
+    // can report the errors of its chunks in source order.
+    StringBuilder errorLog;
+
+    // next() stops with an EOF token at the first point between tokens at or after this offset.
+    int stopOffset = Integer.MAX_VALUE;
 
     private int error = 0;
     public int getErrorCount() {
@@ -16,186 +39,196 @@ public class Tokeniser {
     }
 
     public Tokeniser(Scanner scanner) {
+        this(scanner, NameTable.GLOBAL);
+    }
+
+    public Tokeniser(Scanner scanner, NameTable names) {
         this.scanner = scanner;
+        this.names = names;
     }
 
-    private void error(char c, int line, int col) {
-        System.out.println("Lexing error: unrecognised character ("+c+") at "+line+":"+col);
+    void error(int c, int line, int col) {
+        String found = c == Scanner.EOF ? "EOF" : String.valueOf((char) c);
+        String message = "Lexing error: unrecognised character ("+found+") at "+line+":"+col;
+        if (errorLog != null)
+            errorLog.append(message).append(System.lineSeparator());
+        else
+            System.out.println(message);
     error++;
     }
 
 
     public Token nextToken() {
-        Token result;
         try {
-             result = next();
-        } catch (EOFException eof) {
-            // end of file, nothing to worry about, just return EOF token
-            return new Token(TokenClass.EOF, scanner.getLine(), scanner.getColumn());
+            next();
         } catch (IOException ioe) {
-            ioe.printStackTrace();
-            // something went horribly wrong, abort
-            System.exit(-1);
-            return null;
+            abort(ioe);
         }
-        return result;
+        return new Token(tokenClass, tokenData, tokenLine, tokenColumn, tokenOffset, tokenEnd);
     }
 
+    /**
+     * Reads every remaining token, EOF included, into a packed TokenBuffer.
+     */
+    public TokenBuffer tokenise() {
+        TokenBuffer tokens = new TokenBuffer();
+        tokenise(tokens);
+        return tokens;
+    }
 
-    private Token next() throws IOException {
-
-        int line = scanner.getLine();
-        int column = scanner.getColumn();
-
-        // get the next character
-        char c = scanner.next();
+    /**
+     * Appends tokens up to and including the next EOF token, which ends the input or marks
+     * the stop offset.
+     */
+    void tokenise(TokenBuffer tokens) {
+        while (next(tokens) != TokenClass.EOF)
+            ;
+    }
 
-        // skip white spaces
-        if (Character.isWhitespace(c))
-            return next();
+    /**
+     * Appends the next token to tokens and returns its class.
+     */
+    TokenClass next(TokenBuffer tokens) {
+        try {
+            next();
+        } catch (IOException ioe) {
+            abort(ioe);
+        }
+        tokens.add(tokenClass, tokenData, tokenLine, tokenColumn, tokenOffset, tokenEnd);
+        return tokenClass;
+    }
 
-        /**
-         * Simple things: delimiters, struct access, operators.
-         */
+    private void abort(IOException ioe) {
+        ioe.printStackTrace();
+        // something went horribly wrong, abort
+        System.exit(-1);
+    }
 
-        if (c == '+') {
-            return new Token(TokenClass.PLUS, "+", line, column);
-        }
+    TokenClass token(TokenClass tokenClass, String data, int line, int column) {
+        this.tokenClass = tokenClass;
+        this.tokenData = data;
+        this.tokenLine = line;
+        this.tokenColumn = column;
+        // Every token is made once its characters have been read.
+        this.tokenEnd = scanner.getOffset();
+        return tokenClass;
+    }
 
-        if (c == '-') {
-            return new Token(TokenClass.MINUS, "-", line, column);
-        }
+    TokenClass token(TokenClass tokenClass, int line, int column) {
+        return token(tokenClass, "", line, column);
+    }
 
-        if (c == '*') {
-            return new Token(TokenClass.ASTERIX, "*", line, column);
-        }
 
-        if (c == '%') {
-            return new Token(TokenClass.REM, "%", line, column);
-        }
+    /**
+     * Reads the next token into the current-token fields and returns its class.
+     */
+    TokenClass next() throws IOException {
 
+        int line;
+        int column;
+        int c;
 
-        if (c == '[') {
-            return new Token(TokenClass.LSBR, "[", line, column);
-        }
+        // Skip white spaces and comments in a loop so that long runs of them cost
+        // neither stack depth nor anything beyond the characters themselves.
+        while (true) {
+            line = scanner.getLine();
+            column = scanner.getColumn();
+            tokenOffset = scanner.getOffset();
+            if (tokenOffset >= stopOffset)
+                return token(TokenClass.EOF, line, column);
 
-        if (c == ']') {
-            return new Token(TokenClass.RSBR, "]", line, column);
-        }
+            // get the next character
+            c = scanner.next();
 
-        if (c == '{') {
-            return new Token(TokenClass.LBRA, "{", line, column);
-        }
+            if (c == Scanner.EOF)
+                return token(TokenClass.EOF, line, column);
 
-        if (c == '}') {
-            return new Token(TokenClass.RBRA, "}", line, column);
-        }
+            if (CharClass.is(c, CharClass.SPACE))
+                continue;
 
-        if (c == '(') {
-            return new Token(TokenClass.LPAR, "(", line, column);
-        }
+            /**
+             * Division, single-line comment and multi-line comment.
+             */
 
-        if (c == ')') {
-            return new Token(TokenClass.RPAR, ")", line, column);
-        }
+            if (c == '/') {
+                c = scanner.peek();
+                if (c == '/') {
+                    // Single-line comment detected.
+                    scanner.next();
+                    c = scanner.peek();
+                    while (c != '\n' && c != Scanner.EOF) {
+                        scanner.next();
+                        c = scanner.peek();
+                    }
+                } else if (c == '*') {
+                    // Multi-line comment detected.
+                    int previousChar = c;
+                    scanner.next();
+                    c = scanner.peek();
 
-        if (c == ',') {
-            return new Token(TokenClass.COMMA, ",", line, column);
-        }
+                    // Iterate until multi-line comment ending slash is detected.
+                    // Then check if last character in builtComment is '*'. I check for
+                    // '/' because people like to decorate their multi-line comments with
+                    // '*'s( me :) ) for efficiency.
+                    while (true) {
+                        previousChar = c;
+                        scanner.next();
+                        c = scanner.peek();
+                        if (c == Scanner.EOF) {
+                            // Unterminated comment runs to the end of file.
+                            tokenOffset = scanner.getOffset();
+                            return token(TokenClass.EOF, scanner.getLine(), scanner.getColumn());
+                        }
+                        if (c == '/') {
+                            // End of multi-line comment detected.
+                            if (previousChar == '*') {
+                                scanner.next();
+                                break;
+                            }
+                        }
+                    }
+                } else {
+                    // Division operator.
+                    return token(TokenClass.DIV, "/", line, column);
+                }
 
-        if (c == ';') {
-            return new Token(TokenClass.SC, ";", line, column);
-        }
+                // When comment is processed, carry on with the next token. Very important.
+                continue;
+            }
 
-        if (c == '.') {
-            return new Token(TokenClass.DOT, ".", line, column);
+            break;
         }
 
         /**
-         * Identifiers, types and keywords.
+         * Simple things: delimiters, struct access, operators.
          */
 
-        if (Character.isLetter(c) || c == '_') {
-            StringBuilder builtStr = new StringBuilder();
-            builtStr.append(c);
-            c = scanner.peek();
-            while (Character.isLetterOrDigit(c) || c == '_') {
-                builtStr.append(c);
-                scanner.next();
-                c = scanner.peek();
-            }
-
-            String result = builtStr.toString();
-
-            switch (result) {
-                case "int":
-                    return new Token(TokenClass.INT, "INT_TYPE", line, column);
-                case "void":
-                    return new Token(TokenClass.VOID, "VOID_TYPE", line, column);
-                case "char":
-                    return new Token(TokenClass.CHAR, "CHAR_TYPE", line, column);
-
-                case "if":
-                    return new Token(TokenClass.IF, "IF_KEYWORD", line, column);
-                case "else":
-                    return new Token(TokenClass.ELSE, "ELSE_KEYWORD", line, column);
-                case "sizeof":
-                    return new Token(TokenClass.SIZEOF, "SIZEOF_KEYWORD", line, column);
-                case "return":
-                    return new Token(TokenClass.RETURN, "RETURN_KEYWORD", line, column);
-                case "while":
-                    return new Token(TokenClass.WHILE, "WHILE_KEYWORD", line, column);
-                case "struct":
-                    return new Token(TokenClass.STRUCT, "STRUCT_KEYWORD", line, column);
-
-                default:
-                    return new Token(TokenClass.IDENTIFIER, result, line, column);
-            }
+        TokenClass single = CharClass.singleCharToken(c);
+        if (single != null) {
+            return token(single, Token.fixedData(single), line, column);
         }
 
         /**
-         * Division, single-line comment and multi-line comment.
+         * Identifiers, types and keywords.
          */
 
-        if (c == '/') {
+        if (CharClass.is(c, CharClass.IDENTIFIER_START)) {
+            int length = 0;
+            text[length++] = (char) c;
             c = scanner.peek();
-            if (c == '/') {
-                // Single-line comment detected.
+            while (CharClass.is(c, CharClass.IDENTIFIER_PART)) {
+                if (length == text.length)
+                    text = Arrays.copyOf(text, length * 2);
+                text[length++] = (char) c;
                 scanner.next();
                 c = scanner.peek();
-                while (c != '\n') {
-                    scanner.next();
-                    c = scanner.peek();
-                }
-            } else if (c == '*') {
-                // Multi-line comment detected.
-                char previousChar = c;
-                scanner.next();
-                c = scanner.peek();
-
-                // Iterate until multi-line comment ending slash is detected.
-                // Then check if last character in builtComment is '*'. I check for
-                // '/' because people like to decorate their multi-line comments with
-                // '*'s( me :) ) for efficiency.
-                while (true) {
-                    previousChar = c;
-                    scanner.next();
-                    c = scanner.peek();
-                    if (c == '/') {
-                        // End of multi-line comment detected.
-                        if (previousChar == '*') {
-                            scanner.next();
-                            break;
-                        }
-                    }
-                }
-            } else {
-                // Division operator.
-                return new Token(TokenClass.DIV, "/", line, column);
             }
 
-            // When comment is processed, return next token. Very important.
-            return next();
+            TokenClass keyword = Keywords.lookup(text, 0, length);
+            if (keyword != null)
+                return token(keyword, Token.fixedData(keyword), line, column);
+
+            return token(TokenClass.IDENTIFIER, names.intern(text, 0, length), line, column);
         }
 
         /**
@@ -204,39 +237,39 @@ public class Tokeniser {
 
         if (c == '#') {
             StringBuilder builtInclude = new StringBuilder();
-            builtInclude.append(c);
+            builtInclude.append((char) c);
             c = scanner.peek();
-            while (Character.isLetter(c)) {
-                builtInclude.append(c);
+            while (CharClass.is(c, CharClass.ALPHA)) {
+                builtInclude.append((char) c);
                 scanner.next();
                 c = scanner.peek();
             }
 
             String result = builtInclude.toString();
             if (result.equals("#include")) {
-                return new Token(TokenClass.INCLUDE, "#include", line, column);
+                return token(TokenClass.INCLUDE, "#include", line, column);
             }
 
             error(c, line, column);
 
-            return new Token(TokenClass.INVALID, line, column);
+            return token(TokenClass.INVALID, line, column);
         }
 
         /**
          * Literals: strings, chars and integers.
          */
 
-        if (Character.isDigit(c)) {
+        if (CharClass.is(c, CharClass.DIGIT)) {
             StringBuilder builtInteger = new StringBuilder();
-            builtInteger.append(c);
+            builtInteger.append((char) c);
             c = scanner.peek();
-            while (Character.isDigit(c)) {
-                builtInteger.append(c);
+            while (CharClass.is(c, CharClass.DIGIT)) {
+                builtInteger.append((char) c);
                 scanner.next();
                 c = scanner.peek();
             }
 
-            return new Token(TokenClass.INT_LITERAL, builtInteger.toString(), line, column);
+            return token(TokenClass.INT_LITERAL, builtInteger.toString(), line, column);
         }
 
         // For strings, I don't know if double qoutes should enclose characters on a single line
@@ -246,13 +279,18 @@ public class Tokeniser {
             StringBuilder builtStr = new StringBuilder();
             c = scanner.peek();
             while (c != '"') {
+                if (c == Scanner.EOF) {
+                    // Unterminated string literal.
+                    error(c, line, column);
+                    return token(TokenClass.INVALID, line, column);
+                }
                 // Escape character detected. Handle supported escape
                 // characters: \b, \t, \n, \', \", \f, \\. \r
                 if (c == '\\') {
                     scanner.next();
                     c = scanner.peek();
                     if (isNonLetterEscapeChar(c)) {
-                        builtStr.append(c);
+                        builtStr.append((char) c);
                     } else if (isLetterEscapeChar(c)) {
                         String specialEscpaeChar;
                         switch (c) {
@@ -279,10 +317,10 @@ public class Tokeniser {
                         builtStr.append(specialEscpaeChar);
                     } else {
                         error(c, line, column);
-                        return new Token(TokenClass.INVALID, line, column);
+                        return token(TokenClass.INVALID, line, column);
                     }
                 } else {
-                    builtStr.append(c);
+                    builtStr.append((char) c);
                 }
                 scanner.next();
                 c = scanner.peek();
@@ -290,7 +328,7 @@ public class Tokeniser {
 
             scanner.next();
 
-            return new Token(TokenClass.STRING_LITERAL, builtStr.toString(), line, column);
+            return token(TokenClass.STRING_LITERAL, builtStr.toString(), line, column);
         }
 
         if (c == '\'') {
@@ -298,7 +336,7 @@ public class Tokeniser {
             c = scanner.peek();
             if (c == '\'') {
                 error(c, line, column);
-                return new Token(TokenClass.INVALID, line, column);
+                return token(TokenClass.INVALID, line, column);
             }
 
             if (c == '\\') {
@@ -306,7 +344,7 @@ public class Tokeniser {
                 scanner.next();
                 c = scanner.peek();
                 if (isNonLetterEscapeChar(c)) {
-                    builtChar.append(c);
+                    builtChar.append((char) c);
                 } else if (isLetterEscapeChar(c)) {
                     char specialEscpaeChar;
                     switch (c) {
@@ -333,10 +371,10 @@ public class Tokeniser {
                     builtChar.append(specialEscpaeChar);
                 } else {
                     error(c, line, column);
-                    return new Token(TokenClass.INVALID, line, column);
+                    return token(TokenClass.INVALID, line, column);
                 }
             } else {
-                builtChar.append(c);
+                builtChar.append((char) c);
             }
 
             scanner.next();
@@ -344,12 +382,12 @@ public class Tokeniser {
 
             if (c != '\'') {
                 error(c, line, column);
-                return new Token(TokenClass.INVALID, line, column);
+                return token(TokenClass.INVALID, line, column);
             }
 
             scanner.next();
 
-            return new Token(TokenClass.CHAR_LITERAL, builtChar.toString(), line, column);
+            return token(TokenClass.CHAR_LITERAL, builtChar.toString(), line, column);
         }
 
         /**
@@ -360,22 +398,22 @@ public class Tokeniser {
             c = scanner.peek();
             if (c != '&') {
                 error(c, line, column);
-                return new Token(TokenClass.INVALID, line, column);
+                return token(TokenClass.INVALID, line, column);
             }
 
             scanner.next();
-            return new Token(TokenClass.AND, "&&", line, column);
+            return token(TokenClass.AND, "&&", line, column);
         }
 
         if (c == '|') {
             c = scanner.peek();
             if (c != '|') {
                 error(c, line, column);
-                return new Token(TokenClass.INVALID, line, column);
+                return token(TokenClass.INVALID, line, column);
             }
 
             scanner.next();
-            return new Token(TokenClass.OR, "||", line, column);
+            return token(TokenClass.OR, "||", line, column);
         }
 
         /**
@@ -387,9 +425,9 @@ public class Tokeniser {
             if (c == '=') {
                 // It's an equality!
                 scanner.next();
-                return new Token(TokenClass.EQ, "==", line, column);
+                return token(TokenClass.EQ, "==", line, column);
             }
-            return new Token(TokenClass.ASSIGN, "=", line, column);
+            return token(TokenClass.ASSIGN, "=", line, column);
         }
 
         if (c == '!') {
@@ -397,12 +435,12 @@ public class Tokeniser {
             if (c == '=') {
                 // It's a not equals!
                 scanner.next();
-                return new Token(TokenClass.NE, "!=", line, column);
+                return token(TokenClass.NE, "!=", line, column);
             }
 
             // Otherwise, it is an error.
             error(c, line, column);
-            return new Token(TokenClass.INVALID, line, column);
+            return token(TokenClass.INVALID, line, column);
         }
 
         if (c == '<') {
@@ -410,9 +448,9 @@ public class Tokeniser {
             if (c == '=') {
                 // It's a <=
                 scanner.next();
-                return new Token(TokenClass.LE, "<=", line, column);
+                return token(TokenClass.LE, "<=", line, column);
             }
-            return new Token(TokenClass.LT, "<", line, column);
+            return token(TokenClass.LT, "<", line, column);
         }
 
         if (c == '>') {
@@ -420,21 +458,21 @@ public class Tokeniser {
             if (c == '=') {
                 // It's a >=
                 scanner.next();
-                return new Token(TokenClass.GE, ">=", line, column);
+                return token(TokenClass.GE, ">=", line, column);
             }
-            return new Token(TokenClass.GT, ">", line, column);
+            return token(TokenClass.GT, ">", line, column);
         }
 
         // if we reach this point, it means we did not recognise a valid token
         error(c, line, column);
-        return new Token(TokenClass.INVALID, line, column);
+        return token(TokenClass.INVALID, line, column);
     }
 
-    private boolean isNonLetterEscapeChar(char c) {
-        return c == '\\' || c == '\'' || c == '\"';
+    private boolean isNonLetterEscapeChar(int c) {
+        return CharClass.is(c, CharClass.ESCAPE);
     }
 
-    private boolean isLetterEscapeChar(char c) {
-        return c == 't' || c == 'r' || c == 'n' || c == 'f' || c == 'b';
+    private boolean isLetterEscapeChar(int c) {
+        return CharClass.is(c, CharClass.LETTER_ESCAPE);
     }
 }
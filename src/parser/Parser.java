@@ -3,12 +3,15 @@ package parser;
 import ast.*;
 import lexer.Token;
 import lexer.Token.TokenClass;
+import lexer.TokenBuffer;
 import lexer.Tokeniser;
+import util.Position;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static ast.BaseType.INT;
 
@@ -19,17 +22,62 @@ public class Parser {
         TokenClass.INT, TokenClass.CHAR, TokenClass.VOID, TokenClass.STRUCT
     };
 
+    // Binding power of the binary operators (see convertOperator), 0 for every other token.
+    // All of them associate to the left.
+    private static final int[] BINDING_POWER = new int[TokenClass.values().length];
+
+    static {
+        bind(1, TokenClass.OR);
+        bind(2, TokenClass.AND);
+        bind(3, TokenClass.EQ, TokenClass.NE);
+        bind(4, TokenClass.LT, TokenClass.GT, TokenClass.LE, TokenClass.GE);
+        bind(5, TokenClass.PLUS, TokenClass.MINUS);
+        bind(6, TokenClass.ASTERIX, TokenClass.DIV, TokenClass.REM);
+    }
+
+    private static void bind(int power, TokenClass... operators) {
+        for (TokenClass operator : operators)
+            BINDING_POWER[operator.ordinal()] = power;
+    }
+
+    // The current token. Its class and data are copied out so that parsing a packed
+    // TokenBuffer needs no Token objects; token is only set when reading from a Tokeniser.
+    private TokenClass tokenClass;
+    private String tokenData;
     private Token token;
+    private int tokenIndex = -1;
+
+    // End offset of the token before the current one, which is where a node parsed so far ends.
+    private int lastEnd = 0;
 
-    // use for backtracking (useful for distinguishing decls from procs when parsing a program for instance)
-    private Queue<Token> buffer = new LinkedList<Token>();
+    // Tokens read ahead of the current one, for distinguishing decls from procs when parsing a
+    // program for instance. A ring of LOOKAHEAD slots: buffered tokens start at bufferHead.
+    private static final int LOOKAHEAD = 8;
+    private final Token[] buffer = new Token[LOOKAHEAD];
+    private int bufferHead = 0;
+    private int buffered = 0;
 
     private final Tokeniser tokeniser;
 
+    // Packed token stream, read in place when the parser is not fed by a Tokeniser.
+    private final TokenBuffer tokens;
+
+    // Whether function bodies are skimmed and parsed on demand, see parseLazily.
+    private boolean lazyBodies = false;
+    private final List<SkimmedBody> skimmedBodies = new ArrayList<SkimmedBody>();
+
+    // When set, messages are collected here instead of printed, see parseInParallel.
+    private StringBuilder output;
 
 
     public Parser(Tokeniser tokeniser) {
         this.tokeniser = tokeniser;
+        this.tokens = null;
+    }
+
+    public Parser(TokenBuffer tokens) {
+        this.tokeniser = null;
+        this.tokens = tokens;
     }
 
     public Program parse() {
@@ -39,16 +87,100 @@ public class Parser {
         return parseProgram();
     }
 
+    /**
+     * Parses the program but only skims function bodies, matching braces to find where each
+     * ends. Their FunDecls are LazyFunDecls that parse the body when it is first asked for,
+     * adding any errors in it to this parser's count at that point. Needs a TokenBuffer.
+     */
+    public Program parseLazily() {
+        if (tokens == null)
+            throw new IllegalStateException("lazy parsing needs a TokenBuffer");
+        lazyBodies = true;
+        return parse();
+    }
+
+    /**
+     * Parses the program in two phases: a sequential skim of its structure as parseLazily does,
+     * then every function body on the pool, each by its own parser. The Program, the messages
+     * printed and their order are those of parse(). Should a body not end where the skim found
+     * its closing brace (unbalanced braces, for one), its parse is not the one a sequential
+     * parse would make, and the whole program is parsed sequentially instead.
+     */
+    public Program parseInParallel(ForkJoinPool pool) {
+        if (tokens == null)
+            throw new IllegalStateException("parallel parsing needs a TokenBuffer");
+        if (tokenIndex != -1)
+            throw new IllegalStateException("already parsed");
+
+        output = new StringBuilder();
+        Program skimmed = parseLazily();
+
+        List<BodyTask> tasks = new ArrayList<BodyTask>(skimmedBodies.size());
+        for (SkimmedBody body : skimmedBodies) {
+            BodyTask task = new BodyTask(body);
+            tasks.add(task);
+            pool.execute(task);
+        }
+
+        StringBuilder messages = new StringBuilder(output.length());
+        int printed = 0;
+        for (BodyTask task : tasks) {
+            task.join();
+            if (!task.inStep()) {
+                for (BodyTask other : tasks)
+                    other.cancel(false);
+                return new Parser(tokens).parseSequentiallyInto(this);
+            }
+            messages.append(output, printed, task.body.outputMark).append(task.parser.output);
+            printed = task.body.outputMark;
+            task.body.errors = task.parser.error;
+        }
+        messages.append(output, printed, output.length());
+
+        List<FunDecl> funDecls = new ArrayList<FunDecl>(skimmed.funDecls.size());
+        int next = 0;
+        for (FunDecl fd : skimmed.funDecls) {
+            if (fd instanceof LazyFunDecl) {
+                FunDecl parsed = new FunDecl(fd.type, fd.name, fd.params, tasks.get(next++).block);
+                parsed.span = fd.span;
+                fd = parsed;
+            }
+            funDecls.add(fd);
+        }
+
+        System.out.print(messages);
+        output = null;
+        Program program = new Program(skimmed.structTypes, skimmed.varDecls, funDecls);
+        program.span = skimmed.span;
+        return program;
+    }
+
+    // Parses as parse() does, leaving the error count in target.
+    private Program parseSequentiallyInto(Parser target) {
+        Program program = parse();
+        target.output = null;
+        target.skimmedBodies.clear();
+        target.error = error;
+        return program;
+    }
+
+    /**
+     * The errors found so far, outside function bodies and in those parsed.
+     * Each body keeps the count of the parser that parsed it, so no count has two writers.
+     */
     public int getErrorCount() {
-        return error;
+        int count = error;
+        for (SkimmedBody body : skimmedBodies)
+            count += body.errors;
+        return count;
     }
 
     private int error = 0;
-    private Token lastErrorToken;
+    private int lastErrorToken = -1;
 
     private void error(TokenClass... expected) {
 
-        if (lastErrorToken == token) {
+        if (lastErrorToken == tokenIndex) {
             // skip this error, same token causing trouble
             return;
         }
@@ -60,31 +192,39 @@ public class Parser {
             sb.append(e);
             sep = "|";
         }
-        System.out.println("Parsing error: expected ("+sb+") found ("+token+") at "+token.position);
+        print("Parsing error: expected ("+sb+") found ("+Token.toString(tokenClass, tokenData)+") at "+position());
 
         error++;
-        lastErrorToken = token;
+        lastErrorToken = tokenIndex;
+    }
+
+    private void print(String line) {
+        if (output != null)
+            output.append(line).append(System.lineSeparator());
+        else
+            System.out.println(line);
+    }
+
+    private Position position() {
+        return tokens != null ? tokens.position(tokenIndex) : token.position;
     }
 
     /*
      * Look ahead the i^th element from the stream of token.
      * i should be >= 1
      */
-    private Token lookAhead(int i) {
-        // ensures the buffer has the element we want to look ahead
-        while (buffer.size() < i)
-            buffer.add(tokeniser.nextToken());
-        assert buffer.size() >= i;
+    private TokenClass lookAhead(int i) {
+        if (tokens != null)
+            return tokens.tokenClass(Math.min(tokenIndex + i, tokens.size() - 1));
 
-        int cnt=1;
-        for (Token t : buffer) {
-            if (cnt == i)
-                return t;
-            cnt++;
-        }
+        assert i >= 1 && i <= LOOKAHEAD;
 
-        assert false; // should never reach this
-        return null;
+        // ensures the buffer has the element we want to look ahead
+        while (buffered < i) {
+            buffer[(bufferHead + buffered) & (LOOKAHEAD - 1)] = tokeniser.nextToken();
+            buffered++;
+        }
+        return buffer[(bufferHead + i - 1) & (LOOKAHEAD - 1)].tokenClass;
     }
 
 
@@ -92,22 +232,58 @@ public class Parser {
      * Consumes the next token from the tokeniser or the buffer if not empty.
      */
     private void nextToken() {
-        if (!buffer.isEmpty())
-            token = buffer.remove();
-        else
+        if (tokens != null) {
+            if (tokenIndex >= 0)
+                lastEnd = tokens.end(tokenIndex);
+            // The stream ends with EOF, which is never moved past.
+            if (tokenIndex < tokens.size() - 1)
+                tokenIndex++;
+            tokenClass = tokens.tokenClass(tokenIndex);
+            tokenData = tokens.data(tokenIndex);
+            return;
+        }
+
+        if (token != null)
+            lastEnd = token.end;
+        if (buffered > 0) {
+            token = buffer[bufferHead];
+            buffer[bufferHead] = null;
+            bufferHead = (bufferHead + 1) & (LOOKAHEAD - 1);
+            buffered--;
+        } else {
             token = tokeniser.nextToken();
+        }
+        tokenClass = token.tokenClass;
+        tokenData = token.data;
+        tokenIndex++;
+    }
+
+    /*
+     * Offset where the current token starts.
+     */
+    private int start() {
+        return tokens != null ? tokens.offset(tokenIndex) : token.offset;
+    }
+
+    /*
+     * Gives node the span from start to the end of the last token consumed, or NONE if the
+     * tokens do not know their offsets. After a parse error nothing may have been consumed since
+     * start, and the span is then empty.
+     */
+    private <N extends SourceNode> N span(N node, int start) {
+        node.span = start < 0 ? SourceNode.NONE : SourceNode.span(start, Math.max(start, lastEnd));
+        return node;
     }
 
     /*
      * If the current token is equals to the expected one, then skip it, otherwise report an error.
-     * Returns the expected token or null if an error occurred.
+     * Returns the class of the expected token or null if an error occurred.
      */
-    private Token expect(TokenClass... expected) {
+    private TokenClass expect(TokenClass... expected) {
         for (TokenClass e : expected) {
-            if (e == token.tokenClass) {
-                Token cur = token;
+            if (e == tokenClass) {
                 nextToken();
-                return cur;
+                return e;
             }
         }
 
@@ -121,39 +297,40 @@ public class Parser {
     private boolean accept(TokenClass... expected) {
         boolean result = false;
         for (TokenClass e : expected)
-            result |= (e == token.tokenClass);
+            result |= (e == tokenClass);
         return result;
     }
 
 
     private Program parseProgram() {
+        int start = start();
         parseIncludes();
         List<StructType> structs = parseStructDecls(new ArrayList<StructType>());
         List<VarDecl> varDecls = parseVarDecls(new ArrayList<VarDecl>());
         List<FunDecl> funcs = parseFunDecls(new ArrayList<FunDecl>());
         expect(TokenClass.EOF);
-        return new Program(structs, varDecls, funcs);
+        return span(new Program(structs, varDecls, funcs), start);
     }
 
     // includes are ignored, so does not need to return an AST node
     private void parseIncludes() {
-        if (accept(TokenClass.INCLUDE)) {
+        while (accept(TokenClass.INCLUDE)) {
             nextToken();
             expect(TokenClass.STRING_LITERAL);
-            parseIncludes();
         }
     }
 
     private List<StructType> parseStructDecls(List<StructType> structDecls) {
-        if (accept(TokenClass.STRUCT)) {
+        while (accept(TokenClass.STRUCT)) {
             // Struct declaration looks like struct IDENT "{" so look 2 tokens ahead.
-            if (lookAhead(2).tokenClass != TokenClass.LBRA) {
+            if (lookAhead(2) != TokenClass.LBRA) {
                 return structDecls; // No struct declarations present.
             }
+            int start = start();
             String structName = parseStructs();
             expect(TokenClass.LBRA);
             if (!accept(TYPES)) {
-                error(token.tokenClass);
+                error(tokenClass);
                 return structDecls;
             }
             List<VarDecl> varDecls = parseVarDecls(new ArrayList<VarDecl>());
@@ -161,43 +338,42 @@ public class Parser {
             expect(TokenClass.SC);
 
             // Struct name and list of var decls is now available.
-            System.out.println(structName);
-            StructType structType = new StructType(structName, varDecls);
+            print(structName);
+            StructType structType = span(new StructType(structName, varDecls), start);
             structDecls.add(structType);
-            parseStructDecls(structDecls);
         }
         return structDecls;
     }
 
     private String parseStructs() {
         expect(TokenClass.STRUCT);
-        String structName = token.data;
+        String structName = tokenData;
         expect(TokenClass.IDENTIFIER);
         return structName;
     }
 
     private List<VarDecl> parseVarDecls(List<VarDecl> varDecls) {
-        if (accept(TYPES)) {
-            if (lookAhead(2).tokenClass == TokenClass.LPAR || lookAhead(3).tokenClass == TokenClass.LPAR || lookAhead(4).tokenClass == TokenClass.LPAR) {
+        while (accept(TYPES)) {
+            if (lookAhead(2) == TokenClass.LPAR || lookAhead(3) == TokenClass.LPAR || lookAhead(4) == TokenClass.LPAR) {
                 return varDecls;
             }
 
+            int start = start();
             Type varDeclType = parseTypes();
 
-            String varName = token.data;
+            String varName = tokenData;
             expect(TokenClass.IDENTIFIER);
             if (accept(TokenClass.LSBR)) {
                 // This is not a base type but ArrayType.
                 nextToken();
-                varDeclType = new ArrayType(varDeclType, Integer.parseInt(token.data));
+                varDeclType = Types.array(varDeclType, Integer.parseInt(tokenData));
                 expect(TokenClass.INT_LITERAL);
                 expect(TokenClass.RSBR);
             }
             expect(TokenClass.SC);
 
-            VarDecl varDecl = new VarDecl(varDeclType, varName);
+            VarDecl varDecl = span(new VarDecl(varDeclType, varName), start);
             varDecls.add(varDecl);
-            parseVarDecls(varDecls);
         }
         return varDecls;
     }
@@ -206,13 +382,13 @@ public class Parser {
         Type type = null;
         if (accept(TokenClass.STRUCT)) {
             String structName = parseStructs();
-            type = new StructType(structName, new ArrayList<VarDecl>());
+            type = Types.struct(structName);
         } else {
-            if (token.tokenClass == TokenClass.INT) {
+            if (tokenClass == TokenClass.INT) {
                 type = INT;
-            } else if (token.tokenClass == TokenClass.CHAR) {
+            } else if (tokenClass == TokenClass.CHAR) {
                 type = BaseType.CHAR;
-            } else if (token.tokenClass == TokenClass.VOID) {
+            } else if (tokenClass == TokenClass.VOID) {
                 type = BaseType.VOID;
             }
             nextToken();
@@ -220,100 +396,263 @@ public class Parser {
 
         if (accept(TokenClass.ASTERIX)) {
             // TODO: This is a pointer to base type. Do something here.
-            type = new PointerType(type);
+            type = Types.pointer(type);
             nextToken();
         }
         return type;
     }
 
     private List<FunDecl> parseFunDecls(List<FunDecl> funcDecls) {
-        if (accept(TYPES)) {
+        while (accept(TYPES)) {
+            int start = start();
             Type type = parseTypes();
-            String funcName = token.data;
+            String funcName = tokenData;
             expect(TokenClass.IDENTIFIER);
             expect(TokenClass.LPAR);
             List<VarDecl> funcParams = parseParams(new ArrayList<VarDecl>());
             expect(TokenClass.RPAR);
-            Block funDeclBlock = parseBlock();
-            FunDecl funDecl = new FunDecl(type, funcName, funcParams, funDeclBlock);
-            funcDecls.add(funDecl);
-            parseFunDecls(funcDecls);
+            FunDecl funDecl;
+            if (lazyBodies && accept(TokenClass.LBRA)) {
+                SkimmedBody body = new SkimmedBody(tokenIndex, lastErrorToken, output);
+                funDecl = new LazyFunDecl(type, funcName, funcParams, body);
+                skipBlock();
+                body.end = tokenIndex;
+                skimmedBodies.add(body);
+            } else {
+                Block funDeclBlock = parseBlock();
+                funDecl = new FunDecl(type, funcName, funcParams, funDeclBlock);
+            }
+            funcDecls.add(span(funDecl, start));
         }
         return funcDecls;
     }
 
     private List<VarDecl> parseParams(List<VarDecl> functionParams) {
         if (accept(TYPES)) {
+            int start = start();
             Type type = parseTypes();
-            String firstParamName = token.data;
+            String firstParamName = tokenData;
             expect(TokenClass.IDENTIFIER);
-            VarDecl funcParam = new VarDecl(type, firstParamName);
-            functionParams = parseSubsequentParams(new ArrayList<VarDecl>());
-            functionParams.add(0, funcParam);
+            VarDecl funcParam = span(new VarDecl(type, firstParamName), start);
+            functionParams.add(funcParam);
+            parseSubsequentParams(functionParams);
         }
         return functionParams;
     }
 
     private List<VarDecl> parseSubsequentParams(List<VarDecl> restOfParams) {
-        if (accept(TokenClass.COMMA)) {
+        while (accept(TokenClass.COMMA)) {
             nextToken();
+            int start = start();
             Type type = parseTypes();
-            String paramName = token.data;
+            String paramName = tokenData;
             expect(TokenClass.IDENTIFIER);
 
-            VarDecl funcParam = new VarDecl(type, paramName);
+            VarDecl funcParam = span(new VarDecl(type, paramName), start);
             restOfParams.add(funcParam);
-            parseSubsequentParams(restOfParams);
         }
         return restOfParams;
     }
 
+    /*
+     * Parses a block with the statements nested in it. Rather than recursing for each
+     * statement inside another, the statements still waiting for the one inside them are kept
+     * on a stack of their own (see PendingStmt), so that statements can nest however deep.
+     */
     private Block parseBlock() {
+        List<PendingStmt> pending = new ArrayList<PendingStmt>();
+        pending.add(openBlock());
+        Stmt stmt = null;
+        boolean parsed = false;
+        while (true) {
+            PendingStmt top = pending.get(pending.size() - 1);
+            if (parsed) {
+                // Hand the statement just parsed to the one it is in.
+                if (top.kind == NodeKind.BLOCK) {
+                    top.stmts.add(stmt);
+                } else if (top.kind == NodeKind.WHILE) {
+                    pending.remove(pending.size() - 1);
+                    stmt = span(new While(top.condition, stmt), top.start);
+                    continue;
+                } else if (top.inElse) {
+                    pending.remove(pending.size() - 1);
+                    stmt = span(new If(top.condition, top.thenStmt, stmt), top.start);
+                    continue;
+                } else if (!accept(TokenClass.ELSE)) {
+                    pending.remove(pending.size() - 1);
+                    stmt = span(new If(top.condition, stmt, null), top.start);
+                    continue;
+                } else {
+                    nextToken();
+                    if (accept(TokenClass.RBRA)) {
+                        // Premature end of while. Block ended.
+                        error(tokenClass);
+                        pending.remove(pending.size() - 1);
+                        stmt = null;
+                        continue;
+                    }
+                    top.thenStmt = stmt;
+                    top.inElse = true;
+                }
+            }
+            if (top.kind == NodeKind.BLOCK && (accept(TokenClass.RBRA) || accept(TokenClass.EOF))) {
+                pending.remove(pending.size() - 1);
+                expect(TokenClass.RBRA);
+                Block block = span(new Block(top.varDecls, top.stmts), top.start);
+                if (pending.isEmpty())
+                    return block;
+                stmt = block;
+                parsed = true;
+                continue;
+            }
+            int waiting = pending.size();
+            stmt = parseStmt(pending);
+            parsed = pending.size() == waiting;
+        }
+    }
+
+    private PendingStmt openBlock() {
+        int start = start();
         expect(TokenClass.LBRA);
         List<VarDecl> functionBlockVarDecls = parseVarDecls1(new ArrayList<VarDecl>());
-        List<Stmt> functionBlockStatements = parseStmt();
-        expect(TokenClass.RBRA);
-        return new Block(functionBlockVarDecls, functionBlockStatements);
+        return new PendingStmt(NodeKind.BLOCK, start, null, functionBlockVarDecls);
+    }
+
+    /*
+     * A while waiting for its body, an if for one of its branches or a block for its next
+     * statement, see parseBlock.
+     */
+    private static final class PendingStmt {
+        final NodeKind kind;
+        final int start;
+        final Expr condition;
+        final List<VarDecl> varDecls;
+        final List<Stmt> stmts;
+        Stmt thenStmt;
+        boolean inElse;
+
+        PendingStmt(NodeKind kind, int start, Expr condition, List<VarDecl> varDecls) {
+            this.kind = kind;
+            this.start = start;
+            this.condition = condition;
+            this.varDecls = varDecls;
+            this.stmts = kind == NodeKind.BLOCK ? new ArrayList<Stmt>() : null;
+        }
+    }
+
+    /*
+     * Moves past the block starting at the current LBRA and its matching RBRA (or to EOF).
+     */
+    private void skipBlock() {
+        int depth = 0;
+        do {
+            if (tokenClass == TokenClass.LBRA)
+                depth++;
+            else if (tokenClass == TokenClass.RBRA)
+                depth--;
+            else if (tokenClass == TokenClass.EOF)
+                return;
+            nextToken();
+        } while (depth > 0);
+    }
+
+    /*
+     * A function body skimmed by skipBlock, parsed by a parser of its own starting at its LBRA.
+     */
+    private final class SkimmedBody implements LazyFunDecl.Body {
+        private final int start;
+        private int end;
+
+        // What a sequential parse would carry into the body, and where its messages would go.
+        private final int lastErrorToken;
+        private final int outputMark;
+
+        // The errors in the body once it is parsed, on whichever thread.
+        private volatile int errors;
+
+        SkimmedBody(int start, int lastErrorToken, StringBuilder output) {
+            this.start = start;
+            this.lastErrorToken = lastErrorToken;
+            this.outputMark = output != null ? output.length() : 0;
+        }
+
+        public Block parse() {
+            Parser parser = parser(null);
+            Block block = parser.parseBlock();
+            errors = parser.error;
+            return block;
+        }
+
+        Parser parser(StringBuilder output) {
+            Parser parser = new Parser(tokens);
+            parser.output = output;
+            parser.lastErrorToken = lastErrorToken;
+            parser.tokenIndex = start - 1;
+            parser.nextToken();
+            return parser;
+        }
+    }
+
+    /*
+     * Parses one skimmed body on the pool, collecting its messages.
+     */
+    private static final class BodyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final SkimmedBody body;
+        final Parser parser;
+        Block block;
+
+        BodyTask(SkimmedBody body) {
+            this.body = body;
+            this.parser = body.parser(new StringBuilder());
+        }
+
+        @Override
+        protected void compute() {
+            block = parser.parseBlock();
+        }
+
+        // Whether the body ended where the skim said, so that its parse is the sequential one.
+        boolean inStep() {
+            return parser.tokenIndex == body.end;
+        }
     }
 
     private List<VarDecl> parseVarDecls1(List<VarDecl> functionBlockVarDecls) {
-        if (accept(TYPES)) {
+        while (accept(TYPES)) {
+            int start = start();
             Type varDeclType = parseTypes();
 
-            String varName = token.data;
+            String varName = tokenData;
 
             expect(TokenClass.IDENTIFIER);
             if (accept(TokenClass.LSBR)) {
                 nextToken();
-                varDeclType = new ArrayType(varDeclType, Integer.parseInt(token.data));
+                varDeclType = Types.array(varDeclType, Integer.parseInt(tokenData));
                 expect(TokenClass.INT_LITERAL);
                 expect(TokenClass.RSBR);
             }
             expect(TokenClass.SC);
 
-            VarDecl varDecl = new VarDecl(varDeclType, varName);
+            VarDecl varDecl = span(new VarDecl(varDeclType, varName), start);
             functionBlockVarDecls.add(varDecl);
-            parseVarDecls1(functionBlockVarDecls);
         }
         return functionBlockVarDecls;
     }
 
-    private List<Stmt> parseStmt() {
-        List<Stmt> blockStatements = new ArrayList<>();
-        while (!accept(TokenClass.RBRA) && !accept(TokenClass.EOF)) {
-            Stmt stmtsResult = parseStmts();
-            blockStatements.add(stmtsResult);
-        }
-        return blockStatements;
-    }
-
-    private Stmt parseStmts() {
+    /*
+     * Parses a statement, or only its start when it has a statement inside it: a while, if or
+     * block is then pushed onto pending for parseBlock to finish, and null is returned.
+     */
+    private Stmt parseStmt(List<PendingStmt> pending) {
+        int start = start();
         if (accept(TokenClass.WHILE)) {
             nextToken();
             expect(TokenClass.LPAR);
             if (accept(TokenClass.RPAR)) {
                 // Empty condition , invalid program.
-                error(token.tokenClass);
+                error(tokenClass);
                 nextToken();
                 return null;
             }
@@ -321,17 +660,17 @@ public class Parser {
             expect(TokenClass.RPAR);
             if (accept(TokenClass.RBRA)) {
                 // Premature end of while. Block ended.
-                error(token.tokenClass);
+                error(tokenClass);
                 return null;
             }
-            Stmt stmt = parseStmts();
-            return new While(whileConditionExpr, stmt);
+            pending.add(new PendingStmt(NodeKind.WHILE, start, whileConditionExpr, null));
+            return null;
         } else if (accept(TokenClass.IF)) {
             nextToken();
             expect(TokenClass.LPAR);
             if (accept(TokenClass.RPAR)) {
                 // Empty condition for while loop, invalid program.
-                error(token.tokenClass);
+                error(tokenClass);
                 nextToken();
                 return null;
             }
@@ -339,35 +678,25 @@ public class Parser {
             expect(TokenClass.RPAR);
             if (accept(TokenClass.RBRA)) {
                 // Premature end of while. Block ended.
-                error(token.tokenClass);
+                error(tokenClass);
                 return null;
             }
-            Stmt ifStatement = parseStmts();
-            Stmt elseStatement = null;
-            if (accept(TokenClass.ELSE)) {
-                nextToken();
-                if (accept(TokenClass.RBRA)) {
-                    // Premature end of while. Block ended.
-                    error(token.tokenClass);
-                    return null;
-                }
-                elseStatement = parseStmts();
-            }
-            return new If(ifConditionExpr, ifStatement, elseStatement);
+            pending.add(new PendingStmt(NodeKind.IF, start, ifConditionExpr, null));
+            return null;
         } else if (accept(TokenClass.RETURN)) {
             nextToken();
             if (accept(TokenClass.SC)) {
                 // Return with no exp.
                 nextToken();
-                return new Return(null);
+                return span(new Return(null), start);
             }
             Expr returnExpResult = parseExpr();
             expect(TokenClass.SC);
 
-            return new Return(returnExpResult);
+            return span(new Return(returnExpResult), start);
         } else if (accept(TokenClass.LBRA)) {
-            Block blk = parseBlock();
-            return blk;
+            pending.add(openBlock());
+            return null;
         } else if (accept(TokenClass.RBRA)) {
             return null; // TODO: wrong
         } else {
@@ -379,119 +708,183 @@ public class Parser {
             }
             expect(TokenClass.SC);
             if (assignmentExpr == null) {
-                return new ExprStmt(exprResult);
+                return span(new ExprStmt(exprResult), start);
             }
-            return new Assign(exprResult, assignmentExpr);
-        }
-    }
-
-    private Expr parseExpr() {
-        Expr logicalOrExpResult = parseLogicalOrExp();
-        Expr logicalOrExpOpResult = parseLogicalOrExpOp(logicalOrExpResult);
-        return logicalOrExpOpResult;
-    }
-
-    private Expr parseLogicalOrExpOp(Expr lhs) {
-        Expr logicalOrExpOpResult = lhs;
-        while (accept(TokenClass.OR)) {
-            Token current = token;
-            nextToken();
-            Expr rhs = parseLogicalOrExp();
-            logicalOrExpOpResult = new BinOp(lhs, convertOperator(current), rhs);
-            lhs = logicalOrExpOpResult;
-        }
-        return logicalOrExpOpResult;
-    }
-
-    private Expr parseLogicalOrExp() {
-        Expr logicalAndExpResult = parseLogicalAndExp();
-        Expr logicalAndExpOpResult = parseLogicalAndExpOp(logicalAndExpResult);
-        return logicalAndExpOpResult;
-    }
-
-    private Expr parseLogicalAndExpOp(Expr lhs) {
-        Expr logicalAndExpOpResult = lhs;
-        while (accept(TokenClass.AND)) {
-            Token current = token;
-            nextToken();
-            Expr rhs = parseLogicalAndExp();
-            logicalAndExpOpResult = new BinOp(lhs, convertOperator(current), rhs);
-            lhs = logicalAndExpOpResult;
-        }
-        return logicalAndExpOpResult;
+            return span(new Assign(exprResult, assignmentExpr), start);
+        }
+    }
+
+    // What an expression waits for while the one inside it is parsed, see parseExpr.
+    private enum Awaiting {
+        OPERAND,        // a binary expression, for its first operand or the one after op
+        VALUE_AT,       // *e, for e
+        TYPECAST,       // (type) e, for e
+        ARGUMENT,       // a call, for its next argument
+        PARENTHESISED,  // (e), for e
+        POSTFIX,        // an array or field access, for what is indexed or accessed
+        INDEX           // a[e], for e
+    }
+
+    private static final class PendingExpr {
+        Awaiting awaiting;
+        int start;
+        int minPower;
+        Expr expr;
+        TokenClass op;
+        Type type;
+        String name;
+        List<Expr> args;
+    }
+
+    // The expressions waiting on parseExpr, kept between calls for reuse.
+    private PendingExpr[] pendingExprs = new PendingExpr[16];
+    private int pendingExprCount = 0;
+
+    private PendingExpr push(Awaiting awaiting, int start) {
+        if (pendingExprCount == pendingExprs.length)
+            pendingExprs = Arrays.copyOf(pendingExprs, pendingExprCount * 2);
+        PendingExpr pending = pendingExprs[pendingExprCount];
+        if (pending == null)
+            pending = pendingExprs[pendingExprCount] = new PendingExpr();
+        pendingExprCount++;
+        pending.awaiting = awaiting;
+        pending.start = start;
+        pending.minPower = 1;
+        pending.expr = null;
+        pending.op = null;
+        pending.type = null;
+        pending.name = null;
+        pending.args = null;
+        return pending;
     }
 
-    private Expr parseLogicalAndExp() {
-        Expr eqExpResult = parseEqExp();
-        Expr eqExpOpResult = parseEqExpOp(eqExpResult);
-        return eqExpOpResult;
-    }
-
-    private Expr parseEqExpOp(Expr lhs) {
-        Expr eqExpOpResult = lhs;
-        while (accept(TokenClass.EQ, TokenClass.NE)) {
-            Token current = token;
-            nextToken();
-            Expr rhs = parseEqExp();
-            eqExpOpResult = new BinOp(lhs, convertOperator(current), rhs);
-            lhs = eqExpOpResult;
-        }
-        return eqExpOpResult;
-    }
-
-    private Expr parseEqExp() {
-        Expr valueExpResult = parseValueExp();
-        Expr logicalCompExpResult = parseLogicalCompExp(valueExpResult);
-        return logicalCompExpResult;
-    }
-
-    private Expr parseLogicalCompExp(Expr lhs) {
-        Expr logicalCompExpResult = lhs;
-        while (accept(TokenClass.LT, TokenClass.GT, TokenClass.GE, TokenClass.LE)) {
-            Token current = token;
-            nextToken();
-            Expr rhs = parseValueExp();
-            logicalCompExpResult = new BinOp(lhs, convertOperator(current), rhs);
-            lhs = logicalCompExpResult;
-        }
-        return logicalCompExpResult;
-    }
-
-    private Expr parseValueExp() {
-        Expr termExpResult = parseTermExp();
-        Expr additiveExpResult = parseAdditiveExp(termExpResult);
-        return additiveExpResult;
-    }
-
-    /**
-     * while (accept(PLUS, MINUS)) {
-     *
-     *     Token current = token; // +
-     *     nextToken(); // 1
-     *     Expr rhs = parseExpr();
-     *     Expr e = new BinOp(lhs, Op.Operator, rhs);
-     *     lhs = e;
-     * }
-     *
-     * 1 + 1 + 1 => BinOp(BinOp(1, +, 1), + , 1)
+    /*
+     * Precedence climbing over the binary operators: parses operands joined by operators that
+     * bind at least as tightly as minPower. Operators of one level are folded to the left in
+     * a loop, so only a tighter operator on the right needs another level.
      *
+     * 1 + 2 * 3 - 4 => BinOp(BinOp(1, +, BinOp(2, *, 3)), -, 4)
      *
+     * The levels, and the unary, call, parenthesised and postfix expressions around an operand,
+     * are pending expressions on a stack (see Awaiting) rather than nested calls, so that
+     * expressions can nest however deep. Each value parsed is handed to the innermost one.
      */
+    private Expr parseExpr() {
+        int base = pendingExprCount;
+        push(Awaiting.OPERAND, start());
+        boolean operand = true;
+        Expr value = null;
+        while (true) {
+            if (operand) {
+                // Parse a unary expression, or its start when it has an expression inside it.
+                if (accept(TokenClass.ASTERIX)) {
+                    push(Awaiting.VALUE_AT, start());
+                    nextToken();
+                    continue;
+                } else if (accept(TokenClass.SIZEOF)) {
+                    value = parseSizeofExp();
+                    operand = false;
+                    continue;
+                } else if (accept(TokenClass.LPAR) && isType()) {
+                    PendingExpr typecast = push(Awaiting.TYPECAST, start());
+                    nextToken();
+                    typecast.type = parseTypes();
+                    expect(TokenClass.RPAR);
+                    continue;
+                }
+                push(Awaiting.POSTFIX, start());
+                if (accept(TokenClass.IDENTIFIER) && lookAhead(1) == TokenClass.LPAR) {
+                    // This is a function call.
+                    PendingExpr call = push(Awaiting.ARGUMENT, start());
+                    call.name = tokenData;
+                    call.args = new ArrayList<Expr>();
+                    nextToken();
+                    expect(TokenClass.LPAR);
+                    if (!accept(TokenClass.RPAR)) {
+                        push(Awaiting.OPERAND, start());
+                        continue;
+                    }
+                    pendingExprCount--;
+                    expect(TokenClass.RPAR);
+                    value = span(new FunCallExpr(call.name, call.args), call.start);
+                } else if (accept(TokenClass.LPAR)) {
+                    nextToken();
+                    push(Awaiting.PARENTHESISED, 0);
+                    push(Awaiting.OPERAND, start());
+                    continue;
+                } else {
+                    value = parseTerminal();
+                }
+                operand = false;
+                continue;
+            }
 
-    private Expr parseAdditiveExp(Expr lhs) {
-        Expr additiveExpResult = lhs;
-        while (accept(TokenClass.PLUS, TokenClass.MINUS)) {
-            Token current = token;
-            nextToken();
-            Expr rhs = parseTermExp();
-            additiveExpResult = new BinOp(lhs, convertOperator(current), rhs);
-            lhs = additiveExpResult;
+            // A popped expression stays intact until the next push.
+            PendingExpr top = pendingExprs[pendingExprCount - 1];
+            switch (top.awaiting) {
+                case OPERAND: {
+                    top.expr = top.op == null ? value : span(new BinOp(top.expr, convertOperator(top.op), value), top.start);
+                    int power = BINDING_POWER[tokenClass.ordinal()];
+                    if (power >= top.minPower) {
+                        top.op = tokenClass;
+                        nextToken();
+                        push(Awaiting.OPERAND, start()).minPower = power + 1;
+                        operand = true;
+                        break;
+                    }
+                    pendingExprCount--;
+                    value = top.expr;
+                    if (pendingExprCount == base)
+                        return value;
+                    break;
+                }
+                case VALUE_AT:
+                    pendingExprCount--;
+                    value = span(new ValueAtExpr(value), top.start);
+                    break;
+                case TYPECAST:
+                    pendingExprCount--;
+                    value = span(new TypecastExpr(top.type, value), top.start);
+                    break;
+                case ARGUMENT:
+                    top.args.add(value);
+                    if (accept(TokenClass.COMMA)) {
+                        nextToken();
+                        push(Awaiting.OPERAND, start());
+                        operand = true;
+                        break;
+                    }
+                    pendingExprCount--;
+                    expect(TokenClass.RPAR);
+                    value = span(new FunCallExpr(top.name, top.args), top.start);
+                    break;
+                case PARENTHESISED:
+                    pendingExprCount--;
+                    expect(TokenClass.RPAR);
+                    break;
+                case POSTFIX:
+                    if (accept(TokenClass.LSBR)) {
+                        top.awaiting = Awaiting.INDEX;
+                        top.expr = value;
+                        nextToken();
+                        push(Awaiting.OPERAND, start());
+                        operand = true;
+                        break;
+                    }
+                    pendingExprCount--;
+                    value = parseFieldaccessExpOp(value, top.start);
+                    break;
+                case INDEX:
+                    pendingExprCount--;
+                    expect(TokenClass.RSBR);
+                    value = parseFieldaccessExpOp(span(new ArrayAccessExpr(top.expr, value), top.start), top.start);
+                    break;
+            }
         }
-        return additiveExpResult;
     }
 
-    private Op convertOperator(Token current) {
-        switch (current.tokenClass) {
+    private Op convertOperator(TokenClass current) {
+        switch (current) {
             case OR: // ||
                 return Op.OR;
             case AND: // &&
@@ -519,190 +912,80 @@ public class Parser {
             case REM: // %
                 return Op.MOD;
             default:
-                error(token.tokenClass);
+                error(tokenClass);
                 return null;
         }
     }
 
-    private Expr parseTermExp() {
-        Expr unaryExpResult = parseUnaryExp();
-        Expr mulExpResult = parseMulExp(unaryExpResult);
-        return mulExpResult;
-    }
-
-    private Expr parseMulExp(Expr lhs) {
-        Expr mulExpResult = lhs;
-        while (accept(TokenClass.ASTERIX, TokenClass.DIV, TokenClass.REM)) {
-            Token current = token;
-            nextToken();
-            Expr rhs = parseUnaryExp();
-            mulExpResult = new BinOp(lhs, convertOperator(current), rhs);
-            lhs = mulExpResult;
-        }
-        return mulExpResult;
-    }
-
-    private Expr parseUnaryExp() {
-        if (accept(TokenClass.ASTERIX)) {
-            return parseValueAtExp();
-        } else if (accept(TokenClass.SIZEOF)) {
-            return parseSizeofExp();
-        } else if (accept(TokenClass.LPAR) && isType()) {
-            return parseTypecastExp();
-        } else {
-            return parseFieldaccessExp();
-        }
-    }
-
     private boolean isType() {
-        TokenClass look = lookAhead(1).tokenClass;
+        TokenClass look = lookAhead(1);
         return look == TokenClass.INT ||
                 look == TokenClass.VOID ||
                 look == TokenClass.CHAR ||
                 look == TokenClass.STRUCT;
     }
 
-    private Expr parseValueAtExp() {
-        if (accept(TokenClass.ASTERIX)) {
-            nextToken();
-            Expr valueAtExpResult = parseUnaryExp();
-            return new ValueAtExpr(valueAtExpResult);
-        }
-        error(token.tokenClass);
-        return null;
-    }
-
     private Expr parseSizeofExp() {
         if (accept(TokenClass.SIZEOF)) {
+            int start = start();
             nextToken();
             expect(TokenClass.LPAR);
             Type sizeOfType = parseTypes();
             expect(TokenClass.RPAR);
-            return new SizeOfExpr(sizeOfType);
-        }
-        error(token.tokenClass);
-        return null;
-    }
-
-    private Expr parseTypecastExp() {
-        if (accept(TokenClass.LPAR)) {
-            nextToken();
-            Type typecaseType = parseTypes();
-            expect(TokenClass.RPAR);
-            Expr typecastedExpResult = parseUnaryExp();
-            return new TypecastExpr(typecaseType, typecastedExpResult);
+            return span(new SizeOfExpr(sizeOfType), start);
         }
-        error(token.tokenClass);
+        error(tokenClass);
         return null;
     }
 
-    private Expr parseFieldaccessExp() {
-        Expr fieldAccessExpr = parseArrayaccessExp();
-        Expr fieldAccessOpExpr = parseFieldaccessExpOp(fieldAccessExpr);
-        return fieldAccessOpExpr;
-    }
-
-    private Expr parseArrayaccessExp() {
-        Expr funcallExpResult = parseFuncallExp();
-        Expr arrayAccessOpExpResult = parseArrayaccessExpOp(funcallExpResult);
-        return arrayAccessOpExpResult;
-    }
-
-    private Expr parseFuncallExp() {
-        if (accept(TokenClass.IDENTIFIER) && lookAhead(1).tokenClass == TokenClass.LPAR) {
-            // This is a function call.
-            Token current = token;
-            nextToken();
-            expect(TokenClass.LPAR);
-            String functionName = current.data;
-            List<Expr> functionArgs = parseArguments(new ArrayList<Expr>());
-            expect(TokenClass.RPAR);
-            return new FunCallExpr(functionName, functionArgs);
-        } else {
-            // Should be a terminal.
-            return parseTerminals();
-        }
-    }
-
-    private List<Expr> parseArguments(List<Expr> functionArgs) {
-        if (accept(TokenClass.RPAR)) {
-            return functionArgs;
-        }
-        functionArgs.add(parseExpr());
-        parseRestOfArgs(functionArgs);
-        return functionArgs;
-    }
-
-    private void parseRestOfArgs(List<Expr> functionArgs) {
-        if (accept(TokenClass.COMMA)) {
-            nextToken();
-            functionArgs.add(parseExpr());
-            parseRestOfArgs(functionArgs);
-        }
-    }
-
-    private Expr parseFieldaccessExpOp(Expr field) {
-        if (accept(TokenClass.DOT)) {
-            Token current = token;
+    private Expr parseFieldaccessExpOp(Expr field, int start) {
+        while (accept(TokenClass.DOT)) {
             nextToken();
-            String fieldAccessName = current.data;
+            String fieldAccessName = tokenData;
             expect(TokenClass.IDENTIFIER);
-            return new FieldAccessExpr(field, fieldAccessName);
+            field = span(new FieldAccessExpr(field, fieldAccessName), start);
         }
         return field;
     }
 
-    private Expr parseArrayaccessExpOp(Expr arrayName) {
-        if (accept(TokenClass.LSBR)) {
-            nextToken();
-            Expr arrayIndex = parseExpr();
-            expect(TokenClass.RSBR);
-            return new ArrayAccessExpr(arrayName, arrayIndex);
-        }
-        return arrayName;
-    }
-
-    private Expr parseTerminals() {
-        if (accept(TokenClass.LPAR)) {
-            nextToken();
-            Expr exp = parseExpr();
-            expect(TokenClass.RPAR);
-            return exp;
-        } else if (accept(TokenClass.MINUS)) {
+    private Expr parseTerminal() {
+        if (accept(TokenClass.MINUS)) {
+            int start = start();
             nextToken();
+            // The minus sign stands for the 0 subtracted from.
+            IntLiteral zero = span(new IntLiteral(0), start);
+            int operand = start();
             if (accept(TokenClass.IDENTIFIER)) {
-                Token current = token;
+                String identifierName = tokenData;
                 nextToken();
-                String identifierName = current.data;
-                return new BinOp(new IntLiteral(0), Op.SUB, new VarExpr(identifierName));
+                return span(new BinOp(zero, Op.SUB, span(new VarExpr(identifierName), operand)), start);
             } else if (accept(TokenClass.INT_LITERAL)) {
-                Token current = token;
+                int intLiteral = Integer.parseInt(tokenData);
                 nextToken();
-                int intLiteral = Integer.parseInt(current.data);
-                return new BinOp(new IntLiteral(0), Op.SUB, new IntLiteral(intLiteral));
+                return span(new BinOp(zero, Op.SUB, span(new IntLiteral(intLiteral), operand)), start);
             }
-            error(token.tokenClass);
+            error(tokenClass);
             return null;
         } else {
+            int start = start();
             Expr terminalExpr = extractTerminal();
             nextToken();
-            return terminalExpr;
+            return terminalExpr != null ? span(terminalExpr, start) : null;
         }
     }
 
     private Expr extractTerminal() {
-        Token current = token;
-        switch (current.tokenClass) {
+        switch (tokenClass) {
             case IDENTIFIER:
-                return new VarExpr(current.data);
+                return new VarExpr(tokenData);
             case CHAR_LITERAL:
-                return new ChrLiteral(current.data.charAt(0));
+                return new ChrLiteral(tokenData.charAt(0));
             case INT_LITERAL:
-                return new IntLiteral(Integer.parseInt(current.data));
+                return new IntLiteral(Integer.parseInt(tokenData));
             case STRING_LITERAL:
-                return new StrLiteral(current.data);
+                return new StrLiteral(tokenData);
             default:
-                error(token.tokenClass);
+                error(tokenClass);
                 return null;
         }
     }
@@ -4,10 +4,14 @@ package sem;
 /**
  * 
  * 
- * A base class providing basic error accumulation.
+ * A base class providing basic error accumulation. Passes walk the tree with an explicit stack
+ * (see ast.StackVisitor), so deep nesting does not overflow the JVM stack.
  */
-public abstract class BaseSemanticVisitor<T> implements SemanticVisitor<T> {
+public abstract class BaseSemanticVisitor<T> extends ast.StackVisitor<T> implements SemanticVisitor<T> {
 	private int errors;
+
+	// Messages held back by defer() until flush().
+	private StringBuilder deferred;
 	
 	
 	public BaseSemanticVisitor() {
@@ -19,7 +23,28 @@ public abstract class BaseSemanticVisitor<T> implements SemanticVisitor<T> {
 	}
 	
 	protected void error(String message) {
-		System.err.println("semantic error: " + message);
+		if (deferred != null) {
+			deferred.append("semantic error: ").append(message).append(System.lineSeparator());
+		} else {
+			System.err.println("semantic error: " + message);
+		}
 		errors++;
 	}
+
+	/**
+	 * Keeps messages back from now on, so that another pass's can be printed first.
+	 */
+	void defer() {
+		deferred = new StringBuilder();
+	}
+
+	/**
+	 * Prints the messages held back so far.
+	 */
+	void flush() {
+		if (deferred != null) {
+			System.err.print(deferred);
+			deferred.setLength(0);
+		}
+	}
 }
@@ -7,13 +7,10 @@ import ast.FunDecl;
  */
 public class FunDeclSymbol extends Symbol {
 
-    public Scope functionScope;
-
     public FunDecl fd;
 
-    public FunDeclSymbol(String name, Scope outer, FunDecl fd) {
+    public FunDeclSymbol(String name, FunDecl fd) {
         super(name);
-        functionScope = new Scope(outer);
         this.fd = fd;
     }
 }
@@ -0,0 +1,383 @@
+package sem;
+
+import ast.*;
+
+/**
+ * Name analysis and type checking in one walk of the tree.
+ *
+ * Each node is entered once and both passes' checks are made there, using the steps that
+ * NameAnalysisVisitor and TypeCheckVisitor share with this class, in the order each pass makes
+ * them on its own. Name analysis binds a variable or call before type checking reads the
+ * binding, so type checking sees what it would after a full name analysis. Where the passes
+ * part, because one stops early after an error or visits a child the other does not, that
+ * child is walked by the one pass alone.
+ *
+ * Messages are held back and printed when the walk is done, name analysis's first, so the
+ * output is what running the passes one after the other prints. Should a check throw, name
+ * analysis's messages so far are printed before the exception is passed on, as name analysis
+ * runs first on its own.
+ *
+ * SemanticAnalyzer.analyzeInParallel splits the walk: one visitor checks the structs and
+ * globals and declares the functions (analyzeGlobals), and others then check the functions,
+ * each over a nested copy of the global scope (analyzeFunction).
+ */
+public class FusedSemanticVisitor extends ast.StackVisitor<Type> {
+
+	private final NameAnalysisVisitor names = new NameAnalysisVisitor();
+	private final TypeCheckVisitor types = new TypeCheckVisitor();
+
+	// Whether the walk stops before the program's functions.
+	private boolean globalsOnly;
+
+	// The scope functions are checked in by analyzeFunction.
+	private SymbolTable functionScope;
+
+	/**
+	 * Checks p and returns the number of errors found.
+	 */
+	public int analyze(Program p) {
+		names.defer();
+		types.defer();
+		walkProgram(p);
+		flushNames();
+		flushTypes();
+		return getErrorCount();
+	}
+
+	private void walkProgram(Program p) {
+		try {
+			p.accept(this);
+		} catch (RuntimeException e) {
+			names.flush();
+			throw e;
+		}
+	}
+
+	/**
+	 * Checks the structs and global variables of p and declares its functions, holding the
+	 * messages back, and returns the global scope. visible[i] is set to the number of entries
+	 * of the scope that function i sees (see SymbolTable.nest). Returns null if checking a
+	 * function would leave its scope in place, as the functions after it are then checked in
+	 * that scope.
+	 */
+	SymbolTable analyzeGlobals(Program p, int[] visible) {
+		names.defer();
+		types.defer();
+		globalsOnly = true;
+		walkProgram(p);
+		SymbolTable globals = names.globalScope();
+		for (int i = 0; i < p.funDecls.size(); i++) {
+			visible[i] = globals.entries();
+			if (names.declareSignature(p.funDecls.get(i))) {
+				return null;
+			}
+		}
+		return globals;
+	}
+
+	/**
+	 * Gets ready to check the functions of p, once analyzeGlobals has returned globals, holding
+	 * the messages back.
+	 */
+	void enterGlobalScope(Program p, SymbolTable globals) {
+		names.defer();
+		types.defer();
+		functionScope = globals.nest(0);
+		names.enterGlobalScope(functionScope);
+		types.enterGlobalScope(p);
+	}
+
+	/**
+	 * Checks fd, seeing the first visible entries of the global scope. Should a check throw,
+	 * the messages held back stay unprinted.
+	 */
+	void analyzeFunction(FunDecl fd, int visible) {
+		functionScope.reset(visible);
+		walk(fd);
+	}
+
+	/**
+	 * Adds the library functions to p, for the code generator, once its functions are checked.
+	 */
+	void leaveProgram(Program p) {
+		types.addLibrary(p);
+	}
+
+	void flushNames() {
+		names.flush();
+	}
+
+	void flushTypes() {
+		types.flush();
+	}
+
+	int getErrorCount() {
+		return names.getErrorCount() + types.getErrorCount();
+	}
+
+	@Override
+	protected Type step(Frame f, Type child) {
+		switch (f.node.kind()) {
+			case BASE_TYPE:
+			case ARRAY_TYPE:
+			case POINTER_TYPE:
+			case STRUCT_TYPE:
+				names.walk(f.node);
+				return types.type((Type) f.node);
+			case PROGRAM:           return program((Program) f.node, f);
+			case FUN_DECL:          return funDecl((FunDecl) f.node, f, child);
+			case VAR_DECL: {
+				VarDecl vd = (VarDecl) f.node;
+				names.walk(vd.type);
+				names.declare(vd);
+				return types.varDecl(vd);
+			}
+			case BLOCK:             return block((Block) f.node, f);
+			case VAR_EXPR:
+				names.varExpr((VarExpr) f.node);
+				return types.varExpr((VarExpr) f.node);
+			case INT_LITERAL:       return BaseType.INT;
+			case CHR_LITERAL:       return BaseType.CHAR;
+			case STR_LITERAL:       return Types.array(BaseType.CHAR, ((StrLiteral) f.node).value.length() + 1);
+			case FUN_CALL_EXPR:     return funCallExpr((FunCallExpr) f.node, f, child);
+			case BIN_OP: {
+				BinOp binOp = (BinOp) f.node;
+				if (f.step == 0) {
+					return call(binOp.lhs);
+				}
+				if (f.step == 1) {
+					f.saved = child;
+					return call(binOp.rhs);
+				}
+				return types.binOpType(binOp, (Type) f.saved, child);
+			}
+			case IF:                return ifStmt((If) f.node, f, child);
+			case WHILE: {
+				While whileStmt = (While) f.node;
+				if (f.step == 0) {
+					return call(whileStmt.whileConditionExpr);
+				}
+				if (f.step == 1) {
+					if (!types.checkCondition(child, "While")) {
+						names.walk(whileStmt.whileStmt);
+						return null;
+					}
+					return call(whileStmt.whileStmt);
+				}
+				return null;
+			}
+			case ASSIGN:            return assignStmt((Assign) f.node, f, child);
+			case RETURN: {
+				Return returnStmt = (Return) f.node;
+				if (returnStmt.returnExpr != null && f.step == 0) {
+					return call(returnStmt.returnExpr);
+				}
+				return types.returnType(returnStmt.returnExpr != null ? child : BaseType.VOID);
+			}
+			case EXPR_STMT:
+				if (f.step == 0) {
+					return call(((ExprStmt) f.node).exprStmt);
+				}
+				return null;
+			case ARRAY_ACCESS_EXPR: {
+				ArrayAccessExpr arrayAccessExpr = (ArrayAccessExpr) f.node;
+				if (f.step == 0) {
+					return call(arrayAccessExpr.arrayName);
+				}
+				Type element = types.elementType(child);
+				if (element == null) {
+					return null;
+				}
+				// Name analysis does not check the index.
+				return types.indexedType(element, types.walk(arrayAccessExpr.arrayIndex));
+			}
+			case SIZE_OF_EXPR:
+				names.walk(((SizeOfExpr) f.node).type);
+				return BaseType.INT;
+			case VALUE_AT_EXPR:
+				if (f.step == 0) {
+					return call(((ValueAtExpr) f.node).valueAtExp);
+				}
+				return types.valueAtType(child);
+			case TYPECAST_EXPR: {
+				TypecastExpr typecastExpr = (TypecastExpr) f.node;
+				if (f.step == 0) {
+					names.walk(typecastExpr.type);
+					return call(typecastExpr.typecastedExpr);
+				}
+				return types.typecastType(typecastExpr, child);
+			}
+			case FIELD_ACCESS_EXPR:
+				if (f.step == 0) {
+					return call(((FieldAccessExpr) f.node).fieldAccessExpr);
+				}
+				return types.fieldType((FieldAccessExpr) f.node, child);
+			default:
+				return null;
+		}
+	}
+
+	private Type program(Program p, Frame f) {
+		if (f.step == 0) {
+			names.enterProgram();
+			types.enterProgram(p);
+		}
+
+		int structs = p.structTypes.size();
+		int vars = structs + p.varDecls.size();
+		if (f.index < structs) {
+			return call(p.structTypes.get(f.index++));
+		} else if (f.index < vars) {
+			VarDecl vd = p.varDecls.get(f.index++ - structs);
+			vd.isGlobal = true;
+			return call(vd);
+		} else if (globalsOnly) {
+			return null;
+		} else if (f.index < vars + p.funDecls.size()) {
+			return call(p.funDecls.get(f.index++ - vars));
+		}
+
+		types.addLibrary(p);
+		return null;
+	}
+
+	// f.index runs over the parameters, then the block, as in NameAnalysisVisitor.
+	private Type funDecl(FunDecl fd, Frame f, Type child) {
+		if (f.step == 0) {
+			types.enterFunction(fd);
+			names.walk(fd.type);
+			f.mark = names.enterFunction(fd);
+			if (f.mark < 0) {
+				return checkFunctionTypes(fd, 0);
+			}
+		}
+
+		int params = fd.params.size();
+		if (f.index < params) {
+			VarDecl param = fd.params.get(f.index);
+			param.isParameter = true;
+			if (names.isRedeclaredParameter(fd, param)) {
+				return checkFunctionTypes(fd, f.index);
+			}
+			f.index++;
+			return call(param);
+		}
+
+		if (f.index == params) {
+			f.index++;
+			return call(names.functionBlock(fd));
+		}
+
+		names.leaveFunction(f.mark);
+		return child;
+	}
+
+	// Type checks the rest of fd from parameter from on, once name analysis has stopped.
+	private Type checkFunctionTypes(FunDecl fd, int from) {
+		for (int i = from; i < fd.params.size(); i++) {
+			VarDecl param = fd.params.get(i);
+			param.isParameter = true;
+			types.walk(param);
+		}
+		return types.walk(fd.block());
+	}
+
+	private Type block(Block b, Frame f) {
+		if (f.step == 0) {
+			f.mark = names.enterBlock(b);
+		}
+
+		int vars = b.varDeclsInBlock.size();
+		if (f.index < vars) {
+			VarDecl vd = b.varDeclsInBlock.get(f.index);
+			if (names.isRedeclaredInBlock(vd)) {
+				for (int i = f.index; i < vars; i++) {
+					types.walk(b.varDeclsInBlock.get(i));
+				}
+				for (Stmt stmt : b.stmtsInBlock) {
+					types.walk(stmt);
+				}
+				return null;
+			}
+			f.index++;
+			return call(vd);
+		}
+
+		if (f.index < vars + b.stmtsInBlock.size()) {
+			return call(b.stmtsInBlock.get(f.index++ - vars));
+		}
+
+		names.leaveBlock(f.mark);
+		return null;
+	}
+
+	private Type ifStmt(If ifStmt, Frame f, Type child) {
+		switch (f.step) {
+			case 0:
+				return call(ifStmt.ifConditionExpr);
+			case 1:
+				if (!types.checkCondition(child, "If")) {
+					names.walk(ifStmt.ifStmtBlock);
+					names.walk(ifStmt.elseStmtBlock);
+					return null;
+				}
+				return call(ifStmt.ifStmtBlock);
+			case 2:
+				return call(ifStmt.elseStmtBlock);
+			default:
+				return null;
+		}
+	}
+
+	private Type assignStmt(Assign assignStmt, Frame f, Type child) {
+		if (f.step == 0) {
+			if (!types.checkAssignable(assignStmt.lhs)) {
+				names.walk(assignStmt.lhs);
+				names.walk(assignStmt.rhs);
+				return null;
+			}
+			return call(assignStmt.lhs);
+		}
+		if (f.step == 1) {
+			if (!types.checkAssignableType(child)) {
+				names.walk(assignStmt.rhs);
+				return null;
+			}
+			f.saved = child;
+			return call(assignStmt.rhs);
+		}
+		types.checkAssignment((Type) f.saved, child);
+		return null;
+	}
+
+	// f.index counts the arguments walked; each is checked against its parameter on the step
+	// after it.
+	private Type funCallExpr(FunCallExpr fce, Frame f, Type child) {
+		if (f.step == 0) {
+			if (!names.resolve(fce)) {
+				// Type checking goes by whatever fce was last bound to.
+				return types.walk(fce);
+			}
+			if (!types.checkArgumentCount(fce, fce.fd)) {
+				for (Expr arg : fce.functionArgsExprs) {
+					names.walk(arg);
+				}
+				return null;
+			}
+		}
+
+		FunDecl fd = fce.fd;
+		int args = fce.functionArgsExprs.size();
+		if (f.index > 0 && !types.checkArgument(fce, child, types.walk(fd.params.get(f.index - 1)))) {
+			for (int i = f.index; i < args; i++) {
+				names.walk(fce.functionArgsExprs.get(i));
+			}
+			return null;
+		}
+		if (f.index < args) {
+			return call(fce.functionArgsExprs.get(f.index++));
+		}
+
+		return types.callType(fce, fd);
+	}
+}
@@ -2,19 +2,59 @@ package sem;
 
 import ast.*;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Map;
 
 public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
 
-    private Scope scope;
+    private SymbolTable scope;
+
+	// The block of the function being declared, which shares the function's scope.
+	private Block functionBlock;
 
 	@Override
-	public Void visitBaseType(BaseType bt) {
-		return null;
+	protected Void step(Frame f, Void child) {
+		switch (f.node.kind()) {
+			case PROGRAM:           return program((Program) f.node, f);
+			case STRUCT_TYPE:       return structType((StructType) f.node, f);
+			case FUN_DECL:          return funDecl((FunDecl) f.node, f);
+			case VAR_DECL:          return varDecl((VarDecl) f.node, f);
+			case BLOCK:             return block((Block) f.node, f);
+			case VAR_EXPR:          return varExpr((VarExpr) f.node);
+			case FUN_CALL_EXPR:     return funCallExpr((FunCallExpr) f.node, f);
+			case BIN_OP:            return callEach(f, ((BinOp) f.node).lhs, ((BinOp) f.node).rhs);
+			case IF: {
+				If ifStmt = (If) f.node;
+				return callEach(f, ifStmt.ifConditionExpr, ifStmt.ifStmtBlock, ifStmt.elseStmtBlock);
+			}
+			case WHILE: {
+				While whileStmt = (While) f.node;
+				return callEach(f, whileStmt.whileConditionExpr, whileStmt.whileStmt);
+			}
+			case ASSIGN:            return callEach(f, ((Assign) f.node).lhs, ((Assign) f.node).rhs);
+			case RETURN:            return callEach(f, ((Return) f.node).returnExpr);
+			case EXPR_STMT:         return callEach(f, ((ExprStmt) f.node).exprStmt);
+			// Only the array is checked, not the index.
+			case ARRAY_ACCESS_EXPR: return callEach(f, ((ArrayAccessExpr) f.node).arrayName);
+			case SIZE_OF_EXPR:      return callEach(f, ((SizeOfExpr) f.node).type);
+			case VALUE_AT_EXPR:     return callEach(f, ((ValueAtExpr) f.node).valueAtExp);
+			case TYPECAST_EXPR: {
+				TypecastExpr typecastExpr = (TypecastExpr) f.node;
+				return callEach(f, typecastExpr.type, typecastExpr.typecastedExpr);
+			}
+			case FIELD_ACCESS_EXPR: return callEach(f, ((FieldAccessExpr) f.node).fieldAccessExpr);
+			default:
+				// Base, array and pointer types and literals have nothing to check.
+				return null;
+		}
 	}
 
+	// Visits the children one per step, in order.
+	private Void callEach(Frame f, ASTNode... children) {
+		if (f.index < children.length) {
+			return call(children[f.index++]);
+		}
+		return null;
+	}
 
 	/**
 	 * Visiting struct happens in 2 cases.
@@ -29,41 +69,41 @@ public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
 	 * @param st
 	 * @return
 	 */
-	@Override
-	public Void visitStructType(StructType st) {
+	private Void structType(StructType st, Frame f) {
 
 		String structName = st.structName;
 
 		// When struct does not have any var declarations, it is struct declaration, case 1.
 		if (!st.structVarDecls.isEmpty()) {
-			// Make sure that global scope does not have struct named like structName already.
-			if (scope.lookupCurrent(structName) != null) {
-				error("Struct " + structName + " was already declared before.");
-				return null;
-			}
+			if (f.step == 0) {
+				// Make sure that global scope does not have struct named like structName already.
+				if (scope.lookupCurrent(structName) != null) {
+					error("Struct " + structName + " was already declared before.");
+					return null;
+				}
 
-			// Define struct symbol and a scope of it. Make it point to global file scope.
-			StructDeclSymbol structDeclSymbol = new StructDeclSymbol(structName, scope);
+				// Define struct symbol.
+				StructDeclSymbol structDeclSymbol = new StructDeclSymbol(structName);
 
-			// Add new struct declaration symbol to the global scope.
-			scope.put(structDeclSymbol);
+				// Add new struct declaration symbol to the global scope.
+				scope.put(structDeclSymbol);
 
-			// Parse the var declaration(s) inside the struct declaration. To do this, save
-			// current scope, switch to struct scope, add all var declarations, then restore the
-			// scope as it was before.
+				// Parse the var declaration(s) inside the struct declaration. To do this, enter
+				// the struct's scope, add all var declarations, then leave it again.
 
-			Scope oldScope = scope;
-			scope = structDeclSymbol.structScope;
+				f.mark = scope.enterScope();
+			}
 
-			for (VarDecl structVarDecl : st.structVarDecls) {
+			if (f.index < st.structVarDecls.size()) {
+				VarDecl structVarDecl = st.structVarDecls.get(f.index++);
 				// Check if var declaration inside struct was not declared before.
-				if (wasDeclaredBefore(structVarDecl.varName)) {
-					error("VarDecl " + structVarDecl.varName + " was already declared before.");
-					break; // Leave the VarDecl processing
+				if (!wasDeclaredBefore(structVarDecl.varName)) {
+					return call(structVarDecl);
 				}
-				structVarDecl.accept(this);
+				error("VarDecl " + structVarDecl.varName + " was already declared before.");
+				// Leave the VarDecl processing
 			}
-			scope = oldScope;
+			scope.leaveScope(f.mark);
 		} else {
 			// TODO: case 2, where we have struct definition as var decl somewhere in the program.
 
@@ -81,164 +121,219 @@ public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
 		return scope.lookupCurrent(symbolAlias) != null;
 	}
 
+	// The steps below are shared with FusedSemanticVisitor, which takes them in its own walk.
+
 	/**
-	 * Function block consists of var declarations and statements.
-	 * @param b
-	 * @return
+	 * Enters b's scope and returns its mark, or -1 for a function's own block, which is in the
+	 * function's scope.
 	 */
-	@Override
-	public Void visitBlock(Block b) {
-
-
-        Scope oldScope = scope;
-        scope = new Scope(oldScope);
-
-		// Current scope is block. Add all var declarations(if any) to the current scope.
-		// Must check if var was not declared before as well as if any struct types are available.
+	int enterBlock(Block b) {
+		return b == functionBlock ? -1 : scope.enterScope();
+	}
 
-		for (VarDecl functionBlockVarDecl : b.varDeclsInBlock) {
-			if (wasDeclaredBefore(functionBlockVarDecl.varName)) {
-				error("VarDecl " + functionBlockVarDecl.varName + " was declated in parameters list.");
-				return null;
-			}
-			functionBlockVarDecl.accept(this);
+	void leaveBlock(int mark) {
+		if (mark >= 0) {
+			scope.leaveScope(mark);
 		}
+	}
 
-		// Done parsing var declarations. Now move on to statements. Still in the same scope.
-
-		for (Stmt functionBlockStmts : b.stmtsInBlock) {
-			functionBlockStmts.accept(this);
+	/**
+	 * Reports vd if its name is taken in the block's scope, in which case the rest of the block
+	 * is skipped, and its scope is left in place.
+	 */
+	boolean isRedeclaredInBlock(VarDecl vd) {
+		if (wasDeclaredBefore(vd.varName)) {
+			error("VarDecl " + vd.varName + " was declated in parameters list.");
+			return true;
 		}
-
-
-		// Restore scope.
-		scope = oldScope;
-
-		return null;
+		return false;
 	}
 
 	/**
-	 * Function declaration consists of function type, function name, parameters and
-	 * the block of var declarations and statements. The block is a new scope to be dealt
-	 * with so any var decls or statements go into new scope.
-	 * @param fd
-	 * @return
+	 * Declares fd and enters its scope, returning the mark to leave it with, or -1 if its name
+	 * was taken, in which case nothing more of fd is checked.
 	 */
-	@Override
-	public Void visitFunDecl(FunDecl fd) {
-		fd.type.accept(this);
-
+	int enterFunction(FunDecl fd) {
 		String functionName = fd.name;
 
 		// Check if function name is not the same as some other symbol declared before.
 		if (wasDeclaredBefore(functionName)) {
 			error("Function declaration: " + functionName + " has a name that was declared before in this scope.");
-			return null;
+			return -1;
 		}
 
 		// Function name is suppsoed to be added to current scope. Function will also have
 		// it's own scope and can refer to upper scope.
-		FunDeclSymbol funDeclSymbol = new FunDeclSymbol(functionName, scope, fd);
+		FunDeclSymbol funDeclSymbol = new FunDeclSymbol(functionName, fd);
 		scope.put(funDeclSymbol);
 
-		// Switch scopes. Then parse function arguments. All of them should be added to function
+		// Enter the function's scope. Then parse function arguments. All of them should be added to function
 		// scope. Need to make sure that all params have unique names, i.e. was not declared in params list
 		// before.
-		Scope oldScope = scope;
-		scope = funDeclSymbol.functionScope;
+		return scope.enterScope();
+	}
 
-		for (VarDecl functionParam : fd.params) {
-			if (wasDeclaredBefore(functionParam.varName)) {
-				error("Function param " + functionParam.varName + " was declared before in function " + functionName);
-				return null;
-			}
-			functionParam.accept(this);
+	/**
+	 * Reports param if its name is taken, in which case nothing more of fd is checked, and the
+	 * function's scope is left in place.
+	 */
+	boolean isRedeclaredParameter(FunDecl fd, VarDecl param) {
+		if (wasDeclaredBefore(param.varName)) {
+			error("Function param " + param.varName + " was declared before in function " + fd.name);
+			return true;
 		}
+		return false;
+	}
 
-		// After parsing parameters, need to continue into function block.
-        visitFunctionDeclarationBlock(fd.block);
-
-		scope = oldScope;
+	/**
+	 * fd's block, which is to share the function's scope.
+	 */
+	Block functionBlock(FunDecl fd) {
+		functionBlock = fd.block();
+		return functionBlock;
+	}
 
-		return null;
+	void leaveFunction(int mark) {
+		scope.leaveScope(mark);
 	}
 
-	private Void visitFunctionDeclarationBlock(Block functionDeclBlock) {
+	/**
+	 * Declares fd in the global scope as enterFunction does, but without reporting anything or
+	 * checking more of it. Returns whether checking it would leave its scope in place, as a
+	 * repeated parameter name does, which puts the functions after it in that scope.
+	 */
+	boolean declareSignature(FunDecl fd) {
+		if (wasDeclaredBefore(fd.name)) {
+			return false;
+		}
+		scope.put(new FunDeclSymbol(fd.name, fd));
+		for (int i = 0; i < fd.params.size(); i++) {
+			for (int j = 0; j < i; j++) {
+				if (fd.params.get(i).varName.equals(fd.params.get(j).varName)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
 
-        for (VarDecl functionVarDecl : functionDeclBlock.varDeclsInBlock) {
-            if (wasDeclaredBefore(functionVarDecl.varName)) {
-                error("VarDecl " + functionVarDecl.varName + " was declated in parameters list.");
-                return null;
-            }
-            functionVarDecl.accept(this);
-        }
+	SymbolTable globalScope() {
+		return scope;
+	}
 
-        for (Stmt functionStmt : functionDeclBlock.stmtsInBlock) {
-            if (functionStmt instanceof Block) {
-                visitBlock((Block) functionStmt);
-            } else {
-                functionStmt.accept(this);
-            }
-        }
+	/**
+	 * Checks from now on in scope, which holds the globals of the program being checked.
+	 */
+	void enterGlobalScope(SymbolTable scope) {
+		this.scope = scope;
+	}
 
-        return null;
-    }
+	/**
+	 * Function block consists of var declarations and statements. A function's own block is
+	 * in the function's scope, with its parameters; any other block opens a scope of its own.
+	 * @param b
+	 * @return
+	 */
+	private Void block(Block b, Frame f) {
 
+		if (f.step == 0) {
+			f.mark = enterBlock(b);
+		}
 
-	@Override
-	public Void visitProgram(Program p) {
+		// Current scope is block. Add all var declarations(if any) to the current scope.
+		// Must check if var was not declared before as well as if any struct types are available.
 
+		int vars = b.varDeclsInBlock.size();
+		if (f.index < vars) {
+			VarDecl functionBlockVarDecl = b.varDeclsInBlock.get(f.index++);
+			if (isRedeclaredInBlock(functionBlockVarDecl)) {
+				return null;
+			}
+			return call(functionBlockVarDecl);
+		}
 
-		// Initialize global scope. This is the root of all scopes.
-		scope = new Scope();
+		// Done parsing var declarations. Now move on to statements. Still in the same scope.
 
-		// Include all minic lib functions.
+		if (f.index < vars + b.stmtsInBlock.size()) {
+			return call(b.stmtsInBlock.get(f.index++ - vars));
+		}
 
-		FunDecl print_s_decl = new FunDecl(BaseType.VOID, "print_s",
-				Arrays.asList(new VarDecl(new PointerType(BaseType.CHAR), "s")), null);
-		FunDeclSymbol print_s_symbol = new FunDeclSymbol("print_s", scope, print_s_decl);
-		scope.put(print_s_symbol);
+		// Restore scope.
+		leaveBlock(f.mark);
 
-		FunDecl print_i_decl = new FunDecl(BaseType.INT, "print_i",
-				Arrays.asList(new VarDecl(BaseType.INT, "i")), null);
-		FunDeclSymbol print_i_symbol = new FunDeclSymbol("print_i", scope, print_i_decl);
-		scope.put(print_i_symbol);
+		return null;
+	}
 
-		FunDecl print_c_decl = new FunDecl(BaseType.CHAR, "print_c",
-				Arrays.asList(new VarDecl(BaseType.CHAR, "c")), null);
-		FunDeclSymbol print_c_symbol = new FunDeclSymbol("print_c", scope, print_c_decl);
-		scope.put(print_c_symbol);
+	/**
+	 * Function declaration consists of function type, function name, parameters and
+	 * the block of var declarations and statements. The block is a new scope to be dealt
+	 * with so any var decls or statements go into new scope.
+	 *
+	 * f.index runs over the parameters, then the block.
+	 * @param fd
+	 * @return
+	 */
+	private Void funDecl(FunDecl fd, Frame f) {
+		if (f.step == 0) {
+			return call(fd.type);
+		}
 
-		FunDecl read_c_decl = new FunDecl(BaseType.CHAR, "read_c", new ArrayList<VarDecl>(), null);
-		FunDeclSymbol read_c_symbol = new FunDeclSymbol("read_c", scope, read_c_decl);
-		scope.put(read_c_symbol);
+		if (f.step == 1) {
+			f.mark = enterFunction(fd);
+			if (f.mark < 0) {
+				return null;
+			}
+		}
 
-		FunDecl read_i_decl = new FunDecl(BaseType.INT, "read_i", new ArrayList<VarDecl>(), null);
-		FunDeclSymbol read_i_symbol = new FunDeclSymbol("read_i", scope, read_i_decl);
-		scope.put(read_i_symbol);
+		int params = fd.params.size();
+		if (f.index < params) {
+			VarDecl functionParam = fd.params.get(f.index++);
+			if (isRedeclaredParameter(fd, functionParam)) {
+				return null;
+			}
+			return call(functionParam);
+		}
 
-		FunDecl mcmalloc_decl = new FunDecl(new PointerType(BaseType.VOID), "mcmalloc",
-				Arrays.asList(new VarDecl(BaseType.INT, "size")), null);
-		FunDeclSymbol mcalloc_symbol = new FunDeclSymbol("mcmalloc", scope, mcmalloc_decl);
-		scope.put(mcalloc_symbol);
+		// After parsing parameters, need to continue into function block, which shares the
+		// function's scope.
+		if (f.index == params) {
+			f.index++;
+			return call(functionBlock(fd));
+		}
 
+		leaveFunction(f.mark);
 
-        for (StructType st : p.structTypes) {
-            st.accept(this);
-        }
+		return null;
+	}
 
-        for (VarDecl vd : p.varDecls) {
-            vd.accept(this);
-        }
+	private Void program(Program p, Frame f) {
 
-        for (FunDecl fd : p.funDecls) {
-            fd.accept(this);
-        }
+		if (f.step == 0) {
+			enterProgram();
+		}
 
+		// Structs, then global variables, then functions.
+		int structs = p.structTypes.size();
+		int vars = structs + p.varDecls.size();
+		if (f.index < structs) {
+			return call(p.structTypes.get(f.index++));
+		} else if (f.index < vars) {
+			return call(p.varDecls.get(f.index++ - structs));
+		} else if (f.index < vars + p.funDecls.size()) {
+			return call(p.funDecls.get(f.index++ - vars));
+		}
 
         return null;
 	}
 
+	/**
+	 * Starts the global scope with the library functions.
+	 */
+	void enterProgram() {
+		// Initialize global scope. This is the root of all scopes.
+		scope = Prelude.globalScope();
+	}
+
 	private void printSymbolTable() {
 		Map<String, Symbol> symbolTable = scope.getSymbolTable();
 		for (Map.Entry<String, Symbol> entry : symbolTable.entrySet()) {
@@ -255,26 +350,33 @@ public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
 	 * @param vd
 	 * @return
 	 */
-	@Override
-	public Void visitVarDecl(VarDecl vd) {
-        vd.type.accept(this);
+	private Void varDecl(VarDecl vd, Frame f) {
+		if (f.step == 0) {
+			return call(vd.type);
+		}
+		declare(vd);
+        return null;
+	}
+
+	/**
+	 * Adds vd to the current scope, once its type has been visited.
+	 */
+	void declare(VarDecl vd) {
 		String varDeclName = vd.varName;
 
 		// Check if varDeclName was already used in this scope somewhere else.
 		if (wasDeclaredBefore(varDeclName)) {
 			error("Cannot declare variable " + varDeclName + " because it's name was already used in this scope.");
-			return null;
+			return;
 		}
 
 		VarDeclSymbol varDeclSymbol = new VarDeclSymbol(varDeclName, vd);
 		scope.put(varDeclSymbol);
-        return null;
 	}
 
-	@Override
-	public Void visitVarExpr(VarExpr v) {
+	Void varExpr(VarExpr v) {
 		Symbol symbol = scope.lookup(v.name);
-		if (scope.lookup(v.name) == null) {
+		if (symbol == null) {
 			error("VarExpr " + v.name + " was not declared anywhere.");
 			return null;
 		}
@@ -285,31 +387,6 @@ public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
 		return null;
 	}
 
-	@Override
-	public Void visitArrayType(ArrayType at) {
-		return null;
-	}
-
-	@Override
-	public Void visitPointerType(PointerType pt) {
-		return null;
-	}
-
-	@Override
-	public Void visitIntLiteral(IntLiteral il) {
-		return null;
-	}
-
-	@Override
-	public Void visitChrLiteral(ChrLiteral cl) {
-		return null;
-	}
-
-	@Override
-	public Void visitStrLiteral(StrLiteral sl) {
-		return null;
-	}
-
 	/**
 	 * Check if function being called exists somewhere up the scope hierarchy.
 	 * This seems to indicate that we cannot define mutual recursion.
@@ -319,112 +396,34 @@ public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
 	 * @param fce
 	 * @return
 	 */
-	@Override
-	public Void visitFunCallExpr(FunCallExpr fce) {
-		String functionName = fce.functionName;
-		Symbol symbol = scope.lookup(functionName);
-		if (symbol == null) {
-			error("Function call " + functionName + " invalid because it was not defined before use.");
-			return null;
-		} else if (!(symbol instanceof FunDeclSymbol)) {
-			error("Function name was declared before as non-function symbol.");
+	private Void funCallExpr(FunCallExpr fce, Frame f) {
+		if (f.step == 0 && !resolve(fce)) {
 			return null;
 		}
 
 		// Now check if function call args are either terminals or declared before.
-		for (Expr functionArg : fce.functionArgsExprs) {
-			functionArg.accept(this);
+		if (f.index < fce.functionArgsExprs.size()) {
+			return call(fce.functionArgsExprs.get(f.index++));
 		}
-		fce.fd = ((FunDeclSymbol) symbol).fd;
 		return null;
 	}
 
-	@Override
-	public Void visitBinOpExpr(BinOp binOp) {
-		Expr lhs = binOp.lhs;
-		lhs.accept(this);
-		Expr rhs = binOp.rhs;
-		rhs.accept(this);
-		return null;
-	}
-
-	@Override
-	public Void visitStmtExpr(Stmt stmt) {
-		return null;
-	}
-
-	@Override
-	public Void visitIfStmt(If ifStmt) {
-		ifStmt.ifConditionExpr.accept(this);
-		ifStmt.ifStmtBlock.accept(this);
-		if (ifStmt.elseStmtBlock != null) {
-			ifStmt.elseStmtBlock.accept(this);
-		}
-		return null;
-	}
-
-	@Override
-	public Void visitWhileStmt(While whileStmt) {
-		whileStmt.whileConditionExpr.accept(this);
-		whileStmt.whileStmt.accept(this);
-		return null;
-	}
-
-	@Override
-	public Void visitAssignStmt(Assign assignStmt) {
-		assignStmt.lhs.accept(this);
-		assignStmt.rhs.accept(this);
-		return null;
-	}
-
-	@Override
-	public Void visitReturnStmt(Return returnStmt) {
-		if (returnStmt.returnExpr != null) {
-			returnStmt.returnExpr.accept(this);
+	/**
+	 * Binds fce to the function it calls; if there is none, it is reported and its arguments
+	 * are not checked.
+	 */
+	boolean resolve(FunCallExpr fce) {
+		String functionName = fce.functionName;
+		Symbol symbol = scope.lookup(functionName);
+		if (symbol == null) {
+			error("Function call " + functionName + " invalid because it was not defined before use.");
+			return false;
+		} else if (!(symbol instanceof FunDeclSymbol)) {
+			error("Function name was declared before as non-function symbol.");
+			return false;
 		}
-		return null;
-	}
-
-	@Override
-	public Void visitExprStmt(ExprStmt exprStmt) {
-		exprStmt.exprStmt.accept(this);
-		return null;
-	}
-
-	@Override
-	public Void visitArrayAccessExpr(ArrayAccessExpr arrayAccessExpr) {
-        arrayAccessExpr.arrayName.accept(this);
-
-		return null;
-	}
-
-	@Override
-	public Void visitSizeOfExpr(SizeOfExpr sizeOfExpr) {
-		sizeOfExpr.type.accept(this);
-		return null;
-	}
-
-	@Override
-	public Void visitValueAtExpr(ValueAtExpr valueAtExpr) {
-		valueAtExpr.valueAtExp.accept(this);
-		return null;
-	}
-
-	@Override
-	public Void visitTypecastExpr(TypecastExpr typecastExpr) {
-		typecastExpr.type.accept(this);
-
-		typecastExpr.typecastedExpr.accept(this);
-		return null;
-	}
-
-	@Override
-	public Void visitFieldAccessExpr(FieldAccessExpr fieldAccessExpr) {
-		fieldAccessExpr.fieldAccessExpr.accept(this);
-		String fieldName = fieldAccessExpr.fieldAccessName;
-
-		return null;
+		// Arguments cannot declare anything, so the call can be bound before they are visited.
+		fce.fd = ((FunDeclSymbol) symbol).fd;
+		return true;
 	}
-
-
 }
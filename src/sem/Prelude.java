@@ -0,0 +1,59 @@
+package sem;
+
+import ast.BaseType;
+import ast.FunDecl;
+import ast.Type;
+import ast.Types;
+import ast.VarDecl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The minic library functions, declared once per JVM.
+ *
+ * Each program's global scope is nested in the prelude's, which holds the library (see
+ * SymbolTable.nest), so nothing about the library is built, copied or hashed again per
+ * compilation. Calls are bound to the same declarations that type checking adds to the program
+ * for the code generator. They are shared by every program checked and nothing writes to them,
+ * so any number of programs can be compiled at once.
+ */
+public final class Prelude {
+
+	// What calls to the library are checked against. Only ever read.
+	private static final SymbolTable SCOPE = new SymbolTable();
+
+	/**
+	 * The library functions type checking adds to each program, for the code generator. It has
+	 * no code for mcmalloc yet, which is left out.
+	 */
+	static final List<FunDecl> GENERATED;
+
+	static {
+		FunDecl print_s = declare(BaseType.VOID, "print_s", new VarDecl(Types.pointer(BaseType.CHAR), "s"));
+		FunDecl print_i = declare(BaseType.INT, "print_i", new VarDecl(BaseType.INT, "i"));
+		FunDecl print_c = declare(BaseType.CHAR, "print_c", new VarDecl(BaseType.CHAR, "c"));
+		FunDecl read_c = declare(BaseType.CHAR, "read_c");
+		FunDecl read_i = declare(BaseType.INT, "read_i");
+		declare(Types.pointer(BaseType.VOID), "mcmalloc", new VarDecl(BaseType.INT, "size"));
+		GENERATED = Collections.unmodifiableList(Arrays.asList(print_c, print_s, print_i, read_i, read_c));
+	}
+
+	private Prelude() {
+	}
+
+	private static FunDecl declare(Type type, String name, VarDecl... params) {
+		FunDecl fd = new FunDecl(type, name, Collections.unmodifiableList(Arrays.asList(params)), null);
+		SCOPE.put(new FunDeclSymbol(name, fd));
+		return fd;
+	}
+
+	/**
+	 * A new global scope that sees the library functions, for a program's declarations to be
+	 * added to.
+	 */
+	static SymbolTable globalScope() {
+		return SCOPE.nest(SCOPE.entries());
+	}
+}
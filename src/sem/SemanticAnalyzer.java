@@ -1,10 +1,29 @@
 package sem;
 
+import ast.FunDecl;
+
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class SemanticAnalyzer {
-	
+
+	// Below this many functions a group costs more to fork than to check.
+	private static final int MIN_GROUP = 64;
+
+	/**
+	 * Resolves names and checks types in one walk of the tree (see FusedSemanticVisitor), with
+	 * the same messages and result as analyzeInTwoPasses.
+	 */
 	public int analyze(ast.Program prog) {
+		return new FusedSemanticVisitor().analyze(prog);
+	}
+
+	/**
+	 * Runs name analysis over the whole tree, then type checking.
+	 */
+	public int analyzeInTwoPasses(ast.Program prog) {
 		// List of visitors
 		ArrayList<SemanticVisitor> visitors = new ArrayList<SemanticVisitor>() {{
 			add(new NameAnalysisVisitor());
@@ -12,14 +31,104 @@ public class SemanticAnalyzer {
 		}};
 		// Error accumulator
 		int errors = 0;
-		
+
 		// Apply each visitor to the AST
 		for (SemanticVisitor v : visitors) {
 			prog.accept(v);
 			errors += v.getErrorCount();
 		}
-		
+
 		// Return the number of errors.
 		return errors;
 	}
+
+	/**
+	 * Checks the structs and global variables and declares the functions, then checks the
+	 * functions on pool in groups, each function seeing the global declarations before it as
+	 * it would in analyze. The messages of each group are held back and printed in source
+	 * order, so the messages, the result and anything thrown are those of analyze. Should a
+	 * function leave its scope open (a repeated parameter name does), which puts the functions
+	 * after it in that scope, the program is analyzed sequentially instead.
+	 */
+	public int analyzeInParallel(ast.Program prog, ForkJoinPool pool) {
+		List<FunDecl> funDecls = prog.funDecls;
+		int parallelism = pool.getParallelism();
+		if (parallelism < 2 || funDecls.size() < 2 * MIN_GROUP) {
+			return analyze(prog);
+		}
+
+		FusedSemanticVisitor globals = new FusedSemanticVisitor();
+		int[] visible = new int[funDecls.size()];
+		SymbolTable scope = globals.analyzeGlobals(prog, visible);
+		if (scope == null) {
+			return analyze(prog);
+		}
+
+		// The functions are only read from here on, as are the global scope and the layouts,
+		// which type checking the structs has filled in.
+		int groupSize = Math.max(MIN_GROUP, funDecls.size() / (parallelism * 4));
+		List<FunctionGroup> groups = new ArrayList<FunctionGroup>();
+		for (int from = 0; from < funDecls.size(); from += groupSize) {
+			FunctionGroup group = new FunctionGroup(prog, scope, visible, from, Math.min(from + groupSize, funDecls.size()));
+			groups.add(group);
+			pool.execute(group);
+		}
+
+		// Every group is waited for, so that none is still writing to the tree once this returns
+		// or throws.
+		for (FunctionGroup group : groups) {
+			group.quietlyJoin();
+		}
+
+		// Checks throw in source order: the first group to fail ends name analysis there.
+		int errors = globals.getErrorCount();
+		globals.flushNames();
+		for (FunctionGroup group : groups) {
+			group.join();
+			group.visitor.flushNames();
+			if (group.failure != null) {
+				throw group.failure;
+			}
+		}
+		globals.flushTypes();
+		for (FunctionGroup group : groups) {
+			group.visitor.flushTypes();
+			errors += group.visitor.getErrorCount();
+		}
+		globals.leaveProgram(prog);
+		return errors;
+	}
+
+	private static final class FunctionGroup extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final ast.Program prog;
+		final SymbolTable scope;
+		final int[] visible;
+		final int from;
+		final int to;
+		final FusedSemanticVisitor visitor = new FusedSemanticVisitor();
+		// What a check threw, which ends the group.
+		RuntimeException failure;
+
+		FunctionGroup(ast.Program prog, SymbolTable scope, int[] visible, int from, int to) {
+			this.prog = prog;
+			this.scope = scope;
+			this.visible = visible;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			visitor.enterGlobalScope(prog, scope);
+			try {
+				for (int i = from; i < to; i++) {
+					visitor.analyzeFunction(prog.funDecls.get(i), visible[i]);
+				}
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+		}
+	}
 }
@@ -5,10 +5,7 @@ package sem;
  */
 public class StructDeclSymbol extends Symbol {
 
-    public Scope structScope;
-
-    public StructDeclSymbol(String name, Scope outer) {
+    public StructDeclSymbol(String name) {
         super(name);
-        this.structScope = new Scope(outer);
     }
 }
@@ -0,0 +1,228 @@
+package sem;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The symbols in scope during name analysis, kept as one flat table rather than a map per
+ * scope (LeBlanc and Cook).
+ *
+ * Each name has a slot in an open-addressed table holding the innermost symbol declared under
+ * that name, which links to the one it shadows. The declarations themselves are logged in
+ * order, each with the depth of the scope it was made in, so leaving scopes pops the log back
+ * to a mark and relinks each name to what it shadowed. Looking a name up is one probe
+ * however deeply the scopes nest, and entering a scope allocates nothing.
+ *
+ * A table can also be nested in another (see nest), which it sees through but never changes,
+ * so that functions can be checked on several threads against one global scope, and each
+ * program's global scope against the library's.
+ */
+public class SymbolTable {
+
+	// Open-addressed by name; heads[i] is the innermost entry declared as keys[i], or -1.
+	// A name keeps its slot after all its entries are popped.
+	private String[] keys = new String[64];
+	private int[] heads = new int[64];
+	private int names;
+	// keys.length is 1 << (32 - shift).
+	private int shift = 32 - 6;
+
+	// The log of entries, in declaration order, so depths never decrease along it.
+	private Symbol[] symbols = new Symbol[64];
+	private int[] depths = new int[64];
+	private int[] shadowed = new int[64];
+	private int[] slots = new int[64];
+	private int size;
+
+	private int depth;
+
+	// The table this one is nested in, if any, and how many of its entries are seen.
+	private SymbolTable outer;
+	private int outerSize;
+
+	public SymbolTable() {
+	}
+
+	/**
+	 * A new table that sees the first entries entries of this one (see entries) and declares
+	 * its own on top of them, starting in this table's current scope, and sees what this table
+	 * is nested in as this table does. This table is only read through it, so as long as this
+	 * one is not changed, any number of nested tables can be used at once.
+	 */
+	public SymbolTable nest(int entries) {
+		SymbolTable nested = new SymbolTable();
+		nested.outer = this;
+		nested.outerSize = entries;
+		nested.depth = depth;
+		return nested;
+	}
+
+	/**
+	 * Drops everything declared in this nested table and has it see the first entries entries
+	 * of the table it is nested in instead.
+	 */
+	public void reset(int entries) {
+		leaveScope(outer.depth - 1);
+		depth = outer.depth;
+		outerSize = entries;
+	}
+
+	/**
+	 * The number of symbols declared so far, scopes since left aside.
+	 */
+	public int entries() {
+		return size;
+	}
+
+	/**
+	 * Opens a scope inside the current one and returns the mark that leaveScope takes to
+	 * close it again.
+	 */
+	public int enterScope() {
+		return depth++;
+	}
+
+	/**
+	 * Closes every scope opened since enterScope returned mark, dropping their symbols.
+	 */
+	public void leaveScope(int mark) {
+		while (size > 0 && depths[size - 1] > mark) {
+			size--;
+			heads[slots[size]] = shadowed[size];
+			symbols[size] = null;
+		}
+		depth = mark;
+	}
+
+	public Symbol lookup(String name) {
+		int slot = slot(name);
+		int head = heads[slot];
+		if (head < 0) {
+			return outer == null ? null : outer.seen(name, outerSize, -1);
+		}
+		return symbols[head];
+	}
+
+	/**
+	 * Looks name up in the innermost scope only.
+	 */
+	public Symbol lookupCurrent(String name) {
+		int slot = slot(name);
+		int head = heads[slot];
+		if (head < 0) {
+			return outer == null ? null : outer.seen(name, outerSize, depth);
+		}
+		return depths[head] != depth ? null : symbols[head];
+	}
+
+	// The innermost of the first entries entries declared as name, if it is at depth or depth
+	// is -1, looking on in the table this one is nested in if there is none. Changes nothing,
+	// unlike slot.
+	private Symbol seen(String name, int entries, int depth) {
+		int mask = keys.length - 1;
+		int i = home(name);
+		String key;
+		while ((key = keys[i]) != null) {
+			if (key == name || key.equals(name)) {
+				int head = heads[i];
+				while (head >= entries)
+					head = shadowed[head];
+				if (head >= 0)
+					return depth >= 0 && depths[head] != depth ? null : symbols[head];
+				break;
+			}
+			i = (i + 1) & mask;
+		}
+		return outer == null ? null : outer.seen(name, outerSize, depth);
+	}
+
+	public void put(Symbol sym) {
+		int slot = slot(sym.name);
+		int head = heads[slot];
+		if (head >= 0 && depths[head] == depth) {
+			symbols[head] = sym;
+			return;
+		}
+		if (size == symbols.length) {
+			symbols = Arrays.copyOf(symbols, size * 2);
+			depths = Arrays.copyOf(depths, size * 2);
+			shadowed = Arrays.copyOf(shadowed, size * 2);
+			slots = Arrays.copyOf(slots, size * 2);
+		}
+		symbols[size] = sym;
+		depths[size] = depth;
+		shadowed[size] = head;
+		slots[size] = slot;
+		heads[slot] = size++;
+	}
+
+	/**
+	 * The symbols declared in the innermost scope, in declaration order.
+	 */
+	public Map<String, Symbol> getSymbolTable() {
+		int first = size;
+		while (first > 0 && depths[first - 1] == depth)
+			first--;
+		Map<String, Symbol> current = new LinkedHashMap<>();
+		for (int i = first; i < size; i++)
+			current.put(symbols[i].name, symbols[i]);
+		return current;
+	}
+
+	// The slot for name, claiming an empty one if the name is new.
+	private int slot(String name) {
+		int mask = keys.length - 1;
+		int i = home(name);
+		String key;
+		while ((key = keys[i]) != null) {
+			if (key == name || key.equals(name))
+				return i;
+			i = (i + 1) & mask;
+		}
+		if (2 * (names + 1) > keys.length) {
+			grow();
+			return slot(name);
+		}
+		keys[i] = name;
+		heads[i] = -1;
+		names++;
+		return i;
+	}
+
+	private void grow() {
+		String[] oldKeys = keys;
+		int[] oldHeads = heads;
+		keys = new String[oldKeys.length * 2];
+		heads = new int[oldKeys.length * 2];
+		shift--;
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			String name = oldKeys[j];
+			if (name == null)
+				continue;
+			int i = home(name);
+			while (keys[i] != null)
+				i = (i + 1) & mask;
+			keys[i] = name;
+			heads[i] = oldHeads[j];
+		}
+		// The log refers to names by slot.
+		for (int e = 0; e < size; e++)
+			slots[e] = find(symbols[e].name);
+	}
+
+	private int find(String name) {
+		int mask = keys.length - 1;
+		int i = home(name);
+		while (!keys[i].equals(name))
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	// Names often differ only in a last digit, which gives them consecutive hash codes; multiplying
+	// scatters them, where keeping the low bits would fill a run of slots that probes then crawl.
+	private int home(String name) {
+		return (name.hashCode() * 0x9E3779B9) >>> shift;
+	}
+}
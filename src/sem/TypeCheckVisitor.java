@@ -2,9 +2,6 @@ package sem;
 
 import ast.*;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-
 public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 
 	/**
@@ -14,100 +11,157 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 	 */
 	private Type currentFunctionReturnType;
 
-	@Override
-	public Type visitBaseType(BaseType bt) {
-		return bt;
-	}
+	// Sizes and struct layouts of the program being checked.
+	private Layouts layouts;
 
 	@Override
-	public Type visitStructType(StructType st) {
+	protected Type step(Frame f, Type child) {
+		switch (f.node.kind()) {
+			case BASE_TYPE:
+			case ARRAY_TYPE:
+			case POINTER_TYPE:
+			case STRUCT_TYPE:       return type((Type) f.node);
+			case PROGRAM:           return program((Program) f.node, f);
+			case FUN_DECL:          return funDecl((FunDecl) f.node, f, child);
+			case VAR_DECL:          return varDecl((VarDecl) f.node);
+			case BLOCK:             return block((Block) f.node, f);
+			case VAR_EXPR:          return varExpr((VarExpr) f.node);
+			case INT_LITERAL:       return BaseType.INT;
+			case CHR_LITERAL:       return BaseType.CHAR;
+			case STR_LITERAL:       return Types.array(BaseType.CHAR, ((StrLiteral) f.node).value.length() + 1);
+			case FUN_CALL_EXPR:     return funCallExpr((FunCallExpr) f.node, f, child);
+			case BIN_OP:            return binOp((BinOp) f.node, f, child);
+			case IF:                return ifStmt((If) f.node, f, child);
+			case WHILE:             return whileStmt((While) f.node, f, child);
+			case ASSIGN:            return assignStmt((Assign) f.node, f, child);
+			case RETURN:            return returnStmt((Return) f.node, f, child);
+			case EXPR_STMT:
+				if (f.step == 0) {
+					return call(((ExprStmt) f.node).exprStmt);
+				}
+				return null;
+			case ARRAY_ACCESS_EXPR: return arrayAccessExpr((ArrayAccessExpr) f.node, f, child);
+			case SIZE_OF_EXPR:      return BaseType.INT;
+			case VALUE_AT_EXPR:     return valueAtExpr((ValueAtExpr) f.node, f, child);
+			case TYPECAST_EXPR:     return typecastExpr((TypecastExpr) f.node, f, child);
+			case FIELD_ACCESS_EXPR: return fieldAccessExpr((FieldAccessExpr) f.node, f, child);
+			default:
+				return null;
+		}
+	}
 
-		return null;
+	// Types have no children to walk, so they are checked here directly: visiting one returns it.
+	Type type(Type t) {
+		// A struct declaration that contains itself, directly or through other structs, has no layout.
+		if (t instanceof StructType) {
+			StructType st = (StructType) t;
+			if (!st.structVarDecls.isEmpty() && layouts.layout(st) == null) {
+				error("Struct " + st.structName + " contains itself.");
+			}
+		}
+		return t;
 	}
 
-	@Override
-	public Type visitBlock(Block b) {
+	private Type block(Block b, Frame f) {
 
 		// No need to go through VarDecl.
-		for (VarDecl vd : b.varDeclsInBlock) {
-			vd.accept(this);
+		int vars = b.varDeclsInBlock.size();
+		if (f.index < vars) {
+			return call(b.varDeclsInBlock.get(f.index++));
 		}
 
 		// Go through statements in the block.
-		for (Stmt blockStmt : b.stmtsInBlock) {
-			blockStmt.accept(this);
+		if (f.index < vars + b.stmtsInBlock.size()) {
+			return call(b.stmtsInBlock.get(f.index++ - vars));
 		}
 		return null;
 	}
 
-	@Override
-	public Type visitFunDecl(FunDecl fd) {
-		Type functionReturnType = fd.type;
-
-		// Store function return type to environment variable.
-		currentFunctionReturnType = functionReturnType;
+	private Type funDecl(FunDecl fd, Frame f, Type child) {
+		if (f.step == 0) {
+			enterFunction(fd);
+		}
 
 		// No need to parse types because if there is a function call, then funcall will have
 		// FunDecl associated with it to compare types.
 
-		for (VarDecl vd : fd.params) {
-			vd.accept(this);
+		if (f.index < fd.params.size()) {
+			VarDecl vd = fd.params.get(f.index++);
 			vd.isParameter = true; // Set parameter flag for CodeGenerator.
+			return call(vd);
 		}
 
-		Type functionBlockType = fd.block.accept(this);
+		if (f.index == fd.params.size()) {
+			f.index++;
+			return call(fd.block());
+		}
 
 		// Check if function return type we just visited is not void. If it is not void and return
 		// statement was not found, then it is an error.
-		return functionBlockType;
+		return child;
 	}
 
 
-	@Override
-	public Type visitProgram(Program p) {
+	// The checks below the walk's steps are shared with FusedSemanticVisitor.
 
-		// Initialize type environment.
-		currentFunctionReturnType = null;
+	void enterFunction(FunDecl fd) {
+		// Store function return type to environment variable.
+		currentFunctionReturnType = fd.type;
+	}
+
+	private Type program(Program p, Frame f) {
 
-		for (StructType st : p.structTypes) {
-			st.accept(this);
+		if (f.step == 0) {
+			enterProgram(p);
 		}
 
-		for (VarDecl vd : p.varDecls) {
-			vd.accept(this);
+		int structs = p.structTypes.size();
+		int vars = structs + p.varDecls.size();
+		if (f.index < structs) {
+			return call(p.structTypes.get(f.index++));
+		} else if (f.index < vars) {
+			VarDecl vd = p.varDecls.get(f.index++ - structs);
 			vd.isGlobal = true; // Set global variables flag for CodeGenerator.
+			return call(vd);
+		} else if (f.index < vars + p.funDecls.size()) {
+			return call(p.funDecls.get(f.index++ - vars));
 		}
 
-		for (FunDecl fd : p.funDecls) {
-			fd.accept(this);
-		}
+		addLibrary(p);
+		return null;
+	}
 
-		FunDecl print_s_decl = new FunDecl(BaseType.VOID, "print_s",
-				Arrays.asList(new VarDecl(new PointerType(BaseType.CHAR), "s")), null);
-		FunDecl print_i_decl = new FunDecl(BaseType.VOID, "print_i",
-				Arrays.asList(new VarDecl(BaseType.INT, "i")), null);
-		FunDecl print_c_decl = new FunDecl(BaseType.VOID, "print_c",
-				Arrays.asList(new VarDecl(BaseType.CHAR, "c")), null);
-		FunDecl read_c_decl = new FunDecl(BaseType.CHAR, "read_c", new ArrayList<VarDecl>(), null);
-		FunDecl read_i_decl = new FunDecl(BaseType.INT, "read_i", new ArrayList<VarDecl>(), null);
-		p.funDecls.add(print_c_decl);
-		p.funDecls.add(print_s_decl);
-		p.funDecls.add(print_i_decl);
-		p.funDecls.add(read_i_decl);
-		p.funDecls.add(read_c_decl);
+	void enterProgram(Program p) {
+		// Initialize type environment.
+		currentFunctionReturnType = null;
+		layouts = new Layouts(p.structTypes);
+		p.layouts = layouts;
+	}
 
-		return null;
+	/**
+	 * Checks from now on in p, whose structs and globals enterProgram was called for and have
+	 * been checked.
+	 */
+	void enterGlobalScope(Program p) {
+		currentFunctionReturnType = null;
+		layouts = p.layouts;
 	}
 
-	@Override
-	public Type visitVarDecl(VarDecl vd) {
-		Type varDeclType = vd.type.accept(this);
+	/**
+	 * Adds the library functions to the program, for the code generator.
+	 */
+	void addLibrary(Program p) {
+		p.funDecls.addAll(Prelude.GENERATED);
+	}
+
+	Type varDecl(VarDecl vd) {
+		Type varDeclType = type(vd.type);
 //		System.out.println(varDeclType);
 		if (varDeclType == BaseType.VOID) {
 			error("Can't declare a variable of type void.");
 			return null;
 		} else if (varDeclType instanceof PointerType) {
-			Type wherePointerPoints = ((PointerType) varDeclType).type.accept(this);
+			Type wherePointerPoints = type(((PointerType) varDeclType).type);
 			if (wherePointerPoints == BaseType.VOID) {
 				error("Can't declare a variable pointer of void type.");
 				return null;
@@ -116,8 +170,7 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 		return varDeclType;
 	}
 
-	@Override
-	public Type visitVarExpr(VarExpr v) {
+	Type varExpr(VarExpr v) {
 		if (v.vd == null) {
 			error("VarExpr " + v + " was not declared before.");
 			return null;
@@ -126,87 +179,91 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 		return varExprType;
 	}
 
-	@Override
-	public Type visitArrayType(ArrayType at) {
-		return at;
-	}
-
-	@Override
-	public Type visitPointerType(PointerType pt) {
-		return pt;
-	}
-
-	@Override
-	public Type visitIntLiteral(IntLiteral il) {
-		return BaseType.INT;
-	}
-
-	@Override
-	public Type visitChrLiteral(ChrLiteral cl) {
-		return BaseType.CHAR;
-	}
-
-	@Override
-	public Type visitStrLiteral(StrLiteral sl) {
-		return new ArrayType(BaseType.CHAR, sl.value.length() + 1);
-	}
-
-	@Override
-	public Type visitFunCallExpr(FunCallExpr fce) {
+	/**
+	 * Each argument is visited and then the matching parameter, so f.index counts two per
+	 * argument and f.saved holds the argument's type while its parameter is visited.
+	 */
+	private Type funCallExpr(FunCallExpr fce, Frame f, Type child) {
 		// Obtain reference to corresponding FunDecl.
 		FunDecl fd = fce.fd;
 
-		if (fd == null) {
+		if (f.step == 0) {
+			if (fd == null) {
+				return null;
+			}
+
+			if (!checkArgumentCount(fce, fd)) {
+				return null;
+			}
+		}
+
+		// Make sure that types of fun call arguments match function declaration arguments.
+		if (f.index % 2 == 1) {
+			f.saved = child;
+			return call(fd.params.get(f.index++ / 2));
+		}
+		if (f.index > 0 && !checkArgument(fce, (Type) f.saved, child)) {
 			return null;
 		}
+		if (f.index / 2 < fce.functionArgsExprs.size()) {
+			return call(fce.functionArgsExprs.get(f.index++ / 2));
+		}
 
+		return callType(fce, fd);
+    }
 
+	boolean checkArgumentCount(FunCallExpr fce, FunDecl fd) {
 		// Make sure number of arguments in declaration and call match.
 		if (fce.functionArgsExprs.size() != fd.params.size()) {
 			error("Function call have too few/many args.");
-			return null;
+			return false;
 		}
+		return true;
+	}
 
-		// Make sure that types of fun call arguments match function declaration arguments.
-		for (int i = 0; i < fce.functionArgsExprs.size(); i++) {
-			Type functionCallArgType = fce.functionArgsExprs.get(i).accept(this);
-			Type functionDeclArgType = fd.params.get(i).accept(this);
-			if (!isSameType(functionCallArgType, functionDeclArgType)) {
-				error("Function call " + fce.functionName + " arguments do not match it's declaration types.");
-				return null;
-			}
+	/**
+	 * Checks an argument's type against its parameter's; if they differ, the rest of the
+	 * arguments are not checked.
+	 */
+	boolean checkArgument(FunCallExpr fce, Type argument, Type parameter) {
+		if (!isSameType(argument, parameter)) {
+			error("Function call " + fce.functionName + " arguments do not match it's declaration types.");
+			return false;
 		}
+		return true;
+	}
 
+	Type callType(FunCallExpr fce, FunDecl fd) {
 		// Argument types match. Now obtain fun decl return type. Fill in type for funcall expr.
 		Type functionDeclReturnType = fd.type;
 		fce.type = functionDeclReturnType;
 		return functionDeclReturnType;
-    }
+	}
 
-    private boolean isSameType(Type t1, Type t2) {
-		if (t1 instanceof BaseType && t2 instanceof BaseType) {
-			return t1 == t2;
-		} else if (t1 instanceof PointerType && t2 instanceof PointerType) {
-			Type ptr_t1 = ((PointerType) t1).type.accept(this);
-			Type ptr_t2 = ((PointerType) t2).type.accept(this);
-			return isSameType(ptr_t1, ptr_t2);
-		} else if (t1 instanceof ArrayType && t2 instanceof ArrayType) {
-			if (((ArrayType) t1).numElements != ((ArrayType) t2).numElements) {
-				error("Arrays of not equal size");
-				return false;
-			}
-			Type arr_t1 = ((ArrayType) t1).type.accept(this);
-			Type arr_t2 = ((ArrayType) t2).type.accept(this);
-			return isSameType(arr_t1, arr_t2);
+	// Types are canonical (see ast.Types), so equal types are the same object.
+	private boolean isSameType(Type t1, Type t2) {
+		if (t1 == t2) {
+			return t1 != null;
+		}
+		if (t1 instanceof ArrayType && t2 instanceof ArrayType
+				&& ((ArrayType) t1).numElements != ((ArrayType) t2).numElements) {
+			error("Arrays of not equal size");
 		}
 		return false;
 	}
 
-	@Override
-	public Type visitBinOpExpr(BinOp binOp) {
-		Type lhsType = binOp.lhs.accept(this);
-		Type rhsType = binOp.rhs.accept(this);
+	private Type binOp(BinOp binOp, Frame f, Type child) {
+		if (f.step == 0) {
+			return call(binOp.lhs);
+		}
+		if (f.step == 1) {
+			f.saved = child;
+			return call(binOp.rhs);
+		}
+		return binOpType(binOp, (Type) f.saved, child);
+	}
 
+	Type binOpType(BinOp binOp, Type lhsType, Type rhsType) {
 		if (binOp.op == Op.NE || binOp.op == Op.EQ) {
 			// This is the case for lhsType == rhsType
 			if (isSameType(lhsType, rhsType)) {
@@ -227,76 +284,101 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 
 	}
 
-	@Override
-	public Type visitStmtExpr(Stmt stmt) {
-		return null;
+	private Type ifStmt(If ifStmt, Frame f, Type child) {
+		switch (f.step) {
+			case 0:
+				return call(ifStmt.ifConditionExpr);
+			case 1:
+				if (!checkCondition(child, "If")) {
+					return null;
+				}
+				return call(ifStmt.ifStmtBlock);
+			case 2:
+				return call(ifStmt.elseStmtBlock);
+			default:
+				return null;
+		}
 	}
 
-	@Override
-	public Type visitIfStmt(If ifStmt) {
-		Type ifCondType = ifStmt.ifConditionExpr.accept(this);
-		if (!isSameType(ifCondType, BaseType.INT)) {
-			error("If condition should have int in it.");
-			return null;
+	private Type whileStmt(While whileStmt, Frame f, Type child) {
+		switch (f.step) {
+			case 0:
+				return call(whileStmt.whileConditionExpr);
+			case 1:
+				if (!checkCondition(child, "While")) {
+					return null;
+				}
+				return call(whileStmt.whileStmt);
+			default:
+				return null;
 		}
+	}
 
-		ifStmt.ifStmtBlock.accept(this);
-		if (ifStmt.elseStmtBlock != null) {
-			ifStmt.elseStmtBlock.accept(this);
+	/**
+	 * Checks the condition of an If or While statement, which is named by statement.
+	 */
+	boolean checkCondition(Type condition, String statement) {
+		if (!isSameType(condition, BaseType.INT)) {
+			error(statement + " condition should have int in it.");
+			return false;
 		}
-
-		return null;
+		return true;
 	}
 
-	@Override
-	public Type visitWhileStmt(While whileStmt) {
-		Type whileCondType = whileStmt.whileConditionExpr.accept(this);
-		if (!isSameType(whileCondType, BaseType.INT)) {
-			error("While condition should have int in it.");
-			return null;
+	private Type assignStmt(Assign assignStmt, Frame f, Type child) {
+		if (f.step == 0) {
+			if (!checkAssignable(assignStmt.lhs)) {
+				return null;
+			}
+			return call(assignStmt.lhs);
 		}
-
-		whileStmt.whileConditionExpr.accept(this);
-
+		if (f.step == 1) {
+			if (!checkAssignableType(child)) {
+				return null;
+			}
+			f.saved = child;
+			return call(assignStmt.rhs);
+		}
+		checkAssignment((Type) f.saved, child);
 		return null;
 	}
 
-	@Override
-	public Type visitAssignStmt(Assign assignStmt) {
-		Expr lhsExpr = assignStmt.lhs;
+	boolean checkAssignable(Expr lhsExpr) {
 		if (!(lhsExpr instanceof VarExpr || lhsExpr instanceof ArrayAccessExpr ||
 				lhsExpr instanceof FieldAccessExpr || lhsExpr instanceof ValueAtExpr)) {
 			error("Assign to incompatbile type: " + lhsExpr);
-			return null;
+			return false;
 		}
-		Type lhs = assignStmt.lhs.accept(this);
+		return true;
+	}
+
+	boolean checkAssignableType(Type lhs) {
 		if (lhs == BaseType.VOID || lhs instanceof ArrayType) {
 			error("Assignment is impossible on type: " + lhs);
-			return null;
+			return false;
 		}
+		return true;
+	}
 
-		Type rhs = assignStmt.rhs.accept(this);
-
-
+	void checkAssignment(Type lhs, Type rhs) {
 		if (isSameType(lhs, rhs)) {
-			return null;
+			return;
 		}
 
 		error("Assignment failed because lhs is of type: " + lhs + " and rhs: " + rhs);
-		return null;
 	}
 
-	@Override
-	public Type visitReturnStmt(Return returnStmt) {
-		// Obtain return type of current function block because we encountered return statement.
-		Type functionReturnType = currentFunctionReturnType;
-
-
+	private Type returnStmt(Return returnStmt, Frame f, Type child) {
 		// Obtain the type of return statement(if any is available)
-		Type returnType = BaseType.VOID;
-		if (returnStmt.returnExpr != null) {
-			returnType = returnStmt.returnExpr.accept(this);
+		if (returnStmt.returnExpr != null && f.step == 0) {
+			return call(returnStmt.returnExpr);
 		}
+		return returnType(returnStmt.returnExpr != null ? child : BaseType.VOID);
+	}
+
+	Type returnType(Type returnType) {
+		// Obtain return type of current function block because we encountered return statement.
+		Type functionReturnType = currentFunctionReturnType;
 
 		if (returnType == null) {
 			return null;
@@ -312,62 +394,79 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 		return null;
 	}
 
-	@Override
-	public Type visitExprStmt(ExprStmt exprStmt) {
-		exprStmt.exprStmt.accept(this);
-		return null;
+	private Type arrayAccessExpr(ArrayAccessExpr arrayAccessExpr, Frame f, Type child) {
+		if (f.step == 0) {
+			return call(arrayAccessExpr.arrayName);
+		}
+		if (f.step == 1) {
+			f.saved = elementType(child);
+			if (f.saved == null) {
+				return null;
+			}
+			return call(arrayAccessExpr.arrayIndex);
+		}
+		return indexedType((Type) f.saved, child);
 	}
 
-	@Override
-	public Type visitArrayAccessExpr(ArrayAccessExpr arrayAccessExpr) {
-		Type arrayType = arrayAccessExpr.arrayName.accept(this);
+	/**
+	 * The type of the elements of arrayType, or null if it is not an array or a pointer.
+	 */
+	Type elementType(Type arrayType) {
 		if (!(arrayType instanceof ArrayType || arrayType instanceof PointerType)) {
 			error("Array is not if array type or pointer type.");
 			return null;
 		}
 
 		// Grab the type inside array type.
-		Type typeInsideArray = null;
 		if (arrayType instanceof ArrayType) {
-			typeInsideArray = ((ArrayType) arrayType).type.accept(this);
+			return type(((ArrayType) arrayType).type);
 		} else {
-			typeInsideArray = ((PointerType) arrayType).type.accept(this);
+			return type(((PointerType) arrayType).type);
 		}
+	}
 
-		Type index = arrayAccessExpr.arrayIndex.accept(this);
+	Type indexedType(Type element, Type index) {
 		if (!(isSameType(index, BaseType.INT))) {
 			error("Array index must be of type INT.");
 			return null;
 
 		}
-		return typeInsideArray;
+		return element;
 
 	}
 
-	@Override
-	public Type visitSizeOfExpr(SizeOfExpr sizeOfExpr) {
-		return BaseType.INT;
+	private Type valueAtExpr(ValueAtExpr valueAtExpr, Frame f, Type child) {
+		if (f.step == 0) {
+			return call(valueAtExpr.valueAtExp);
+		}
+		return valueAtType(child);
 	}
 
-	@Override
-	public Type visitValueAtExpr(ValueAtExpr valueAtExpr) {
-		Type valueAtType = valueAtExpr.valueAtExp.accept(this);
+	Type valueAtType(Type valueAtType) {
 		if (!(valueAtType instanceof PointerType)) {
 			error("Value at is only defined for pointer types.");
 			return null;
 		}
 
-		Type ptr_type = ((PointerType) valueAtType).type.accept(this);
+		Type ptr_type = type(((PointerType) valueAtType).type);
 		return ptr_type;
 
 	}
 
-	@Override
-	public Type visitTypecastExpr(TypecastExpr typecastExpr) {
+	private Type typecastExpr(TypecastExpr typecastExpr, Frame f, Type child) {
+		if (f.step == 0) {
+			return call(typecastExpr.typecastedExpr);
+		}
+		return typecastType(typecastExpr, child);
+	}
+
+	Type typecastType(TypecastExpr typecastExpr, Type toBeCasted) {
 		Type cast = typecastExpr.type;
-		Type toBeCasted = typecastExpr.typecastedExpr.accept(this);
 
-		if (toBeCasted.equals(BaseType.CHAR)) {
+		if (toBeCasted == null) {
+			error("Cannot cast an expression with no type.");
+			return null;
+		} else if (toBeCasted.equals(BaseType.CHAR)) {
 			if (cast.equals(BaseType.INT)) {
 				return BaseType.INT;
 			} else {
@@ -379,7 +478,7 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 			if (cast instanceof PointerType) {
 				Type castType = ((PointerType) cast).type;
 				if (isSameType(castType, arrayType)) {
-					return new PointerType(castType);
+					return Types.pointer(castType);
 				} else {
 					error ("Casting error.");
 				}
@@ -387,7 +486,7 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 		} else if (toBeCasted instanceof PointerType) {
 			if (cast instanceof PointerType) {
 				Type castType = ((PointerType) cast).type;
-				return new PointerType(castType);
+				return Types.pointer(castType);
 			}
 		} else {
 			error("Casting failed.");
@@ -395,9 +494,37 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 		return toBeCasted;
 	}
 
-	@Override
-	public Type visitFieldAccessExpr(FieldAccessExpr fieldAccessExpr) {
-		return null;
+	private Type fieldAccessExpr(FieldAccessExpr fieldAccessExpr, Frame f, Type child) {
+		if (f.step == 0) {
+			return call(fieldAccessExpr.fieldAccessExpr);
+		}
+		return fieldType(fieldAccessExpr, child);
+	}
+
+	Type fieldType(FieldAccessExpr fieldAccessExpr, Type structType) {
+		if (structType == null) {
+			// Already reported.
+			return null;
+		}
+		if (!(structType instanceof StructType)) {
+			error("Field access is only defined for struct types.");
+			return null;
+		}
+
+		// Undeclared structs were reported by the name analysis.
+		StructLayout layout = layouts.layout((StructType) structType);
+		if (layout == null) {
+			return null;
+		}
+
+		StructLayout.Field field = layout.field(fieldAccessExpr.fieldAccessName);
+		if (field == null) {
+			error("Struct " + ((StructType) structType).structName + " has no field " + fieldAccessExpr.fieldAccessName + ".");
+			return null;
+		}
+		fieldAccessExpr.field = field;
+		fieldAccessExpr.type = field.type;
+		return field.type;
 	}
 
 	// To be completed...
@@ -0,0 +1,65 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Resolves source offsets, as recorded on tokens and AST nodes, to lines and columns.
+ *
+ * The offsets of the line starts are found on the first lookup, in one pass over the source,
+ * and each lookup is then a binary search. Lines and columns are counted as Scanner counts
+ * them, so an offset resolves to the position the lexer gave the token starting there: both
+ * '\n' and '\r' end a line, and columns count from 1 on the first line but from 0 after that.
+ */
+public class LineIndex {
+
+    private final char[] source;
+    private final int from;
+    private final int to;
+
+    // Offset of the first character of each line, built on first use.
+    private int[] lineStarts;
+
+    public LineIndex(char[] source) {
+        this(source, 0, source.length);
+    }
+
+    /**
+     * Index of source[from, to), where offsets index source as a Scanner over the same range does.
+     */
+    public LineIndex(char[] source, int from, int to) {
+        this.source = source;
+        this.from = from;
+        this.to = to;
+    }
+
+    public Position position(int offset) {
+        int[] starts = lineStarts();
+        int line = Arrays.binarySearch(starts, offset);
+        if (line < 0)
+            line = -line - 2;
+        int column = offset - starts[line];
+        return new Position(line + 1, line == 0 ? column + 1 : column);
+    }
+
+    public int lineCount() {
+        return lineStarts().length;
+    }
+
+    private synchronized int[] lineStarts() {
+        if (lineStarts == null) {
+            int[] starts = new int[64];
+            int count = 0;
+            starts[count++] = from;
+            for (int i = from; i < to; i++) {
+                char c = source[i];
+                if (c == '\n' || c == '\r') {
+                    if (count == starts.length)
+                        starts = Arrays.copyOf(starts, count * 2);
+                    starts[count++] = i + 1;
+                }
+            }
+            lineStarts = Arrays.copyOf(starts, count);
+        }
+        return lineStarts;
+    }
+}
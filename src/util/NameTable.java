@@ -0,0 +1,100 @@
+package util;
+
+/**
+ * Compiler-wide table of identifier names.
+ *
+ * Every occurrence of a name maps to one canonical String, so later phases can compare
+ * names by identity and a name's hash code is computed once instead of once per occurrence.
+ * Canonical names are also interned in the JVM string pool, which makes them identical to
+ * string literals spelling the same name (the built-in library functions, for instance).
+ */
+public class NameTable {
+
+    public static final NameTable GLOBAL = new NameTable();
+
+    // Table the canonical names come from when this one is a thread-local front for it.
+    private final NameTable parent;
+
+    // Open-addressed with linear probing, kept at most half full.
+    private String[] names = new String[1024];
+    private int size = 0;
+
+    public NameTable() {
+        this(null);
+    }
+
+    /**
+     * A table that takes its canonical names from parent and caches them locally. A task can
+     * give each worker thread its own front for GLOBAL, so the shared lock is taken once per
+     * distinct name per thread rather than once per occurrence.
+     */
+    public NameTable(NameTable parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the canonical name spelled by chars[from, from + length). No String is
+     * allocated when the name has been seen before.
+     */
+    public synchronized String intern(char[] chars, int from, int length) {
+        int hash = hash(chars, from, length);
+        int mask = names.length - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            String name = names[i];
+            if (name == null) {
+                name = parent != null ? parent.intern(chars, from, length)
+                                      : new String(chars, from, length).intern();
+                names[i] = name;
+                if (++size * 2 > names.length)
+                    grow();
+                return name;
+            }
+            if (name.hashCode() == hash && spells(name, chars, from, length))
+                return name;
+        }
+    }
+
+    public String intern(String name) {
+        return intern(name.toCharArray(), 0, name.length());
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void grow() {
+        String[] old = names;
+        names = new String[old.length * 2];
+        int mask = names.length - 1;
+        for (String name : old) {
+            if (name == null)
+                continue;
+            int i = spread(name.hashCode()) & mask;
+            while (names[i] != null)
+                i = (i + 1) & mask;
+            names[i] = name;
+        }
+    }
+
+    // Same function as String.hashCode, so a canonical name's cached hash can be compared directly.
+    private static int hash(char[] chars, int from, int length) {
+        int h = 0;
+        for (int i = from; i < from + length; i++)
+            h = 31 * h + chars[i];
+        return h;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean spells(String name, char[] chars, int from, int length) {
+        if (name.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[from + i])
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,32 @@
+struct point {
+  int x;
+  char c;
+  int y;
+};
+
+struct segment {
+  struct point from;
+  struct point to;
+};
+
+void main() {
+  struct point p;
+  struct segment s;
+  struct point* q;
+  int i;
+  p.x = 0;
+  p.y = 10;
+  s.from.x = 0;
+  q = (struct point*) mcmalloc(sizeof(struct point));
+  i = 0;
+  while (i < 3) {
+    p.x = p.x + 1;
+    p.c = 'a';
+    s.from.x = s.from.x + p.y;
+    (*q).y = i;
+    i = i + 1;
+  }
+  print_i(p.x);
+  print_c(p.c);
+  print_i(s.from.x);
+}